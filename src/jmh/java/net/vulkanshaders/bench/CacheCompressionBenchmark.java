@@ -0,0 +1,60 @@
+package net.vulkanshaders.bench;
+
+import net.vulkanshaders.compiler.SPIRVCompression;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading a compressed cache entry compared to a raw one
+ *
+ * rawRead copies the module out of a direct (mapped-like) buffer, decompress decodes the compressed
+ * entry into the same kind of target. Entry sizes are reported once at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CacheCompressionBenchmark {
+
+    @Param({"200", "2000"})
+    public int blocks;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private ByteBuffer raw;
+    private ByteBuffer compressed;
+    private ByteBuffer target;
+
+    @Setup
+    public void setup() {
+        raw = SyntheticSPIRV.module(blocks, 42);
+
+        ByteBuffer encoded = SPIRVCompression.compress(raw, level);
+        if (encoded == null) {
+            throw new IllegalStateException("Synthetic module did not compress");
+        }
+        compressed = ByteBuffer.allocateDirect(encoded.remaining()).put(encoded).flip();
+        target = ByteBuffer.allocateDirect(raw.remaining());
+    }
+
+    @Benchmark
+    public ByteBuffer rawRead() {
+        target.clear();
+        target.put(raw.duplicate());
+        return target;
+    }
+
+    @Benchmark
+    public ByteBuffer decompress() {
+        target.clear();
+        SPIRVCompression.decompress(compressed, target);
+        return target;
+    }
+
+    @Benchmark
+    public ByteBuffer compress() {
+        return SPIRVCompression.compress(raw, level);
+    }
+}
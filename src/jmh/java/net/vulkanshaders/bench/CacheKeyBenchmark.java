@@ -0,0 +1,72 @@
+package net.vulkanshaders.bench;
+
+import net.vulkanmod.vulkan.shader.SPIRVUtils;
+import net.vulkanshaders.compiler.ContentHasher;
+import net.vulkanshaders.compiler.SPIRVCompiler;
+import net.vulkanshaders.compiler.SourceNormalizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one cache key: the previous SHA-256 + hex string path compared to {@link ContentHasher}
+ *
+ * sha256Hex reproduces the old generateCacheKey (digest lookup per key, getBytes copies, hex built with
+ * Integer.toHexString per byte), contentHasher is the current {@link SPIRVCompiler#generateCacheKey}
+ * and normalizedKey adds the {@link SourceNormalizer} pass content keys run with stripped debug info.
+ * The source is synthetic GLSL with some non-ASCII comments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CacheKeyBenchmark {
+
+    @Param({"2000", "50000"})
+    public int sourceChars;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        StringBuilder glsl = new StringBuilder(sourceChars + 128);
+        glsl.append("#version 450\n");
+        int line = 0;
+        while (glsl.length() < sourceChars) {
+            glsl.append("    vec3 v").append(line).append(" = texture(tex, uv * ").append(line % 7)
+                    .append(".0).rgb; // Schatten/Übergang ").append(line).append('\n');
+            line++;
+        }
+        source = glsl.toString();
+    }
+
+    @Benchmark
+    public String sha256Hex() throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update("shaders/gbuffers_textured.fsh".getBytes());
+        digest.update(source.getBytes());
+        digest.update("FRAGMENT_SHADER".getBytes());
+        digest.update("1.0|1/0.5.0|reduced".getBytes());
+
+        byte[] hash = digest.digest();
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            String h = Integer.toHexString(0xff & b);
+            if (h.length() == 1) hex.append('0');
+            hex.append(h);
+        }
+        return hex.toString();
+    }
+
+    @Benchmark
+    public String contentHasher() {
+        return SPIRVCompiler.generateCacheKey(source, SPIRVUtils.ShaderKind.FRAGMENT_SHADER, "1/0.5.0|reduced");
+    }
+
+    @Benchmark
+    public String normalizedKey() {
+        return SPIRVCompiler.generateCacheKey(SourceNormalizer.normalize(source),
+                SPIRVUtils.ShaderKind.FRAGMENT_SHADER, "1/0.5.0|reduced");
+    }
+}
@@ -0,0 +1,121 @@
+package net.vulkanshaders.bench;
+
+import com.sun.management.ThreadMXBean;
+import net.vulkanmod.vulkan.shader.SPIRVUtils;
+import net.vulkanshaders.pipeline.CustomPipeline;
+import net.vulkanshaders.pipeline.OverrideSlot;
+import net.vulkanshaders.pipeline.PipelineManager;
+import net.vulkanshaders.pipeline.PipelineSlot;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Override lookup on the pipeline creation and bind path: cached slot compared to a lookup by name
+ *
+ * slot and overrideViaSlot are what the GraphicsPipeline mixins run, byName is the Optional-returning
+ * lookup they used before. Run with -prof gc: the slot paths must report gc.alloc.rate.norm ≈ 0. Setup
+ * also checks this outside the JIT (where no allocation is optimized away) and fails if the slot path
+ * allocates at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PipelineLookupBenchmark {
+    private static final String[] NAMES = {"terrain", "terrain_cutout", "entity", "particle", "sky", "clouds"};
+    private static final int CHECK_CALLS = 100_000;
+    private static final long CHECK_SLACK_BYTES = 1024;
+
+    /**
+     * Stands in for a GraphicsPipeline with the mixin-injected slot
+     */
+    private static final class FakePipeline implements PipelineSlot {
+        private OverrideSlot slot;
+
+        @Override
+        public OverrideSlot vulkanshaders$getSlot() {
+            return slot;
+        }
+
+        @Override
+        public void vulkanshaders$setSlot(OverrideSlot slot) {
+            this.slot = slot;
+        }
+    }
+
+    private final FakePipeline[] pipelines = new FakePipeline[NAMES.length];
+    private int next;
+
+    @Setup
+    public void setup() {
+        PipelineManager.clear();
+
+        Map<String, CustomPipeline> custom = new LinkedHashMap<>();
+        for (String name : NAMES) {
+            custom.put(name, new CustomPipeline(name, null, (SPIRVUtils.SPIRV) null, null, null));
+        }
+        PipelineManager.registerPipelines(custom);
+        PipelineManager.setOverride("terrain", "terrain");
+        PipelineManager.setOverride("entity", "entity");
+        PipelineManager.setOverridesEnabled(true);
+
+        for (int i = 0; i < pipelines.length; i++) {
+            pipelines[i] = new FakePipeline();
+        }
+
+        checkAllocationFree();
+    }
+
+    @TearDown
+    public void tearDown() {
+        PipelineManager.clear();
+    }
+
+    @Benchmark
+    public CustomPipeline slot() {
+        int i = nextIndex();
+        return PipelineManager.getSlot(pipelines[i], NAMES[i]).pipeline();
+    }
+
+    @Benchmark
+    public Object overrideViaSlot() {
+        int i = nextIndex();
+        return PipelineManager.getOverridePipeline(pipelines[i], NAMES[i]);
+    }
+
+    @Benchmark
+    public CustomPipeline byName() {
+        return PipelineManager.getPipeline(NAMES[nextIndex()]).orElse(null);
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = i + 1 == NAMES.length ? 0 : i + 1;
+        return i;
+    }
+
+    /**
+     * Count the bytes the current thread allocates on the steady-state slot path
+     * The first pass resolves the slots and absorbs one-time costs (OSR of the loop), the second is checked.
+     */
+    private void checkAllocationFree() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < CHECK_CALLS; i++) {
+                slot();
+                overrideViaSlot();
+            }
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+
+        if (allocated > CHECK_SLACK_BYTES) {
+            throw new IllegalStateException("Slot lookup allocated " + allocated + " bytes in "
+                    + CHECK_CALLS + " calls");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package net.vulkanshaders.bench;
+
+import net.vulkanshaders.compiler.GLSLPreprocessor;
+import net.vulkanshaders.compiler.IncludeGraph;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Include expansion of a whole pack, the first step of every stage compile
+ *
+ * coldPack builds the include graph and expands every stage like a pack load does, warmPack expands
+ * them again through a graph that already memoized its includes (an option change), extractIncludes
+ * is the dependency scan alone. The pack is a {@link SyntheticPack} with include trees four levels deep.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreprocessorBenchmark {
+
+    @Param({"10", "40"})
+    public int pipelines;
+
+    @Param({"32"})
+    public int libraries;
+
+    private Map<String, String> sources;
+    private List<String> stages;
+    private GLSLPreprocessor warm;
+
+    @Setup
+    public void setup() {
+        SyntheticPack pack = new SyntheticPack(pipelines, libraries, 42);
+        sources = pack.sources();
+        stages = pack.stages();
+
+        warm = new GLSLPreprocessor(new IncludeGraph(sources));
+        for (String stage : stages) {
+            warm.preprocess(sources.get(stage), stage);
+        }
+    }
+
+    @Benchmark
+    public void coldPack(Blackhole blackhole) {
+        GLSLPreprocessor preprocessor = new GLSLPreprocessor(new IncludeGraph(sources));
+        for (String stage : stages) {
+            blackhole.consume(preprocessor.preprocess(sources.get(stage), stage));
+        }
+    }
+
+    @Benchmark
+    public void warmPack(Blackhole blackhole) {
+        for (String stage : stages) {
+            blackhole.consume(warm.preprocess(sources.get(stage), stage));
+        }
+    }
+
+    @Benchmark
+    public void extractIncludes(Blackhole blackhole) {
+        for (String source : sources.values()) {
+            blackhole.consume(GLSLPreprocessor.extractIncludes(source));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package net.vulkanshaders.bench;
+
+import net.vulkanshaders.compiler.SPIRVBuffer;
+import net.vulkanshaders.compiler.ShaderCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Shader cache reads and writes, per tier
+ *
+ * memoryGet and memoryAcquire hit the in-memory tier (heap copy vs shared off-heap buffer), diskAcquire
+ * goes through a cache without a memory budget so every read is served by the blob store, put appends a
+ * new entry to both tiers. The cache lives in a temp directory instead of the game directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ShaderCacheBenchmark {
+    private static final int ENTRIES = 64;
+    private static final int PUT_BATCH = 256;
+
+    @Param({"200", "2000"})
+    public int blocks;
+
+    @Param({"0", "1"})
+    public int level;
+
+    private Path directory;
+    private ShaderCache memory;
+    private ShaderCache disk;
+    private ShaderCache writer;
+    private ByteBuffer module;
+    private final String[] keys = new String[ENTRIES];
+    private int next;
+    private int written;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("vulkanshaders-cache-bench");
+        module = SyntheticSPIRV.module(blocks, 42);
+
+        memory = new ShaderCache(directory.resolve("memory"), 64L << 20, level);
+        for (int i = 0; i < ENTRIES; i++) {
+            keys[i] = String.format("%032x", i);
+            memory.put(keys[i], module.duplicate());
+        }
+
+        // Opened on the entries the memory cache just wrote, nothing is ever kept in memory
+        disk = new ShaderCache(directory.resolve("memory"), 0, level);
+
+        writer = new ShaderCache(directory.resolve("writer"), 64L << 20, level);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearWriter() {
+        writer.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer memoryGet() {
+        return memory.get(nextKey());
+    }
+
+    @Benchmark
+    public int memoryAcquire() {
+        SPIRVBuffer buffer = memory.acquire(nextKey());
+        try {
+            return buffer.size();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Benchmark
+    public int diskAcquire() {
+        SPIRVBuffer buffer = disk.acquire(nextKey());
+        try {
+            return buffer.size();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Batched so the blob store only grows by a bounded amount before each iteration clears it
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = PUT_BATCH)
+    @Measurement(iterations = 20, batchSize = PUT_BATCH)
+    public void put() {
+        // Fresh key each time, so every call appends instead of replacing
+        writer.put(String.format("%032x", written++), module.duplicate());
+    }
+
+    private String nextKey() {
+        String key = keys[next];
+        next = (next + 1) % ENTRIES;
+        return key;
+    }
+}
@@ -0,0 +1,166 @@
+package net.vulkanshaders.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * GLSL shader pack shaped like a real one, for benchmarks that run without Minecraft
+ *
+ * Libraries live under shaders/lib as binary trees four levels deep, each library including its two
+ * children. Every pipeline has a vertex and a fragment stage including two of the tree roots, so stages
+ * share whole subtrees but never include a file twice. The same seed always gives the same pack.
+ */
+public final class SyntheticPack {
+    private static final int TREE_SIZE = 15;
+
+    private final int pipelines;
+    private final int libraries;
+    private final Map<String, String> sources = new LinkedHashMap<>();
+    private final List<String> stages = new ArrayList<>();
+
+    public SyntheticPack(int pipelines, int libraries, long seed) {
+        this.pipelines = pipelines;
+        this.libraries = libraries;
+
+        Random random = new Random(seed);
+        for (int i = 0; i < libraries; i++) {
+            // Heap order within each tree
+            int tree = i / TREE_SIZE * TREE_SIZE;
+            List<String> includes = new ArrayList<>();
+            for (int child = 2 * (i - tree) + 1; child <= 2 * (i - tree) + 2; child++) {
+                if (child < TREE_SIZE && tree + child < libraries) {
+                    includes.add(library(tree + child));
+                }
+            }
+            sources.put(library(i), librarySource(i, includes, random));
+        }
+
+        int roots = (libraries + TREE_SIZE - 1) / TREE_SIZE;
+        for (int p = 0; p < pipelines; p++) {
+            int first = random.nextInt(roots);
+            int second = (first + 1 + random.nextInt(Math.max(1, roots - 1))) % roots;
+            List<String> includes = first == second
+                    ? List.of(library(first * TREE_SIZE))
+                    : List.of(library(first * TREE_SIZE), library(second * TREE_SIZE));
+            stages.add(vertex(p));
+            stages.add(fragment(p));
+            sources.put(vertex(p), stageSource(p, "vertex", includes, random));
+            sources.put(fragment(p), stageSource(p, "fragment", includes, random));
+        }
+    }
+
+    public static String library(int index) {
+        return "shaders/lib/lib" + index + ".glsl";
+    }
+
+    public static String vertex(int pipeline) {
+        return "shaders/program" + pipeline + ".vsh";
+    }
+
+    public static String fragment(int pipeline) {
+        return "shaders/program" + pipeline + ".fsh";
+    }
+
+    /**
+     * Every file by pack path, libraries first
+     */
+    public Map<String, String> sources() {
+        return sources;
+    }
+
+    /**
+     * Vertex and fragment paths, in pipeline order
+     */
+    public List<String> stages() {
+        return stages;
+    }
+
+    public String packJson(String name) {
+        StringBuilder json = new StringBuilder(256 + pipelines * (128 + libraries * 24));
+        json.append("{\n  \"name\": \"").append(name).append("\",\n  \"version\": \"1.0.0\",\n")
+                .append("  \"pipelines\": {\n");
+        for (int p = 0; p < pipelines; p++) {
+            json.append("    \"program").append(p).append("\": {\n")
+                    .append("      \"vertex\": \"").append(vertex(p)).append("\",\n")
+                    .append("      \"fragment\": \"").append(fragment(p)).append("\",\n")
+                    .append("      \"includes\": [");
+            // The loader only indexes what pack.json names, so list every library a stage can reach
+            for (int i = 0; i < libraries; i++) {
+                json.append(i == 0 ? "" : ", ").append('"').append(library(i)).append('"');
+            }
+            json.append("]\n    }").append(p + 1 < pipelines ? "," : "").append('\n');
+        }
+        return json.append("  }\n}\n").toString();
+    }
+
+    /**
+     * Write the pack as a zip the way packs are distributed
+     */
+    public Path writeZip(Path directory, String name) throws IOException {
+        Files.createDirectories(directory);
+        Path zip = directory.resolve(name + ".zip");
+        try (OutputStream file = Files.newOutputStream(zip);
+             ZipOutputStream out = new ZipOutputStream(file)) {
+            write(out, "pack.json", packJson(name));
+            for (var source : sources.entrySet()) {
+                write(out, source.getKey(), source.getValue());
+            }
+        }
+        return zip;
+    }
+
+    private static void write(ZipOutputStream out, String path, String text) throws IOException {
+        out.putNextEntry(new ZipEntry(path));
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+
+    private static String librarySource(int index, List<String> includes, Random random) {
+        StringBuilder glsl = new StringBuilder(2048);
+        glsl.append("// Library ").append(index).append(", shared helpers\n");
+        for (String include : includes) {
+            glsl.append("#include \"").append(include).append("\"\n");
+        }
+        glsl.append('\n');
+        int functions = 3 + random.nextInt(4);
+        for (int f = 0; f < functions; f++) {
+            glsl.append("/* Helper ").append(f).append(" of library ").append(index).append(" */\n")
+                    .append("vec3 lib").append(index).append("_fn").append(f).append("(vec3 color, vec2 uv) {\n");
+            int lines = 4 + random.nextInt(8);
+            for (int l = 0; l < lines; l++) {
+                glsl.append("    color = mix(color, color * vec3(").append(random.nextInt(100) / 100.0f)
+                        .append("), smoothstep(0.0, 1.0, uv.x * ").append(l + 1).append(".0)); // step ")
+                        .append(l).append('\n');
+            }
+            glsl.append("    return color;\n}\n\n");
+        }
+        return glsl.toString();
+    }
+
+    private static String stageSource(int pipeline, String stage, List<String> includes, Random random) {
+        StringBuilder glsl = new StringBuilder(4096);
+        glsl.append("#version 450\n\n");
+        for (String include : includes) {
+            glsl.append("#include \"").append(include).append("\"\n");
+        }
+        glsl.append("\nlayout(location = 0) in vec2 texCoord0;\n")
+                .append("layout(location = 0) out vec4 fragColor;\n\n")
+                .append("// Program ").append(pipeline).append(' ').append(stage).append(" stage\n")
+                .append("void main() {\n    vec3 color = vec3(texCoord0, 1.0);\n");
+        int lines = 20 + random.nextInt(40);
+        for (int l = 0; l < lines; l++) {
+            glsl.append("    color += vec3(").append(random.nextInt(1000) / 1000.0f).append(") * texCoord0.y;\n");
+        }
+        return glsl.append("    fragColor = vec4(color, 1.0);\n}\n").toString();
+    }
+}
@@ -0,0 +1,114 @@
+package net.vulkanshaders.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates SPIR-V modules shaped like shaderc output (declarations, then one function of arithmetic
+ * blocks), so benchmarks run without shaderc natives or a GPU
+ */
+public final class SyntheticSPIRV {
+    private int[] words = new int[1024];
+    private int size;
+    private int nextId = 1;
+
+    private SyntheticSPIRV() {
+    }
+
+    /**
+     * @param blocks Number of load/arithmetic/store blocks in the function body (roughly 30 words each)
+     */
+    public static ByteBuffer module(int blocks, long seed) {
+        return new SyntheticSPIRV().build(blocks, new Random(seed));
+    }
+
+    private ByteBuffer build(int blocks, Random random) {
+        emitRaw(0x07230203, 0x00010000, 0x000D000B, 0, 0);
+
+        emit(17, 1);                                   // OpCapability Shader
+        int glsl = id();
+        emit(11, glsl, 0x4C534C47, 0x6474732E, 0x3035342E, 0); // OpExtInstImport "GLSL.std.450"
+        emit(14, 0, 1);                                // OpMemoryModel Logical GLSL450
+
+        int main = id();
+        int position = id();
+        int output = id();
+        emit(15, 0, main, 0x6E69616D, 0, position, output); // OpEntryPoint Vertex "main"
+
+        int tVoid = id();
+        int tFunc = id();
+        int tFloat = id();
+        int tVec4 = id();
+        int tMat4 = id();
+        int tPtrIn = id();
+        int tPtrOut = id();
+        int tPtrFunc = id();
+        emit(71, position, 30, 0);                     // OpDecorate Location 0
+        emit(71, output, 30, 0);
+        emit(19, tVoid);
+        emit(33, tFunc, tVoid);
+        emit(22, tFloat, 32);
+        emit(23, tVec4, tFloat, 4);
+        emit(24, tMat4, tVec4, 4);
+        emit(32, tPtrIn, 1, tVec4);
+        emit(32, tPtrOut, 3, tVec4);
+        emit(32, tPtrFunc, 7, tVec4);
+
+        int[] constants = new int[16];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = id();
+            emit(43, tFloat, constants[i], Float.floatToIntBits(random.nextFloat()));
+        }
+        emit(59, tPtrIn, position, 1);
+        emit(59, tPtrOut, output, 3);
+
+        emit(54, tVoid, main, 0, tFunc);               // OpFunction
+        emit(248, id());                               // OpLabel
+        int local = id();
+        emit(59, tPtrFunc, local, 7);
+
+        int value = id();
+        emit(61, tVec4, value, position);              // OpLoad
+        for (int b = 0; b < blocks; b++) {
+            int loaded = id();
+            emit(61, tVec4, loaded, local);
+            int scaled = id();
+            emit(142, tVec4, scaled, loaded, constants[random.nextInt(constants.length)]); // OpVectorTimesScalar
+            int sum = id();
+            emit(129, tVec4, sum, scaled, value);      // OpFAdd
+            int normalized = id();
+            emit(12, tVec4, normalized, glsl, 69, sum); // OpExtInst Normalize
+            int product = id();
+            emit(133, tVec4, product, normalized, sum); // OpFMul
+            emit(62, local, product);                  // OpStore
+            value = product;
+        }
+        emit(62, output, value);
+        emit(253);                                     // OpReturn
+        emit(56);                                      // OpFunctionEnd
+
+        words[3] = nextId;
+        ByteBuffer module = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.LITTLE_ENDIAN);
+        module.asIntBuffer().put(words, 0, size);
+        return module;
+    }
+
+    private int id() {
+        return nextId++;
+    }
+
+    private void emit(int opcode, int... operands) {
+        emitRaw((operands.length + 1) << 16 | opcode);
+        emitRaw(operands);
+    }
+
+    private void emitRaw(int... values) {
+        if (size + values.length > words.length) {
+            words = Arrays.copyOf(words, Math.max(words.length * 2, size + values.length));
+        }
+        System.arraycopy(values, 0, words, size, values.length);
+        size += values.length;
+    }
+}
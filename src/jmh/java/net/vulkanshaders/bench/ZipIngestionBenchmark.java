@@ -0,0 +1,75 @@
+package net.vulkanshaders.bench;
+
+import net.vulkanshaders.loader.ShaderPackLoader;
+import net.vulkanshaders.model.ShaderPack;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reading shader packs from their zips, the part of startup before anything compiles
+ *
+ * loadPack indexes one zip (central directory, pack.json, checksums), loadAllPacks validates a whole
+ * shaderpacks directory the way the mod does at startup, readSources additionally inflates every
+ * source of the pack. The packs are {@link SyntheticPack}s written to a temp directory standing in for
+ * the game's shaderpacks directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ZipIngestionBenchmark {
+    private static final int PACKS = 4;
+
+    @Param({"10", "40"})
+    public int pipelines;
+
+    private Path directory;
+    private Path zip;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("vulkanshaders-packs-bench");
+        for (int i = 0; i < PACKS; i++) {
+            Path written = new SyntheticPack(pipelines, 32, i).writeZip(directory, "pack" + i);
+            if (zip == null) {
+                zip = written;
+            }
+        }
+
+        if (ShaderPackLoader.loadAllPacks(directory).size() != PACKS) {
+            throw new IllegalStateException("Synthetic packs did not load");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public ShaderPack loadPack() throws IOException {
+        return ShaderPackLoader.loadPackFile(zip);
+    }
+
+    @Benchmark
+    public List<ShaderPack> loadAllPacks() {
+        return ShaderPackLoader.loadAllPacks(directory);
+    }
+
+    @Benchmark
+    public void readSources(Blackhole blackhole) throws IOException {
+        ShaderPack pack = ShaderPackLoader.loadPackFile(zip);
+        for (var source : pack.getAllShaderSources().entrySet()) {
+            blackhole.consume(source.getValue());
+        }
+    }
+}
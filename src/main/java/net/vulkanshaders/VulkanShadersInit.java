@@ -3,20 +3,43 @@ package net.vulkanshaders;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.loader.api.FabricLoader;
 import net.vulkanmod.vulkan.shader.SPIRVUtils;
+import net.vulkanshaders.compiler.CacheJanitor;
+import net.vulkanshaders.compiler.MacroPreprocessor;
 import net.vulkanshaders.compiler.ShaderCache;
 import net.vulkanshaders.compiler.SPIRVCompiler;
+import net.vulkanshaders.compiler.ShaderCompileExecutor;
+import net.vulkanshaders.compiler.SourceCacheEntry;
+import net.vulkanshaders.config.VulkanShadersConfig;
+import net.vulkanshaders.loader.PackBundle;
+import net.vulkanshaders.loader.PackManifest;
+import net.vulkanshaders.loader.PackPrewarmer;
 import net.vulkanshaders.loader.ShaderPackLoader;
 import net.vulkanshaders.loader.ShaderPackRegistry;
+import net.vulkanshaders.model.PipelineConfig;
+import net.vulkanshaders.model.ShaderOptions;
 import net.vulkanshaders.model.ShaderPack;
 import net.vulkanshaders.pipeline.CustomPipeline;
 import net.vulkanshaders.pipeline.PipelineConfiguration;
+import net.vulkanshaders.pipeline.PipelineLoadProgress;
 import net.vulkanshaders.pipeline.PipelineManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public class VulkanShadersInit implements ModInitializer {
     public static final String MOD_ID = "vulkanshaders";
@@ -24,6 +47,13 @@ public class VulkanShadersInit implements ModInitializer {
 
     private static ShaderCache shaderCache;
     private static SPIRVCompiler spirvCompiler;
+    private static ShaderCompileExecutor compileExecutor;
+    private static final PipelineLoadProgress loadProgress = new PipelineLoadProgress();
+    private static volatile CompletableFuture<Void> loadTask = CompletableFuture.completedFuture(null);
+    // Activations, option changes and exports run one after another
+    private static CompletableFuture<Integer> packTask = CompletableFuture.completedFuture(0);
+    private static volatile ShaderPack publishedPack;
+    private static PackPrewarmer prewarmer;
 
     @Override
     public void onInitialize() {
@@ -38,7 +68,9 @@ public class VulkanShadersInit implements ModInitializer {
 
         // Initialize shader cache
         shaderCache = new ShaderCache();
-        spirvCompiler = new SPIRVCompiler(shaderCache);
+        Runtime.getRuntime().addShutdownHook(new Thread(shaderCache::shutdown, "VulkanShaders-CacheShutdown"));
+        spirvCompiler = new SPIRVCompiler(shaderCache, !VulkanShadersConfig.get().shouldKeepShaderDebugInfo());
+        compileExecutor = new ShaderCompileExecutor(spirvCompiler);
         LOGGER.info("Shader compiler initialized");
 
         // Create shaderpacks directory
@@ -52,7 +84,41 @@ public class VulkanShadersInit implements ModInitializer {
             return;
         }
 
-        // Load shader packs
+        // Scan and compile packs in the background, VulkanMod's pipelines are used until they are ready
+        ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VulkanShaders-Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        loadTask = CompletableFuture.supplyAsync(this::scanPacks, loader)
+                .thenCompose(packs -> loadAllPacks(packs, loader))
+                .handle((packs, error) -> {
+                    if (error != null) {
+                        LOGGER.error("✗ Failed to load shader packs", error);
+                        loadProgress.fail();
+                    } else {
+                        finishLoading(packs, shaderpacksDir);
+                        startPrewarm(packs);
+                    }
+
+                    // From now on activating a pack compiles and publishes it
+                    ShaderPackRegistry.addActivationListener(VulkanShadersInit::onPackActivated);
+                    if (error == null && ShaderPackRegistry.getActivePack() != publishedPack) {
+                        // Activated while the initial pack was compiling
+                        onPackActivated(ShaderPackRegistry.getActivePack());
+                    }
+
+                    startCacheJanitor();
+                    loader.shutdown();
+                    return null;
+                });
+
+        LOGGER.info("VulkanShaders initialized successfully! (loading shader packs in background)");
+    }
+
+    private List<ShaderPack> scanPacks() {
+        loadProgress.startScanning();
         LOGGER.info("Scanning for shader packs...");
         List<ShaderPack> packs = ShaderPackLoader.loadAllPacks();
 
@@ -62,133 +128,562 @@ public class VulkanShadersInit implements ModInitializer {
                     pack.getName(),
                     pack.getVersion(),
                     pack.getMetadata().author != null ? pack.getMetadata().author : "Unknown");
+        }
+
+        return packs;
+    }
 
-            // Load and compile pipelines from pack
-            loadPipelinesFromPack(pack);
+    /**
+     * Compile and publish the active pack only (the one used last time, else the first)
+     * The other packs are compiled when activated, or prewarmed into the cache in the background.
+     */
+    private CompletableFuture<List<ShaderPack>> loadAllPacks(List<ShaderPack> packs, ExecutorService loader) {
+        ShaderPack active = selectActivePack(packs);
+        if (active == null) {
+            loadProgress.startCompiling(0);
+            return CompletableFuture.completedFuture(packs);
         }
 
+        loadProgress.startCompiling(1);
+        return loadPipelinesFromPack(active, true).thenApplyAsync(ready -> {
+            PipelineManager.publish(ready, overridesFor(ready), true);
+            publishedPack = active;
+            finishPack(active);
+            loadProgress.packReady();
+            LOGGER.info("✓ Published {} pipeline(s) from {}", ready.size(), active.getName());
+            return packs;
+        }, loader);
+    }
+
+    private static ShaderPack selectActivePack(List<ShaderPack> packs) {
+        if (packs.isEmpty()) {
+            return null;
+        }
+
+        ShaderPack active = ShaderPackRegistry.getActivePack();
+        if (active == null) {
+            String remembered = VulkanShadersConfig.get().activePack;
+            active = packs.stream()
+                    .filter(pack -> pack.getName().equals(remembered))
+                    .findFirst()
+                    .orElse(packs.get(0));
+            ShaderPackRegistry.setActivePack(active);
+        }
+        return active;
+    }
+
+    /**
+     * Remember the newly activated pack, then compile it and swap its pipelines in
+     * Runs after the initial load and any pending option change or switch.
+     */
+    private static synchronized void onPackActivated(ShaderPack pack) {
+        VulkanShadersConfig config = VulkanShadersConfig.get();
+        config.activePack = pack != null ? pack.getName() : "";
+        config.save();
+
+        // The activation compiles this pack now and finishes it itself
+        if (prewarmer != null && pack != null) {
+            prewarmer.skip(pack);
+        }
+
+        packTask = CompletableFuture.allOf(loadTask, packTask)
+                .handle((ignored, error) -> null)
+                .thenCompose(ignored -> switchTo(pack));
+    }
+
+    private static CompletableFuture<Integer> switchTo(ShaderPack pack) {
+        if (pack == publishedPack) {
+            return CompletableFuture.completedFuture(0);
+        }
+        if (pack == null) {
+            PipelineManager.publish(Map.of(), Map.of(), PipelineManager.areOverridesEnabled());
+            publishedPack = null;
+            return CompletableFuture.completedFuture(0);
+        }
+
+        long start = System.nanoTime();
+        return loadPipelinesFromPack(pack, false).thenApply(ready -> {
+            PipelineManager.publish(ready, overridesFor(ready), true);
+            publishedPack = pack;
+            finishPack(pack);
+            LOGGER.info("✓ Switched to {}: {} pipeline(s) ready in {}ms",
+                    pack.getName(), ready.size(), (System.nanoTime() - start) / 1_000_000);
+            return ready.size();
+        });
+    }
+
+    /**
+     * Compile the inactive packs into the cache as background jobs, unless turned off
+     */
+    private static synchronized void startPrewarm(List<ShaderPack> packs) {
+        if (!VulkanShadersConfig.get().prewarmInactivePacks) {
+            return;
+        }
+
+        List<ShaderPack> inactive = packs.stream()
+                .filter(pack -> pack != publishedPack)
+                .toList();
+        if (inactive.isEmpty()) {
+            return;
+        }
+
+        inactive.forEach(VulkanShadersInit::loadManifest);
+        prewarmer = new PackPrewarmer(inactive, VulkanShadersInit::compileStage, VulkanShadersInit::finishPack);
+        prewarmer.start();
+        LOGGER.info("Prewarming {} inactive pack(s) in the background", inactive.size());
+    }
+
+    /**
+     * Compile one stage of a pack for its current options as a background job, for prewarming
+     * Background jobs only start when no activation or option change is waiting for a worker, so an
+     * activation never joins a prewarm compile that is still queued.
+     */
+    private static SPIRVCompiler.CompiledShader compileStage(ShaderPack pack, String path, SPIRVUtils.ShaderKind kind) {
+        ShaderOptions options = pack.getOptions();
+        MacroPreprocessor macros = MacroPreprocessor.forValues(options.getValues());
+        return ShaderCompileExecutor.await(compileExecutor.submitVariant(path, pack.getVariantKey(path, options),
+                variantSource(pack, macros, path), kind, pack.getVersion(), true));
+    }
+
+    /**
+     * A pack's SPIR-V is cached: keep its manifest for the next start and drop its source text
+     */
+    private static void finishPack(ShaderPack pack) {
+        storeManifest(pack);
+        // The text is read again from the pack file if ever needed
+        pack.releaseSources();
+    }
+
+    /**
+     * Record the pack's stage fingerprints for the next start, unless they came from a manifest already
+     */
+    private static void storeManifest(ShaderPack pack) {
+        if (pack.getManifest() != null || pack.getStamp() == null) {
+            return;
+        }
+
+        try {
+            PackManifest manifest = PackManifest.build(pack);
+            manifest.store(shaderCache, pack);
+            pack.setManifest(manifest);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to build manifest for {}", pack.getName(), e);
+        }
+    }
+
+    private void finishLoading(List<ShaderPack> packs, Path shaderpacksDir) {
         if (packs.isEmpty()) {
             LOGGER.info("No shader packs found in {}", shaderpacksDir);
-            LOGGER.info("Place .zip shader packs in this directory to use custom shaders");
+            LOGGER.info("Place .zip or .vspack shader packs in this directory to use custom shaders");
         } else {
             LOGGER.info("Loaded {} shader pack(s)", packs.size());
             LOGGER.info(PipelineManager.getStats());
-
-            // Setup pipeline overrides
-            PipelineManager.getPipeline("terrain").ifPresent(pipeline -> {
-                PipelineManager.setOverride("terrain", "terrain");
-            });
-
-            PipelineManager.setOverridesEnabled(true);
             LOGGER.info("Custom shader pipelines registered (will initialize when Vulkan is ready)");
 
             // Log cache stats
             var stats = shaderCache.getStats();
             LOGGER.info("Shader cache: {}", stats);
+            LOGGER.info("Deduplicated compile requests: {}", spirvCompiler.getDeduplicatedCount());
+            LOGGER.info("Shader blobs: {}", spirvCompiler.getContentIndex());
         }
 
-        LOGGER.info("VulkanShaders initialized successfully!");
+        loadProgress.complete();
+        LOGGER.info("Shader pack loading finished: {}", loadProgress);
     }
 
-    private void loadPipelinesFromPack(ShaderPack pack) {
+    /**
+     * VulkanMod pipelines a pack's pipelines replace, published together with them
+     */
+    private static Map<String, String> overridesFor(Map<String, CustomPipeline> pipelines) {
+        return pipelines.containsKey("terrain") ? Map.of("terrain", "terrain") : Map.of();
+    }
+
+    private void startCacheJanitor() {
+        // Disk cache quota/age cleanup, deferred well past startup on a low-priority thread
+        VulkanShadersConfig config = VulkanShadersConfig.get();
+        new CacheJanitor(shaderCache,
+                config.getDiskCacheQuotaBytes(),
+                config.getDiskCacheMaxAgeMillis(),
+                config.getCacheCleanupDelayMillis()).start();
+    }
+
+    /**
+     * @param track Count the compile jobs in the load progress (initial load only)
+     */
+    private static CompletableFuture<Map<String, CustomPipeline>> loadPipelinesFromPack(ShaderPack pack, boolean track) {
         LOGGER.info("Loading pipelines from pack: {}", pack.getName());
 
         if (pack.getMetadata().pipelines == null || pack.getMetadata().pipelines.isEmpty()) {
             LOGGER.warn("No pipelines defined in pack.json for {}", pack.getName());
+            return CompletableFuture.completedFuture(Map.of());
+        }
+
+        loadManifest(pack);
+
+        if (pack.getBundle() != null) {
+            seedFromBundle(pack, pack.getBundle());
+        }
+
+        return compilePipelines(pack, pack.getOptions(), config -> true, track);
+    }
+
+    /**
+     * An unchanged pack file needs no source hashing, its variant keys come from the manifest
+     */
+    private static void loadManifest(ShaderPack pack) {
+        if (pack.getManifest() != null) {
             return;
         }
 
-        int loaded = 0;
-        int compiled = 0;
-        int registered = 0;
+        PackManifest manifest = PackManifest.load(shaderCache, pack);
+        if (manifest != null) {
+            pack.setManifest(manifest);
+            LOGGER.info("✓ Pack {} unchanged, using manifest for {} stage(s)", pack.getName(), manifest.size());
+        }
+    }
+
+    /**
+     * Hand a bundle's precompiled stages to the compiler, so their variants are cache hits
+     * Stages whose sources changed, or that were built by another compiler version, are compiled from GLSL.
+     */
+    private static void seedFromBundle(ShaderPack pack, PackBundle bundle) {
+        if (!bundle.getCompilerVersion().equals(spirvCompiler.getCompilerVersion())) {
+            LOGGER.info("✗ Bundle {} was built by compiler {} (running {}), compiling from GLSL",
+                    bundle.getPath().getFileName(), bundle.getCompilerVersion(), spirvCompiler.getCompilerVersion());
+            return;
+        }
+
+        int seeded = 0;
+        int stale = 0;
+        for (PackBundle.Entry entry : bundle.getEntries()) {
+            String sourceHash = pack.getSourceHash(entry.stage());
+            if (!entry.sourceHash().equals(sourceHash)) {
+                stale++;
+                continue;
+            }
+            if (!entry.verify()) {
+                LOGGER.warn("Precompiled {} in {} failed its checksum, compiling from GLSL",
+                        entry.stage(), bundle.getPath().getFileName());
+                stale++;
+                continue;
+            }
+
+            SourceCacheEntry record = SourceCacheEntry.decode(entry.metadata());
+            spirvCompiler.addPrecompiled(entry.stage(),
+                    ShaderPack.variantKey(entry.stage(), sourceHash, entry.optionsKey()),
+                    entry.kind(), pack.getVersion(), entry.spirv(), entry.reflection(),
+                    record != null ? record.metadata() : null);
+            seeded++;
+        }
+
+        LOGGER.info("✓ Seeded {} precompiled stage(s) from {} ({} stale)",
+                seeded, bundle.getPath().getFileName(), stale);
+    }
+
+    /**
+     * Write a pack and its SPIR-V for the currently selected options as a precompiled bundle
+     * Clients loading the bundle with the same compiler version skip compilation for those variants.
+     *
+     * @return Future completing with the number of precompiled stages written
+     */
+    public static synchronized CompletableFuture<Integer> exportBundle(ShaderPack pack, Path target) {
+        // Queued like activations and option changes, so neither can switch the pack mid-write
+        CompletableFuture<Integer> exported = CompletableFuture.allOf(loadTask, packTask)
+                .handle((ignored, error) -> null)
+                .thenCompose(ignored -> writeBundle(pack, target));
+        packTask = exported;
+        return exported;
+    }
+
+    private static CompletableFuture<Integer> writeBundle(ShaderPack pack, Path target) {
+        ShaderOptions options = pack.getOptions();
+        MacroPreprocessor macros = MacroPreprocessor.forValues(options.getValues());
+
+        // Every stage once, in pack.json order
+        Map<String, SPIRVUtils.ShaderKind> stages = new LinkedHashMap<>();
+        for (PipelineConfig config : pack.getMetadata().pipelines.values()) {
+            stages.putIfAbsent(config.vertex, SPIRVUtils.ShaderKind.VERTEX_SHADER);
+            stages.putIfAbsent(config.fragment, SPIRVUtils.ShaderKind.FRAGMENT_SHADER);
+        }
+
+        Map<String, CompletableFuture<SPIRVCompiler.CompiledShader>> jobs = new LinkedHashMap<>();
+        stages.forEach((path, kind) -> {
+            if (pack.hasShaderSource(path)) {
+                jobs.put(path, submitVariant(pack, options, macros, path, kind));
+            }
+        });
+
+        return CompletableFuture.allOf(jobs.values().toArray(CompletableFuture[]::new))
+                .handle((ignored, error) -> {
+                    List<SPIRVCompiler.CompiledShader> compiled = new ArrayList<>();
+                    try {
+                        List<PackBundle.Entry> entries = new ArrayList<>();
+                        jobs.forEach((path, job) -> {
+                            if (job.isCompletedExceptionally()) {
+                                LOGGER.warn("Not bundling {}, it failed to compile", path);
+                                return;
+                            }
+                            SPIRVCompiler.CompiledShader shader = job.join();
+                            compiled.add(shader);
+                            entries.add(new PackBundle.Entry(path, stages.get(path),
+                                    options.variantKey(pack.getStageOptions(path)),
+                                    pack.getSourceHash(path), 0,
+                                    shader.bytecode().view(),
+                                    shader.reflection() != null ? shader.reflection().encode() : ByteBuffer.allocate(0),
+                                    new SourceCacheEntry(shader.cacheKey(), spirvCompiler.getMetadata(path)).encode()));
+                        });
+
+                        PackBundle.write(target, spirvCompiler.getCompilerVersion(),
+                                ShaderPackLoader.toJson(pack.getMetadata()), pack.getAllShaderSources(), entries);
+                        LOGGER.info("✓ Wrote bundle {} with {} precompiled stage(s)", target.getFileName(), entries.size());
+                        return entries.size();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to write shader pack bundle " + target, e);
+                    } finally {
+                        compiled.forEach(shader -> shader.bytecode().release());
+                        pack.releaseSources();
+                    }
+                });
+    }
+
+    /**
+     * Select new option values for a pack. Only pipelines whose shaders depend on a changed option are
+     * recompiled; their variants are compiled on first use and come straight from the cache afterwards.
+     * Changes are applied one after another, in the order they were requested.
+     *
+     * @return Future completing with the number of rebuilt pipelines
+     */
+    public static synchronized CompletableFuture<Integer> applyOptions(ShaderPack pack, ShaderOptions options) {
+        // Wait for the initial load too, its pipelines are the ones being replaced
+        CompletableFuture<Integer> applied = CompletableFuture.allOf(loadTask, packTask)
+                .handle((ignored, error) -> null)
+                .thenCompose(ignored -> rebuildForOptions(pack, options));
+        packTask = applied;
+        return applied;
+    }
+
+    private static CompletableFuture<Integer> rebuildForOptions(ShaderPack pack, ShaderOptions options) {
+        Set<String> changed = pack.getOptions().diff(options);
+        pack.setOptions(options);
+
+        // An inactive pack's pipelines are compiled with its new options when it is activated
+        if (changed.isEmpty() || pack.getMetadata().pipelines == null || pack != publishedPack) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        long start = System.nanoTime();
+
+        return compilePipelines(pack, options,
+                config -> dependsOnAny(pack, config.vertex, changed) || dependsOnAny(pack, config.fragment, changed),
+                false
+        ).thenApply(rebuilt -> {
+            PipelineManager.replacePipelines(rebuilt);
+            pack.releaseSources();
+            LOGGER.info("✓ Options {} changed in {}: rebuilt {} pipeline(s) in {}ms",
+                    changed, pack.getName(), rebuilt.size(), (System.nanoTime() - start) / 1_000_000);
+            return rebuilt.size();
+        });
+    }
+
+    private static boolean dependsOnAny(ShaderPack pack, String path, Set<String> options) {
+        for (String option : pack.getStageOptions(path)) {
+            if (options.contains(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compile the variants of a pack's pipelines for the given options
+     *
+     * @param filter Selects the pipelines to compile
+     * @param tracked Report the jobs to the load progress
+     */
+    private static CompletableFuture<Map<String, CustomPipeline>> compilePipelines(
+            ShaderPack pack, ShaderOptions options, Predicate<PipelineConfig> filter, boolean tracked) {
+        var VERTEX_SHADER = SPIRVUtils.ShaderKind.VERTEX_SHADER;
+        var FRAGMENT_SHADER = SPIRVUtils.ShaderKind.FRAGMENT_SHADER;
+
+        // Option conditionals are resolved on the workers, before conversion and hashing
+        MacroPreprocessor macros = MacroPreprocessor.forValues(options.getValues());
+
+        // Submit every (pipeline, stage) compile job up front so they all run in parallel
+        List<PendingPipeline> pending = new ArrayList<>();
+        List<CompletableFuture<?>> jobs = new ArrayList<>();
 
         for (var entry : pack.getMetadata().pipelines.entrySet()) {
             String pipelineName = entry.getKey();
             var pipelineConfig = entry.getValue();
 
             try {
-                // Get shader sources
-                String vertSource = pack.getAllShaderSources().get(pipelineConfig.vertex);
-                String fragSource = pack.getAllShaderSources().get(pipelineConfig.fragment);
-
-                if (vertSource == null || fragSource == null) {
-                    LOGGER.error("Missing shader sources for pipeline: {}", pipelineName);
+                if (!filter.test(pipelineConfig)) {
                     continue;
                 }
 
-                LOGGER.info("Found shader program: {}", pipelineName);
-                LOGGER.info("  Vertex: {} ({} bytes)", pipelineConfig.vertex, vertSource.length());
-                LOGGER.info("  Fragment: {} ({} bytes)", pipelineConfig.fragment, fragSource.length());
-
-                // Compile shaders
-                try {
-                    LOGGER.info("Compiling shaders for pipeline: {}", pipelineName);
-
-                    var VERTEX_SHADER = SPIRVUtils.ShaderKind.VERTEX_SHADER;
-                    var FRAGMENT_SHADER = SPIRVUtils.ShaderKind.FRAGMENT_SHADER;
-
-                    // Compile vertex shader
-                    var vertSpirv = spirvCompiler.compile(
-                            pipelineConfig.vertex,
-                            vertSource,
-                            VERTEX_SHADER,
-                            pack.getVersion()
-                    );
-
-                    LOGGER.info("  ✓ Vertex shader compiled ({} bytes SPIR-V)",
-                            vertSpirv.bytecode().remaining());
-
-                    // Compile fragment shader
-                    var fragSpirv = spirvCompiler.compile(
-                            pipelineConfig.fragment,
-                            fragSource,
-                            FRAGMENT_SHADER,
-                            pack.getVersion()
-                    );
-
-                    LOGGER.info("  ✓ Fragment shader compiled ({} bytes SPIR-V)",
-                            fragSpirv.bytecode().remaining());
-
-                    compiled++;
-
-                    // Create PipelineConfiguration from PipelineConfig (JSON)
-                    PipelineConfiguration configuration =
-                            PipelineConfiguration.fromPipelineConfig(pipelineConfig);
-
-                    // Create CustomPipeline
-                    CustomPipeline customPipeline = new CustomPipeline(
-                            pipelineName,
-                            pack,
-                            vertSpirv,
-                            fragSpirv,
-                            configuration
-                    );
-
-                    // Register but DON'T initialize yet (Vulkan context not ready)
-                    PipelineManager.registerPipeline(pipelineName, customPipeline);
-                    LOGGER.info("  ✓ Registered custom pipeline: {}", pipelineName);
-                    registered++;
-
-                } catch (Exception e) {
-                    LOGGER.error("Failed to compile shaders for pipeline: {}", pipelineName, e);
+                // Sources are only read if a stage is not cached
+                if (!pack.hasShaderSource(pipelineConfig.vertex) || !pack.hasShaderSource(pipelineConfig.fragment)) {
+                    LOGGER.error("Missing shader sources for pipeline: {}", pipelineName);
                     continue;
                 }
 
-                loaded++;
+                LOGGER.info("Found shader program: {}", pipelineName);
+                LOGGER.info("  Vertex: {}", pipelineConfig.vertex);
+                LOGGER.info("  Fragment: {}", pipelineConfig.fragment);
+
+                var vertJob = submitVariant(pack, options, macros, pipelineConfig.vertex, VERTEX_SHADER);
+                var fragJob = submitVariant(pack, options, macros, pipelineConfig.fragment, FRAGMENT_SHADER);
+
+                PendingPipeline job = new PendingPipeline(
+                        pipelineName,
+                        pipelineConfig,
+                        tracked ? track(vertJob) : vertJob,
+                        tracked ? track(fragJob) : fragJob
+                );
+                pending.add(job);
+                jobs.add(job.vertex());
+                jobs.add(job.fragment());
             } catch (Exception e) {
                 LOGGER.error("Failed to load pipeline: {}", pipelineName, e);
             }
         }
 
-        LOGGER.info("Found {} shader programs in {} ({} compiled, {} registered)",
-                loaded, pack.getName(), compiled, registered);
+        // Individual failures are reported per pipeline, they must not fail the whole pack
+        return CompletableFuture.allOf(jobs.toArray(CompletableFuture[]::new))
+                .handle((ignored, error) -> buildPipelines(pack, pending));
+    }
+
+    /**
+     * Compile one stage for the given options, keyed by its sources and the options it actually uses
+     * The source is only read (on a worker) if the variant is not cached.
+     */
+    private static CompletableFuture<SPIRVCompiler.CompiledShader> submitVariant(
+            ShaderPack pack, ShaderOptions options, MacroPreprocessor macros,
+            String path, SPIRVUtils.ShaderKind kind) {
+        return compileExecutor.submitVariant(path, pack.getVariantKey(path, options),
+                variantSource(pack, macros, path), kind, pack.getVersion());
+    }
+
+    /**
+     * Preprocessed source of a stage, only read from the pack if the variant is not cached
+     */
+    private static Supplier<String> variantSource(ShaderPack pack, MacroPreprocessor macros, String path) {
+        return () -> {
+            String source = pack.getShaderSource(path);
+            if (source == null) {
+                throw new IllegalStateException("Shader source could not be read: " + path);
+            }
+            return macros.process(source, path);
+        };
+    }
+
+    private static CompletableFuture<SPIRVCompiler.CompiledShader> track(
+            CompletableFuture<SPIRVCompiler.CompiledShader> job) {
+        loadProgress.jobSubmitted();
+        job.whenComplete((shader, error) -> loadProgress.jobFinished(error != null));
+        return job;
+    }
+
+    private static Map<String, CustomPipeline> buildPipelines(ShaderPack pack, List<PendingPipeline> pending) {
+        Map<String, CustomPipeline> pipelines = new LinkedHashMap<>();
+        int loaded = 0;
+        int compiled = 0;
+
+        // Build in pack.json order, regardless of which job finished first
+        for (PendingPipeline job : pending) {
+            String pipelineName = job.name();
+            CustomPipeline customPipeline = null;
+
+            try {
+                LOGGER.info("Compiling shaders for pipeline: {}", pipelineName);
+
+                var vertShader = ShaderCompileExecutor.await(job.vertex());
+                LOGGER.info("  ✓ Vertex shader compiled ({} bytes SPIR-V)",
+                        vertShader.bytecode().size());
+
+                var fragShader = ShaderCompileExecutor.await(job.fragment());
+                LOGGER.info("  ✓ Fragment shader compiled ({} bytes SPIR-V)",
+                        fragShader.bytecode().size());
+
+                compiled++;
+
+                // Create PipelineConfiguration from PipelineConfig (JSON)
+                PipelineConfiguration configuration =
+                        PipelineConfiguration.fromPipelineConfig(job.config());
+
+                // Create CustomPipeline
+                customPipeline = new CustomPipeline(
+                        pipelineName,
+                        pack,
+                        vertShader,
+                        fragShader,
+                        configuration
+                );
+
+                // Keep this pipeline's blobs resident in the memory tier while it is alive
+                customPipeline.retainCacheEntries(shaderCache, vertShader.cacheKey(), fragShader.cacheKey());
+
+                // Collected now, registered with the rest of the pack (Vulkan context not ready yet either way)
+                pipelines.put(pipelineName, customPipeline);
+
+            } catch (Exception e) {
+                LOGGER.error("Failed to compile shaders for pipeline: {}", pipelineName, e);
+                releaseFailed(job.vertex(), job.fragment(), customPipeline);
+                continue;
+            }
+
+            loaded++;
+        }
+
+        LOGGER.info("Found {} shader programs in {} ({} compiled, {} ready)",
+                loaded, pack.getName(), compiled, pipelines.size());
+        return pipelines;
+    }
+
+    /**
+     * Drop what a pipeline that failed to build holds: the built pipeline owns the bytecode of both
+     * stages, before that each job's result does
+     */
+    public static void releaseFailed(CompletableFuture<SPIRVCompiler.CompiledShader> vertex,
+                                     CompletableFuture<SPIRVCompiler.CompiledShader> fragment,
+                                     CustomPipeline pipeline) {
+        if (pipeline != null) {
+            pipeline.cleanup();
+        } else {
+            ShaderCompileExecutor.discard(vertex);
+            ShaderCompileExecutor.discard(fragment);
+        }
     }
 
     public static ShaderCache getShaderCache() {
         return shaderCache;
     }
 
+    /**
+     * Progress of the background shader pack load
+     */
+    public static PipelineLoadProgress getLoadProgress() {
+        return loadProgress;
+    }
+
+    /**
+     * Completes once every pack has been compiled and published (or loading failed)
+     */
+    public static CompletableFuture<Void> getLoadTask() {
+        return loadTask;
+    }
+
     public static SPIRVCompiler getCompiler() {
         return spirvCompiler;
     }
+
+    public static ShaderCompileExecutor getCompileExecutor() {
+        return compileExecutor;
+    }
+
+    private record PendingPipeline(String name,
+                                   PipelineConfig config,
+                                   CompletableFuture<SPIRVCompiler.CompiledShader> vertex,
+                                   CompletableFuture<SPIRVCompiler.CompiledShader> fragment) {
+    }
 }
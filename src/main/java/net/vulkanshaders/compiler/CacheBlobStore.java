@@ -0,0 +1,683 @@
+package net.vulkanshaders.compiler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Single-file SPIR-V store: an append-only blob file plus a compact index (key -> offset/length/CRC)
+ *
+ * The index is read in a single pass into a hash table at startup, and the blob file is memory-mapped
+ * so a lookup is one hash probe plus a zero-copy slice. Writes are group-committed: blobs are appended right away,
+ * their index records are queued and {@link #flush()} (called shortly after the first queued write) fsyncs the blob
+ * file once, then appends and fsyncs the whole batch of records. The index never points at bytes that are not durable,
+ * a crash loses at most the last batch (recompiled on the next start) or leaves a torn index tail that is ignored.
+ * Dead space (overwritten, removed or cleared entries) is reclaimed by compaction before the store is mapped.
+ * Last-access times are tracked in memory and persisted to a side file by {@link #saveAccessTimes()}.
+ */
+public class CacheBlobStore implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/BlobStore");
+
+    public static final String BLOB_FILE = "spirv.blob";
+    public static final String INDEX_FILE = "spirv.idx";
+    public static final String ACCESS_FILE = "spirv.atime";
+
+    private static final int BLOB_MAGIC = 0x5653424C; // "VSBL"
+    private static final int INDEX_MAGIC = 0x56534958; // "VSIX"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // Blobs start on aligned offsets so mapped slices can go to vkCreateShaderModule without a copy
+    private static final int BLOB_ALIGNMENT = 16;
+
+    // keyLength(2) + offset(8) + length(4) + crc(4) + recordCrc(4), plus the key bytes
+    private static final int RECORD_FIXED_SIZE = 22;
+    // Set in keyLength when the key ends in a content hash, stored as 16 binary bytes instead of 32 hex chars
+    private static final int BINARY_HASH_FLAG = 0x8000;
+    // Index record length marking a removed key
+    private static final int TOMBSTONE = -1;
+    // Over quota, compaction is worth a rewrite once at least this fraction of the file is dead
+    private static final double OVER_QUOTA_COMPACT_RATIO = 0.1;
+    // How long queued index records wait for more writes before they are committed
+    private static final long FLUSH_DELAY_MILLIS = 200;
+
+    private final Path directory;
+    private final Path accessPath;
+
+    // Replaced by compaction, which holds both flushLock and this
+    private volatile FileChannel blobChannel;
+    private volatile FileChannel indexChannel;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    // Stores are read through the channel until mapped, so compaction can replace the files (Windows locks mapped files)
+    private volatile boolean mapBlobs;
+
+    // Serializes commits so batches reach the index in the order they were queued. Taken before this.
+    private final Object flushLock = new Object();
+    private final List<ByteBuffer> pendingRecords = new ArrayList<>(); // guarded by this
+    private boolean flushScheduled; // guarded by this
+
+    private volatile ByteBuffer mapped;
+    private long liveBytes;
+    private volatile long fileBytes;
+
+    private CacheBlobStore(Path directory) throws IOException {
+        this.directory = directory;
+        this.blobChannel = openWithHeader(directory.resolve(BLOB_FILE), BLOB_MAGIC);
+        this.indexChannel = openWithHeader(directory.resolve(INDEX_FILE), INDEX_MAGIC);
+        this.accessPath = directory.resolve(ACCESS_FILE);
+
+        loadIndex();
+        loadAccessTimes();
+        this.fileBytes = blobChannel.size();
+    }
+
+    /**
+     * Open (or create) the store in the given directory
+     */
+    public static CacheBlobStore open(Path directory) throws IOException {
+        return open(directory, 1.0);
+    }
+
+    /**
+     * Open (or create) the store, compacting it first if more than the given fraction of the blob file is dead.
+     * The index is read once, compaction works from the entries already loaded.
+     */
+    public static CacheBlobStore open(Path directory, double compactThreshold) throws IOException {
+        return open(directory, compactThreshold, Long.MAX_VALUE);
+    }
+
+    /**
+     * Open (or create) the store, compacting it first if more than the given fraction of the blob file is dead,
+     * or if the file is over quota and evicted entries left enough dead space to shrink it.
+     * The index is read once, compaction works from the entries already loaded.
+     */
+    public static CacheBlobStore open(Path directory, double compactThreshold, long quotaBytes) throws IOException {
+        Files.createDirectories(directory);
+        CacheBlobStore store = new CacheBlobStore(directory);
+        try {
+            double deadRatio = store.getDeadRatio();
+            if (deadRatio > compactThreshold
+                    || (store.getFileBytes() > quotaBytes && deadRatio > OVER_QUOTA_COMPACT_RATIO)) {
+                try {
+                    store.rewrite();
+                } catch (IOException e) {
+                    // The files may be half replaced, start over from whatever is on disk now
+                    LOGGER.warn("Failed to compact shader blob store, continuing without compaction", e);
+                    store.close();
+                    store = new CacheBlobStore(directory);
+                }
+            }
+
+            store.mapBlobs = true;
+            store.remap();
+            return store;
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Look up a blob
+     *
+     * @param key Cache key
+     * @return Read-only slice of the mapped blob file, or null if not stored or corrupt
+     */
+    public ByteBuffer get(String key) {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        ByteBuffer slice = read(key, entry);
+        if (slice != null) {
+            entry.lastAccess = System.currentTimeMillis();
+        }
+        return slice;
+    }
+
+    private ByteBuffer read(String key, Entry entry) {
+        ByteBuffer slice = mapBlobs ? mappedSlice(entry) : readCopy(entry);
+        if (slice == null) {
+            return null;
+        }
+
+        // Verify once per entry, subsequent hits are a plain slice
+        if (!entry.verified) {
+            CRC32C crc = new CRC32C();
+            crc.update(slice.duplicate());
+            if ((int) crc.getValue() != entry.crc) {
+                LOGGER.warn("Blob store entry {} failed CRC check, dropping it", key);
+                drop(key, entry);
+                return null;
+            }
+            entry.verified = true;
+        }
+        return slice;
+    }
+
+    private ByteBuffer mappedSlice(Entry entry) {
+        ByteBuffer view = mapped;
+        if (view == null || entry.offset + entry.length > view.capacity()) {
+            // Appended after the last mapping, extend it
+            view = remapSafely();
+            if (view == null || entry.offset + entry.length > view.capacity()) {
+                return null;
+            }
+        }
+        return view.slice((int) entry.offset, entry.length);
+    }
+
+    private ByteBuffer readCopy(Entry entry) {
+        ByteBuffer copy = ByteBuffer.allocate(entry.length);
+        try {
+            while (copy.hasRemaining()) {
+                if (blobChannel.read(copy, entry.offset + copy.position()) < 0) {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read shader blob at offset {}", entry.offset, e);
+            return null;
+        }
+        return copy.flip();
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Append a blob and queue its index record for the next {@link #flush()}.
+     * The entry is readable right away, it survives a restart once flushed.
+     */
+    public synchronized void put(String key, ByteBuffer bytecode) throws IOException {
+        ByteBuffer data = bytecode.duplicate();
+        int length = data.remaining();
+
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        int dataCrc = (int) crc.getValue();
+
+        long offset = alignOffset(blobChannel.size());
+        writeFully(blobChannel, data, offset);
+        queueRecord(encodeRecord(key, offset, length, dataCrc));
+
+        Entry entry = new Entry(offset, length, dataCrc);
+        entry.verified = true;
+        Entry previous = index.put(key, entry);
+        if (previous != null) {
+            liveBytes -= previous.length;
+        }
+        liveBytes += length;
+        fileBytes = offset + length;
+    }
+
+    /**
+     * Remove a key by queueing a tombstone record, committed with the next {@link #flush()} in order with any
+     * queued put of the same key. Its bytes become dead space until the next compaction.
+     *
+     * @return Number of live bytes released, 0 if the key was not stored
+     */
+    public synchronized long remove(String key) {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return 0;
+        }
+
+        queueRecord(encodeRecord(key, 0, TOMBSTONE, 0));
+        drop(key, entry);
+        return entry.length;
+    }
+
+    private synchronized void queueRecord(ByteBuffer record) {
+        pendingRecords.add(record);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            Flusher.EXECUTOR.schedule(this::flushQuietly, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Commit every queued index record: one fsync of the blob file, then one append and fsync of the index
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            ByteBuffer batch;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pendingRecords.isEmpty()) {
+                    return;
+                }
+
+                batch = ByteBuffer.allocate(pendingRecords.stream().mapToInt(ByteBuffer::remaining).sum());
+                pendingRecords.forEach(batch::put);
+                pendingRecords.clear();
+            }
+
+            // Every blob in the batch was written before its record was queued
+            blobChannel.force(false);
+            writeFully(indexChannel, batch.flip(), indexChannel.size());
+            indexChannel.force(false);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to commit shader blob index records", e);
+        }
+    }
+
+    private synchronized void drop(String key, Entry entry) {
+        if (index.remove(key, entry)) {
+            liveBytes -= entry.length;
+        }
+    }
+
+    /**
+     * Snapshot of every live key with its size and last access time, for the cache janitor
+     */
+    public List<AccessRecord> getAccessRecords() {
+        List<AccessRecord> records = new ArrayList<>(index.size());
+        index.forEach((key, entry) -> records.add(new AccessRecord(key, entry.length, entry.lastAccess)));
+        return records;
+    }
+
+    /**
+     * Persist last-access times next to the index (written to a temp file and moved into place)
+     */
+    public void saveAccessTimes() throws IOException {
+        Path temp = accessPath.resolveSibling(ACCESS_FILE + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            List<AccessRecord> records = getAccessRecords();
+            out.writeInt(records.size());
+            for (AccessRecord record : records) {
+                out.writeUTF(record.key());
+                out.writeLong(record.lastAccess());
+            }
+        }
+
+        Files.move(temp, accessPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void loadAccessTimes() {
+        long now = System.currentTimeMillis();
+        for (Entry entry : index.values()) {
+            entry.lastAccess = now; // Entries without a recorded access count as fresh
+        }
+
+        if (!Files.exists(accessPath)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(accessPath)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long lastAccess = in.readLong();
+
+                Entry entry = index.get(key);
+                if (entry != null) {
+                    entry.lastAccess = lastAccess;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Ignoring unreadable access time file", e);
+        }
+    }
+
+    /**
+     * Drop every index entry. Blob bytes become dead space until the next compaction.
+     * The mapped blob file is never truncated while open, so slices already handed out stay valid.
+     */
+    public void clear() throws IOException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                pendingRecords.clear();
+                indexChannel.truncate(HEADER_SIZE);
+                indexChannel.force(true);
+                Files.deleteIfExists(accessPath);
+                index.clear();
+                liveBytes = 0;
+            }
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    /**
+     * Fraction of the blob file occupied by entries no index record points at
+     */
+    public synchronized double getDeadRatio() {
+        long total = fileBytes - HEADER_SIZE;
+        return total <= 0 ? 0.0 : 1.0 - (double) liveBytes / total;
+    }
+
+    /**
+     * Commit queued records and close the files
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            try {
+                flush();
+            } finally {
+                synchronized (this) {
+                    mapped = null;
+                    blobChannel.close();
+                    indexChannel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrite the store keeping only live entries. Must be called while no store instance is open on the directory.
+     *
+     * @return Number of bytes reclaimed
+     */
+    public static long compact(Path directory) throws IOException {
+        if (!Files.exists(directory.resolve(BLOB_FILE)) || !Files.exists(directory.resolve(INDEX_FILE))) {
+            return 0;
+        }
+
+        try (CacheBlobStore store = new CacheBlobStore(directory)) {
+            return store.rewrite();
+        }
+    }
+
+    /**
+     * Fraction of the blob file occupied by entries no index record points at, for a store that is not open
+     */
+    public static double deadRatio(Path directory) {
+        try (CacheBlobStore store = new CacheBlobStore(directory)) {
+            return store.getDeadRatio();
+        } catch (IOException e) {
+            return 0.0;
+        }
+    }
+
+    /**
+     * Copy the live entries into fresh files, move them over the old ones and continue on them.
+     * Only before the store is mapped: a mapping keeps the old file locked on Windows.
+     *
+     * @return Number of bytes reclaimed
+     */
+    private long rewrite() throws IOException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                return rewriteLocked();
+            }
+        }
+    }
+
+    private long rewriteLocked() throws IOException {
+        Path blobPath = directory.resolve(BLOB_FILE);
+        Path indexPath = directory.resolve(INDEX_FILE);
+        Path tempBlob = directory.resolve(BLOB_FILE + ".compact");
+        Path tempIndex = directory.resolve(INDEX_FILE + ".compact");
+        long before = blobChannel.size();
+
+        Files.deleteIfExists(tempBlob);
+        Files.deleteIfExists(tempIndex);
+
+        Map<String, Entry> rewritten = new LinkedHashMap<>();
+        long rewrittenBytes = 0;
+        try (FileChannel blobOut = openWithHeader(tempBlob, BLOB_MAGIC);
+             FileChannel indexOut = openWithHeader(tempIndex, INDEX_MAGIC)) {
+            for (var entry : index.entrySet()) {
+                Entry source = entry.getValue();
+                ByteBuffer data = read(entry.getKey(), source);
+                if (data == null) {
+                    continue; // Corrupt, drop it
+                }
+
+                long offset = alignOffset(blobOut.size());
+                writeFully(blobOut, data, offset);
+                writeFully(indexOut, encodeRecord(entry.getKey(), offset, source.length, source.crc), indexOut.size());
+
+                Entry moved = new Entry(offset, source.length, source.crc);
+                moved.verified = true;
+                moved.lastAccess = source.lastAccess;
+                rewritten.put(entry.getKey(), moved);
+                rewrittenBytes += source.length;
+            }
+            blobOut.force(true);
+            indexOut.force(true);
+        }
+
+        // Queued records point into the old file, every live entry is in the rewritten index already
+        pendingRecords.clear();
+        blobChannel.close();
+        indexChannel.close();
+        try {
+            // Blob first: the old index cannot point past the end of a smaller blob file without failing its bounds check
+            Files.move(tempBlob, blobPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempIndex, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            blobChannel = openWithHeader(blobPath, BLOB_MAGIC);
+            indexChannel = openWithHeader(indexPath, INDEX_MAGIC);
+        }
+
+        index.clear();
+        index.putAll(rewritten);
+        liveBytes = rewrittenBytes;
+        fileBytes = blobChannel.size();
+
+        long reclaimed = before - fileBytes;
+        LOGGER.info("Compacted shader blob store, reclaimed {} KB", reclaimed / 1024);
+        return reclaimed;
+    }
+
+    private void loadIndex() throws IOException {
+        long indexSize = indexChannel.size();
+        long blobSize = blobChannel.size();
+        if (indexSize <= HEADER_SIZE) {
+            return;
+        }
+
+        if (indexSize > Integer.MAX_VALUE) {
+            throw new IOException("Shader blob index is too large");
+        }
+
+        // One read for the whole index, records are parsed from memory
+        ByteBuffer indexMap = ByteBuffer.allocate((int) indexSize);
+        while (indexMap.hasRemaining() && indexChannel.read(indexMap, indexMap.position()) >= 0) {
+            // Keep reading until the buffer is full
+        }
+        indexMap.flip().position(HEADER_SIZE);
+
+        Map<String, Entry> loaded = new LinkedHashMap<>();
+        long validEnd = HEADER_SIZE;
+
+        while (indexMap.remaining() >= RECORD_FIXED_SIZE) {
+            int recordStart = indexMap.position();
+            int keyField = Short.toUnsignedInt(indexMap.getShort());
+            int keyLength = keyField & ~BINARY_HASH_FLAG;
+            boolean binaryHash = (keyField & BINARY_HASH_FLAG) != 0;
+            if (indexMap.remaining() < keyLength + RECORD_FIXED_SIZE - 2
+                    || (binaryHash && keyLength < ContentHash.BYTES)) {
+                break; // Torn tail
+            }
+
+            byte[] keyBytes = new byte[binaryHash ? keyLength - ContentHash.BYTES : keyLength];
+            indexMap.get(keyBytes);
+            ContentHash hash = binaryHash ? ContentHash.readFrom(indexMap) : null;
+            long offset = indexMap.getLong();
+            int length = indexMap.getInt();
+            int dataCrc = indexMap.getInt();
+            int recordCrc = indexMap.getInt();
+
+            CRC32C crc = new CRC32C();
+            crc.update(indexMap.duplicate().position(recordStart).limit(indexMap.position() - 4));
+            if ((int) crc.getValue() != recordCrc) {
+                LOGGER.warn("Shader blob index is corrupt after {} entries, ignoring the rest", loaded.size());
+                break;
+            }
+
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (hash != null) {
+                key += hash.toHex();
+            }
+            if (length == TOMBSTONE) {
+                loaded.remove(key);
+                validEnd = indexMap.position();
+                continue;
+            }
+
+            if (offset < HEADER_SIZE || offset + length > blobSize) {
+                LOGGER.warn("Shader blob index is corrupt after {} entries, ignoring the rest", loaded.size());
+                break;
+            }
+
+            loaded.put(key, new Entry(offset, length, dataCrc));
+            validEnd = indexMap.position();
+        }
+
+        // Cut a torn tail so the next append starts on a record boundary
+        if (validEnd < indexSize) {
+            indexChannel.truncate(validEnd);
+        }
+
+        index.putAll(loaded);
+        for (Entry entry : loaded.values()) {
+            liveBytes += entry.length;
+        }
+
+        LOGGER.debug("Loaded shader blob index: {} entries", loaded.size());
+    }
+
+    private synchronized ByteBuffer remap() throws IOException {
+        long size = blobChannel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Shader blob store exceeds 2 GB, delete the shadercache directory");
+        }
+        mapped = blobChannel.map(FileChannel.MapMode.READ_ONLY, 0, size).asReadOnlyBuffer();
+        return mapped;
+    }
+
+    private ByteBuffer remapSafely() {
+        try {
+            return remap();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to remap shader blob store", e);
+            return null;
+        }
+    }
+
+    // One shared daemon thread commits the queued records of every open store
+    private static final class Flusher {
+        static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VulkanShaders-BlobFlush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static long alignOffset(long offset) {
+        return (offset + BLOB_ALIGNMENT - 1) & -BLOB_ALIGNMENT;
+    }
+
+    private static FileChannel openWithHeader(Path path, int magic) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (channel.size() < HEADER_SIZE) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(magic).putInt(FORMAT_VERSION).flip();
+            writeFully(channel, header, 0);
+            channel.force(true);
+            return channel;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != magic || header.getInt() != FORMAT_VERSION) {
+            channel.close();
+            throw new IOException("Unsupported shader blob store format: " + path.getFileName());
+        }
+        return channel;
+    }
+
+    /**
+     * Keys ending in a formatted content hash (prefix + 32 hex chars) store the hash in binary
+     */
+    private static ByteBuffer encodeRecord(String key, long offset, int length, int dataCrc) {
+        int prefixLength = key.length() - ContentHash.HEX_LENGTH;
+        ContentHash hash = ContentHash.parseHex(key, prefixLength);
+        byte[] keyBytes = (hash != null ? key.substring(0, prefixLength) : key).getBytes(StandardCharsets.UTF_8);
+        int storedLength = keyBytes.length + (hash != null ? ContentHash.BYTES : 0);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_FIXED_SIZE + storedLength);
+        record.putShort((short) (storedLength | (hash != null ? BINARY_HASH_FLAG : 0)))
+                .put(keyBytes);
+        if (hash != null) {
+            hash.writeTo(record);
+        }
+        record.putLong(offset)
+                .putInt(length)
+                .putInt(dataCrc);
+
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        return record.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    public record AccessRecord(String key, int length, long lastAccess) {
+    }
+
+    private static class Entry {
+        final long offset;
+        final int length;
+        final int crc;
+        volatile boolean verified;
+        volatile long lastAccess;
+
+        Entry(long offset, int length, int crc) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package net.vulkanshaders.compiler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Background disk cache cleanup: drops entries past their max age, then least recently used
+ * entries until the cache fits its quota, and persists last-access times. Runs on a low-priority thread,
+ * first well after startup, then periodically. Evicted blob bytes are dead space until the store is
+ * compacted on the next start (see {@link CacheBlobStore#open(Path, double, long)}).
+ */
+public class CacheJanitor implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/CacheJanitor");
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ShaderCache cache;
+    private final long quotaBytes;
+    private final long maxAgeMillis;
+    private final long delayMillis;
+
+    public CacheJanitor(ShaderCache cache, long quotaBytes, long maxAgeMillis, long delayMillis) {
+        this.cache = cache;
+        this.quotaBytes = quotaBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Start the janitor on its own low-priority daemon thread
+     */
+    public Thread start() {
+        Thread thread = new Thread(this, "VulkanShaders-CacheJanitor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return thread;
+    }
+
+    @Override
+    public void run() {
+        try {
+            // Stay out of the way of startup
+            Thread.sleep(delayMillis);
+            while (true) {
+                sweep();
+                Thread.sleep(SWEEP_INTERVAL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sweep() {
+        try {
+            long start = System.currentTimeMillis();
+            long deleted = cleanLegacyFiles();
+            long evicted = cleanBlobStore();
+            if (deleted > 0 || evicted > 0) {
+                LOGGER.info("Shader cache cleanup deleted {} KB of legacy files, evicted {} KB from the blob store"
+                                + " (reclaimed by compaction on the next start) in {}ms",
+                        deleted / 1024, evicted / 1024, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Shader cache cleanup failed", e);
+        }
+    }
+
+    /**
+     * @return Live bytes evicted
+     */
+    private long cleanBlobStore() throws IOException {
+        CacheBlobStore store = cache.getBlobStore();
+        if (store == null) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        long liveBytes = store.getLiveBytes();
+        long freed = 0;
+        int removed = 0;
+
+        List<CacheBlobStore.AccessRecord> records = store.getAccessRecords();
+        records.sort(Comparator.comparingLong(CacheBlobStore.AccessRecord::lastAccess));
+
+        for (CacheBlobStore.AccessRecord record : records) {
+            boolean expired = now - record.lastAccess() > maxAgeMillis;
+            boolean overQuota = liveBytes - freed > quotaBytes;
+            if (!expired && !overQuota) {
+                break; // Sorted oldest first, nothing newer qualifies either
+            }
+
+            if (cache.isPinned(record.key())) {
+                continue;
+            }
+
+            freed += store.remove(record.key());
+            removed++;
+        }
+
+        // All tombstones of this sweep in one commit
+        store.flush();
+        store.saveAccessTimes();
+
+        if (removed > 0) {
+            LOGGER.info("Evicted {} shader cache entries", removed);
+        }
+        return freed;
+    }
+
+    /**
+     * Legacy per-file entries are migrated on hit, anything still here past the max age is orphaned.
+     * Also recounts them so the cache's O(1) stats start from exact numbers.
+     */
+    private long cleanLegacyFiles() throws IOException {
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        long freed = 0;
+        int remaining = 0;
+        long remainingBytes = 0;
+
+        try (Stream<Path> files = Files.list(cache.getCacheDir())) {
+            for (Path path : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".spv"))::iterator) {
+                try {
+                    long size = Files.size(path);
+                    if (Files.getLastModifiedTime(path).toMillis() < cutoff) {
+                        Files.delete(path);
+                        freed += size;
+                    } else {
+                        remaining++;
+                        remainingBytes += size;
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Skipping cache file {}", path, e);
+                }
+            }
+        }
+
+        cache.resetLegacyCounters(remaining, remainingBytes);
+        return freed;
+    }
+}
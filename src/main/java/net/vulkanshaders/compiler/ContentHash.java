@@ -0,0 +1,77 @@
+package net.vulkanshaders.compiler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 128-bit content hash produced by {@link ContentHasher}
+ *
+ * Kept as two longs (16 bytes in binary form), formatted as 32 lowercase hex characters only where a
+ * textual key is needed, e.g. for cache keys and file names.
+ */
+public record ContentHash(long high, long low) {
+    public static final int BYTES = 16;
+    public static final int HEX_LENGTH = 32;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Read a hash written by {@link #writeTo}
+     */
+    public static ContentHash readFrom(ByteBuffer buffer) {
+        return new ContentHash(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Parse the 32 lowercase hex characters at the given offset
+     *
+     * @return Hash, or null if the text there is not a formatted hash
+     */
+    public static ContentHash parseHex(CharSequence text, int offset) {
+        if (offset < 0 || text.length() - offset != HEX_LENGTH) {
+            return null;
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            int digit = hexValue(text.charAt(offset + i));
+            if (digit < 0) {
+                return null;
+            }
+            if (i < HEX_LENGTH / 2) {
+                high = (high << 4) | digit;
+            } else {
+                low = (low << 4) | digit;
+            }
+        }
+        return new ContentHash(high, low);
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putLong(high).putLong(low);
+    }
+
+    public String toHex() {
+        char[] hex = new char[HEX_LENGTH];
+        for (int i = 0; i < 16; i++) {
+            hex[i] = HEX_DIGITS[(int) (high >>> (60 - i * 4)) & 0xF];
+            hex[16 + i] = HEX_DIGITS[(int) (low >>> (60 - i * 4)) & 0xF];
+        }
+        return new String(hex);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,278 @@
+package net.vulkanshaders.compiler;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Streaming 128-bit non-cryptographic hash for cache keys and fingerprints
+ *
+ * Built on XXH3-128's long-input construction: 64-byte stripes are accumulated into eight 64-bit lanes
+ * against the XXH3 secret, the lanes are scrambled every 1 KB, and two differently keyed merges give the
+ * two halves of the result. The same construction is used for every input length (a short tail is padded,
+ * the total length is mixed into the merge), so the output is stable for this cache but not interchangeable
+ * with other XXH3 implementations. Strings are encoded to UTF-8 a chunk at a time into reused buffers and
+ * whole stripes are hashed in place, a source is never copied as a whole.
+ *
+ * Instances are not thread-safe. {@link #get()} hands out a reset per-thread instance, so a key costs no
+ * allocation beyond its result.
+ */
+public final class ContentHasher {
+    private static final ThreadLocal<ContentHasher> LOCAL = ThreadLocal.withInitial(ContentHasher::new);
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long PRIME32_1 = 0x9E3779B1L;
+    private static final long PRIME32_2 = 0x85EBCA77L;
+    private static final long PRIME32_3 = 0xC2B2AE3DL;
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE_LENGTH = 64;
+    private static final int SECRET_CONSUME_RATE = 8;
+    private static final int MERGE_OFFSET = 11;
+    private static final int CHUNK_CHARS = 2048;
+
+    // Separates strings, never occurs in UTF-8
+    private static final int STRING_END = 0xFF;
+
+    private static final byte[] SECRET = {
+            (byte) 0xb8, (byte) 0xfe, (byte) 0x6c, (byte) 0x39, (byte) 0x23, (byte) 0xa4, (byte) 0x4b, (byte) 0xbe,
+            (byte) 0x7c, (byte) 0x01, (byte) 0x81, (byte) 0x2c, (byte) 0xf7, (byte) 0x21, (byte) 0xad, (byte) 0x1c,
+            (byte) 0xde, (byte) 0xd4, (byte) 0x6d, (byte) 0xe9, (byte) 0x83, (byte) 0x90, (byte) 0x97, (byte) 0xdb,
+            (byte) 0x72, (byte) 0x40, (byte) 0xa4, (byte) 0xa4, (byte) 0xb7, (byte) 0xb3, (byte) 0x67, (byte) 0x1f,
+            (byte) 0xcb, (byte) 0x79, (byte) 0xe6, (byte) 0x4e, (byte) 0xcc, (byte) 0xc0, (byte) 0xe5, (byte) 0x78,
+            (byte) 0x82, (byte) 0x5a, (byte) 0xd0, (byte) 0x7d, (byte) 0xcc, (byte) 0xff, (byte) 0x72, (byte) 0x21,
+            (byte) 0xb8, (byte) 0x08, (byte) 0x46, (byte) 0x74, (byte) 0xf7, (byte) 0x43, (byte) 0x24, (byte) 0x8e,
+            (byte) 0xe0, (byte) 0x35, (byte) 0x90, (byte) 0xe6, (byte) 0x81, (byte) 0x3a, (byte) 0x26, (byte) 0x4c,
+            (byte) 0x3c, (byte) 0x28, (byte) 0x52, (byte) 0xbb, (byte) 0x91, (byte) 0xc3, (byte) 0x00, (byte) 0xcb,
+            (byte) 0x88, (byte) 0xd0, (byte) 0x65, (byte) 0x8b, (byte) 0x1b, (byte) 0x53, (byte) 0x2e, (byte) 0xa3,
+            (byte) 0x71, (byte) 0x64, (byte) 0x48, (byte) 0x97, (byte) 0xa2, (byte) 0x0d, (byte) 0xf9, (byte) 0x4e,
+            (byte) 0x38, (byte) 0x19, (byte) 0xef, (byte) 0x46, (byte) 0xa9, (byte) 0xde, (byte) 0xac, (byte) 0xd8,
+            (byte) 0xa8, (byte) 0xfa, (byte) 0x76, (byte) 0x3f, (byte) 0xe3, (byte) 0x9c, (byte) 0x34, (byte) 0x3f,
+            (byte) 0xf9, (byte) 0xdc, (byte) 0xbb, (byte) 0xc7, (byte) 0xc7, (byte) 0x0b, (byte) 0x4f, (byte) 0x1d,
+            (byte) 0x8a, (byte) 0x51, (byte) 0xe0, (byte) 0x4b, (byte) 0xcd, (byte) 0xb4, (byte) 0x59, (byte) 0x31,
+            (byte) 0xc8, (byte) 0x9f, (byte) 0x7e, (byte) 0xc9, (byte) 0xd9, (byte) 0x78, (byte) 0x73, (byte) 0x64,
+            (byte) 0xea, (byte) 0xc5, (byte) 0xac, (byte) 0x83, (byte) 0x34, (byte) 0xd3, (byte) 0xeb, (byte) 0xc3,
+            (byte) 0xc5, (byte) 0x81, (byte) 0xa0, (byte) 0xff, (byte) 0xfa, (byte) 0x13, (byte) 0x63, (byte) 0xeb,
+            (byte) 0x17, (byte) 0x0d, (byte) 0xdd, (byte) 0x51, (byte) 0xb7, (byte) 0xf0, (byte) 0xda, (byte) 0x49,
+            (byte) 0xd3, (byte) 0x16, (byte) 0x55, (byte) 0x26, (byte) 0x29, (byte) 0xd4, (byte) 0x68, (byte) 0x9e,
+            (byte) 0x2b, (byte) 0x16, (byte) 0xbe, (byte) 0x58, (byte) 0x7d, (byte) 0x47, (byte) 0xa1, (byte) 0xfc,
+            (byte) 0x8f, (byte) 0xf8, (byte) 0xb8, (byte) 0xd1, (byte) 0x7a, (byte) 0xd0, (byte) 0x31, (byte) 0xce,
+            (byte) 0x45, (byte) 0xcb, (byte) 0x3a, (byte) 0x8f, (byte) 0x95, (byte) 0x16, (byte) 0x04, (byte) 0x28,
+            (byte) 0xaf, (byte) 0xd7, (byte) 0xfb, (byte) 0xca, (byte) 0xbb, (byte) 0x4b, (byte) 0x40, (byte) 0x7e,
+    };
+    private static final int STRIPES_PER_BLOCK = (SECRET.length - STRIPE_LENGTH) / SECRET_CONSUME_RATE;
+
+    private final long[] acc = new long[8];
+    private final byte[] stripe = new byte[STRIPE_LENGTH];
+    // Strings are encoded chunk by chunk into these, never as a whole
+    private final char[] chars = new char[CHUNK_CHARS];
+    private final byte[] encoded = new byte[CHUNK_CHARS * 3];
+    private int buffered;
+    private int stripeInBlock;
+    private long consumedLength;
+
+    public ContentHasher() {
+        reset();
+    }
+
+    /**
+     * This thread's hasher, reset. Finish it before getting it again.
+     */
+    public static ContentHasher get() {
+        return LOCAL.get().reset();
+    }
+
+    public ContentHasher reset() {
+        acc[0] = PRIME32_3;
+        acc[1] = PRIME64_1;
+        acc[2] = PRIME64_2;
+        acc[3] = PRIME64_3;
+        acc[4] = PRIME64_4;
+        acc[5] = PRIME32_2;
+        acc[6] = PRIME64_5;
+        acc[7] = PRIME32_1;
+        buffered = 0;
+        stripeInBlock = 0;
+        consumedLength = 0;
+        return this;
+    }
+
+    /**
+     * Hash a string as UTF-8 followed by a separator, so consecutive strings cannot run into each other
+     * Unpaired surrogates are encoded as '?', like {@link String#getBytes} does.
+     */
+    public ContentHasher putString(CharSequence text) {
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(length, start + CHUNK_CHARS);
+            // Keep surrogate pairs within one chunk
+            if (end < length && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+
+            if (text instanceof String string) {
+                string.getChars(start, end, chars, 0);
+            } else {
+                for (int i = start; i < end; i++) {
+                    chars[i - start] = text.charAt(i);
+                }
+            }
+            putBytes(encoded, 0, encodeUtf8(end - start));
+            start = end;
+        }
+        return putByte(STRING_END);
+    }
+
+    /**
+     * Hash the remaining bytes of a buffer, without moving its position
+     */
+    public ContentHasher putBytes(ByteBuffer data) {
+        if (data.hasArray()) {
+            return putBytes(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+
+        for (int position = data.position(); position < data.limit(); position += encoded.length) {
+            int length = Math.min(encoded.length, data.limit() - position);
+            data.get(position, encoded, 0, length);
+            putBytes(encoded, 0, length);
+        }
+        return this;
+    }
+
+    public ContentHasher putBytes(byte[] data, int offset, int length) {
+        if (buffered > 0) {
+            int fill = Math.min(length, STRIPE_LENGTH - buffered);
+            System.arraycopy(data, offset, stripe, buffered, fill);
+            buffered += fill;
+            offset += fill;
+            length -= fill;
+            if (buffered < STRIPE_LENGTH) {
+                return this;
+            }
+            consumeStripe(stripe, 0);
+            buffered = 0;
+        }
+
+        // Whole stripes are hashed in place
+        while (length >= STRIPE_LENGTH) {
+            consumeStripe(data, offset);
+            offset += STRIPE_LENGTH;
+            length -= STRIPE_LENGTH;
+        }
+
+        System.arraycopy(data, offset, stripe, 0, length);
+        buffered = length;
+        return this;
+    }
+
+    public ContentHasher putByte(int value) {
+        stripe[buffered++] = (byte) value;
+        if (buffered == STRIPE_LENGTH) {
+            consumeStripe(stripe, 0);
+            buffered = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Hash of everything put since the last reset, the hasher must be reset before reuse
+     */
+    public ContentHash finish() {
+        long totalLength = consumedLength + buffered;
+        if (buffered > 0) {
+            // Zero padding is told apart by the length mixed into the merge
+            Arrays.fill(stripe, buffered, STRIPE_LENGTH, (byte) 0);
+            consumeStripe(stripe, 0);
+            buffered = 0;
+        }
+
+        long low = mergeAccumulators(MERGE_OFFSET, totalLength * PRIME64_1);
+        long high = mergeAccumulators(SECRET.length - STRIPE_LENGTH - MERGE_OFFSET, ~(totalLength * PRIME64_2));
+        return new ContentHash(high, low);
+    }
+
+    private void consumeStripe(byte[] input, int offset) {
+        int secretOffset = stripeInBlock * SECRET_CONSUME_RATE;
+        for (int lane = 0; lane < 8; lane++) {
+            long data = (long) LONG_LE.get(input, offset + lane * 8);
+            long key = data ^ (long) LONG_LE.get(SECRET, secretOffset + lane * 8);
+            acc[lane ^ 1] += data;
+            acc[lane] += (key & 0xFFFFFFFFL) * (key >>> 32);
+        }
+        consumedLength += STRIPE_LENGTH;
+
+        if (++stripeInBlock == STRIPES_PER_BLOCK) {
+            scramble();
+            stripeInBlock = 0;
+        }
+    }
+
+    private void scramble() {
+        int secretOffset = SECRET.length - STRIPE_LENGTH;
+        for (int lane = 0; lane < 8; lane++) {
+            long value = acc[lane];
+            value ^= value >>> 47;
+            value ^= (long) LONG_LE.get(SECRET, secretOffset + lane * 8);
+            acc[lane] = value * PRIME32_1;
+        }
+    }
+
+    private long mergeAccumulators(int secretOffset, long start) {
+        long result = start;
+        for (int pair = 0; pair < 4; pair++) {
+            long left = acc[pair * 2] ^ (long) LONG_LE.get(SECRET, secretOffset + pair * 16);
+            long right = acc[pair * 2 + 1] ^ (long) LONG_LE.get(SECRET, secretOffset + pair * 16 + 8);
+            result += (left * right) ^ Math.unsignedMultiplyHigh(left, right);
+        }
+        return avalanche(result);
+    }
+
+    /**
+     * Encode the first count chars of the char chunk into the byte chunk
+     *
+     * @return Number of bytes written
+     */
+    private int encodeUtf8(int count) {
+        char[] in = chars;
+        byte[] out = encoded;
+        int written = 0;
+        for (int i = 0; i < count; i++) {
+            char c = in[i];
+            if (c < 0x80) {
+                out[written++] = (byte) c;
+            } else if (c < 0x800) {
+                out[written++] = (byte) (0xC0 | (c >> 6));
+                out[written++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(in[i + 1])) {
+                    int codePoint = Character.toCodePoint(c, in[++i]);
+                    out[written++] = (byte) (0xF0 | (codePoint >> 18));
+                    out[written++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    out[written++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    out[written++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    out[written++] = '?';
+                }
+            } else {
+                out[written++] = (byte) (0xE0 | (c >> 12));
+                out[written++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[written++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return written;
+    }
+
+    private static long avalanche(long hash) {
+        hash ^= hash >>> 37;
+        hash *= 0x165667919E3779F9L;
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,68 @@
+package net.vulkanshaders.compiler;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which content-addressed SPIR-V blob each shader name currently resolves to
+ *
+ * Blobs are keyed by what they are compiled from (normalized source, stage, compiler version), not by
+ * name, so shaders with identical source share one blob. This index keeps the name -> blob mapping and
+ * counts how many names were collapsed onto a blob another name already uses.
+ */
+public class ContentIndex {
+    private final Map<String, String> byName = new HashMap<>();
+    private final Map<String, Set<String>> namesByContent = new HashMap<>();
+
+    /**
+     * Record the blob a shader resolved to, replacing what the name pointed at before
+     */
+    public synchronized void record(String shaderName, String contentKey) {
+        String previous = byName.put(shaderName, contentKey);
+        if (contentKey.equals(previous)) {
+            return;
+        }
+
+        if (previous != null) {
+            Set<String> names = namesByContent.get(previous);
+            names.remove(shaderName);
+            if (names.isEmpty()) {
+                namesByContent.remove(previous);
+            }
+        }
+        namesByContent.computeIfAbsent(contentKey, key -> new HashSet<>()).add(shaderName);
+    }
+
+    /**
+     * @return Key of the blob the shader resolved to last, or null if it was not compiled yet
+     */
+    public synchronized String getContentKey(String shaderName) {
+        return byName.get(shaderName);
+    }
+
+    public synchronized int getNameCount() {
+        return byName.size();
+    }
+
+    /**
+     * Number of distinct blobs the recorded names resolve to
+     */
+    public synchronized int getUniqueCount() {
+        return namesByContent.size();
+    }
+
+    /**
+     * Number of names that share their blob with another name, i.e. compiles and disk entries saved
+     */
+    public synchronized int getDuplicateCount() {
+        return byName.size() - namesByContent.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d shader(s) -> %d unique blob(s), %d duplicate(s) collapsed",
+                byName.size(), namesByContent.size(), byName.size() - namesByContent.size());
+    }
+}
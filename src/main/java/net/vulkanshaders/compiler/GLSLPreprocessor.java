@@ -4,22 +4,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Preprocesses GLSL shader source code, handling #include directives
+ * Sources are scanned once into offset ranges (no per-line split or regex) and copied range by range
+ * into a single output buffer sized from the include graph.
+ * Backed by an {@link IncludeGraph}: share one graph across a pack so includes are parsed and expanded once.
+ * Holds no per-call state, one instance can be used by several threads.
  */
 public class GLSLPreprocessor {
     private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Preprocessor");
-    private static final Pattern INCLUDE_PATTERN = Pattern.compile("^\\s*#\\s*include\\s+[\"<]([^\"'>]+)[\">]");
+    private static final int MAX_INCLUDE_DEPTH = 32;
 
-    private final Map<String, String> availableIncludes;
-    private final Set<String> processedIncludes; // Track to prevent circular includes
+    private final IncludeGraph includeGraph;
 
     public GLSLPreprocessor(Map<String, String> availableIncludes) {
-        this.availableIncludes = availableIncludes;
-        this.processedIncludes = new HashSet<>();
+        this(new IncludeGraph(availableIncludes));
+    }
+
+    public GLSLPreprocessor(IncludeGraph includeGraph) {
+        this.includeGraph = includeGraph;
     }
 
     /**
@@ -30,72 +34,98 @@ public class GLSLPreprocessor {
      * @return Preprocessed source with includes expanded
      */
     public String preprocess(String source, String shaderPath) {
-        processedIncludes.clear();
-        return preprocessRecursive(source, shaderPath, 0);
+        IncludeGraph.Node node = includeGraph.getNode(shaderPath, source);
+        StringBuilder result = new StringBuilder(includeGraph.estimateExpandedLength(node));
+        expand(node, shaderPath, 0, new Context(), result);
+        return result.toString();
     }
 
     /**
-     * Recursively preprocess shader source
+     * Expand an include as if it were included for the first time, for memoization by the graph
      */
-    private String preprocessRecursive(String source, String currentPath, int depth) {
-        if (depth > 32) {
+    IncludeGraph.Expansion expandInclude(String includePath) {
+        Context context = new Context();
+        context.processedIncludes.add(includePath);
+
+        IncludeGraph.Node node = includeGraph.getNode(includePath);
+        StringBuilder result = new StringBuilder(includeGraph.estimateExpandedLength(node));
+        expand(node, includePath, 0, context, result);
+        ensureNewline(result, 0);
+
+        return new IncludeGraph.Expansion(result.toString(), context.maxDepth,
+                Set.copyOf(context.processedIncludes));
+    }
+
+    /**
+     * Emit a parsed file: its text ranges interleaved with the expansion of its includes
+     */
+    private void expand(IncludeGraph.Node node, String currentPath, int depth, Context context, StringBuilder result) {
+        if (depth > MAX_INCLUDE_DEPTH) {
             throw new RuntimeException("Include depth exceeded 32 levels - possible circular include at: " + currentPath);
         }
+        context.maxDepth = Math.max(context.maxDepth, depth);
+
+        IncludeGraph.Directive[] directives = node.directives();
 
-        StringBuilder result = new StringBuilder();
-        String[] lines = source.split("\n");
-        int lineNumber = 0;
-
-        for (String line : lines) {
-            lineNumber++;
-            Matcher matcher = INCLUDE_PATTERN.matcher(line);
-
-            if (matcher.find()) {
-                String includePath = matcher.group(1);
-
-                // Check for circular includes
-                if (processedIncludes.contains(includePath)) {
-                    LOGGER.warn("Skipping already included file: {} (referenced in {})",
-                            includePath, currentPath);
-                    result.append("// ").append(line).append(" [already included]\n");
-                    continue;
-                }
-
-                // Get include content
-                String includeContent = availableIncludes.get(includePath);
-
-                if (includeContent == null) {
-                    throw new RuntimeException(String.format(
-                            "Include not found: '%s' (referenced in %s at line %d)",
-                            includePath, currentPath, lineNumber
-                    ));
-                }
-
-                // Mark as processed
-                processedIncludes.add(includePath);
-
-                // Add line marker for debugging
-                result.append(String.format("// BEGIN INCLUDE: %s\n", includePath));
-
-                // Recursively preprocess the included file
-                String processedInclude = preprocessRecursive(includeContent, includePath, depth + 1);
-                result.append(processedInclude);
-
-                // Ensure newline at end
-                if (!processedInclude.endsWith("\n")) {
-                    result.append("\n");
-                }
-
-                result.append(String.format("// END INCLUDE: %s\n", includePath));
-
-                LOGGER.debug("Included: {} -> {}", currentPath, includePath);
-            } else {
-                // Regular line, keep as-is
-                result.append(line).append("\n");
-            }
+        for (int i = 0; i < directives.length; i++) {
+            node.appendRange(i, result);
+            include(node, directives[i], currentPath, depth, context, result);
         }
+        node.appendRange(directives.length, result);
+    }
 
-        return result.toString();
+    private void include(IncludeGraph.Node node, IncludeGraph.Directive directive, String currentPath, int depth,
+                         Context context, StringBuilder result) {
+        String includePath = directive.path();
+
+        // Check for circular includes
+        if (context.processedIncludes.contains(includePath)) {
+            LOGGER.warn("Skipping already included file: {} (referenced in {})",
+                    includePath, currentPath);
+            result.append("// ");
+            node.appendLine(directive, result);
+            result.append(" [already included]\n");
+            return;
+        }
+
+        if (includeGraph.getSource(includePath) == null) {
+            throw new RuntimeException(String.format(
+                    "Include not found: '%s' (referenced in %s at line %d)",
+                    includePath, currentPath, directive.lineNumber()
+            ));
+        }
+
+        // The memoized expansion is exact as long as nothing it reaches was included before
+        IncludeGraph.Expansion cached = includeGraph.getExpansion(includePath, this);
+        boolean useCached = cached != null
+                && depth + 1 + cached.depth() <= MAX_INCLUDE_DEPTH
+                && Collections.disjoint(context.processedIncludes, cached.reaches());
+
+        // Mark as processed
+        context.processedIncludes.add(includePath);
+
+        // Add line marker for debugging
+        result.append("// BEGIN INCLUDE: ").append(includePath).append('\n');
+
+        if (useCached) {
+            result.append(cached.text());
+            context.processedIncludes.addAll(cached.reaches());
+            context.maxDepth = Math.max(context.maxDepth, depth + 1 + cached.depth());
+        } else {
+            int start = result.length();
+            expand(includeGraph.getNode(includePath), includePath, depth + 1, context, result);
+            ensureNewline(result, start);
+        }
+
+        result.append("// END INCLUDE: ").append(includePath).append('\n');
+
+        LOGGER.debug("Included: {} -> {}", currentPath, includePath);
+    }
+
+    private static void ensureNewline(StringBuilder result, int start) {
+        if (result.length() == start || result.charAt(result.length() - 1) != '\n') {
+            result.append('\n');
+        }
     }
 
     /**
@@ -103,15 +133,14 @@ public class GLSLPreprocessor {
      */
     public static List<String> extractIncludes(String source) {
         List<String> includes = new ArrayList<>();
-        String[] lines = source.split("\n");
-
-        for (String line : lines) {
-            Matcher matcher = INCLUDE_PATTERN.matcher(line);
-            if (matcher.find()) {
-                includes.add(matcher.group(1));
-            }
+        for (IncludeGraph.Directive directive : IncludeGraph.Node.parse("", source).directives()) {
+            includes.add(directive.path());
         }
-
         return includes;
     }
+
+    private static class Context {
+        final Set<String> processedIncludes = new HashSet<>(); // Track to prevent circular includes
+        int maxDepth;
+    }
 }
@@ -0,0 +1,450 @@
+package net.vulkanshaders.compiler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Include dependency graph of a shader pack, built once and shared by every program's preprocessing
+ *
+ * Each file is split into text fragments and include directives once. Strongly connected components
+ * (include cycles) are detected up front, files are kept in topological order and the set of files each
+ * one transitively includes is precomputed. Include expansions are memoized per file, so expanding a
+ * program is mostly a concatenation of cached fragments. Reverse dependencies tell a reload which
+ * files are affected by a changed include.
+ *
+ * Thread-safe: all lazily built state lives in concurrent maps.
+ */
+public class IncludeGraph {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/IncludeGraph");
+    // "// BEGIN INCLUDE: " + "// END INCLUDE: " and their newlines, paths not included
+    private static final int MARKER_LENGTH = 36;
+
+    private final Map<String, String> sources;
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    // Files in dependency order: every file comes after the files it includes
+    private final List<String> topologicalOrder = new ArrayList<>();
+    // File -> every file it transitively includes (itself only if it is part of a cycle)
+    private final Map<String, Set<String>> reachable = new HashMap<>();
+    // File -> files that include it directly
+    private final Map<String, Set<String>> includedBy = new HashMap<>();
+    private final Set<String> cyclic = new HashSet<>();
+    // Files that include, directly or not, a file missing from the pack
+    private final Set<String> incomplete = new HashSet<>();
+    // Upper bound of a file's expanded length, used to size output buffers
+    private final Map<String, Integer> expandedLengths = new HashMap<>();
+
+    private final Map<String, Optional<Expansion>> expansions = new ConcurrentHashMap<>();
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    public IncludeGraph(Map<String, String> sources) {
+        this.sources = sources;
+
+        sources.forEach((path, source) -> nodes.put(path, Node.parse(path, source)));
+        for (Node node : nodes.values()) {
+            for (Directive directive : node.directives()) {
+                includedBy.computeIfAbsent(directive.path(), k -> new HashSet<>()).add(node.path());
+            }
+        }
+
+        new SccBuilder().run();
+
+        if (!cyclic.isEmpty()) {
+            LOGGER.warn("Circular includes detected: {}", cyclic);
+        }
+        LOGGER.debug("Built include graph: {} files", nodes.size());
+    }
+
+    /**
+     * Files in dependency order, includes before the files including them
+     */
+    public List<String> getTopologicalOrder() {
+        return Collections.unmodifiableList(topologicalOrder);
+    }
+
+    /**
+     * Every file the given file includes, directly or transitively
+     */
+    public Set<String> getIncludes(String path) {
+        Set<String> includes = reachable.get(path);
+        return includes != null ? Collections.unmodifiableSet(includes) : Set.of();
+    }
+
+    /**
+     * Every file whose expansion changes when the given file changes (excluding the file itself).
+     * On reload, only programs in this set (plus the file itself) need to be preprocessed again.
+     */
+    public Set<String> getDependents(String path) {
+        Set<String> dependents = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>(List.of(path));
+
+        while (!pending.isEmpty()) {
+            for (String parent : includedBy.getOrDefault(pending.pop(), Set.of())) {
+                if (!parent.equals(path) && dependents.add(parent)) {
+                    pending.push(parent);
+                }
+            }
+        }
+        return dependents;
+    }
+
+    public boolean isCyclic(String path) {
+        return cyclic.contains(path);
+    }
+
+    public boolean contains(String path) {
+        return nodes.containsKey(path);
+    }
+
+    /**
+     * Hash over a file and everything it includes: changes whenever any source its expansion reads changes
+     */
+    public String getFingerprint(String path) {
+        return fingerprints.computeIfAbsent(path, key -> {
+            Set<String> closure = new TreeSet<>(getIncludes(key));
+            closure.add(key);
+
+            ContentHasher hasher = ContentHasher.get();
+            for (String file : closure) {
+                String source = sources.get(file);
+                hasher.putString(file);
+                hasher.putByte(source != null ? 1 : 0);
+                if (source != null) {
+                    hasher.putString(source);
+                }
+            }
+            return hasher.finish().toHex();
+        });
+    }
+
+    /**
+     * Upper bound of the expanded length of a parsed source, for pre-sizing the output
+     */
+    int estimateExpandedLength(Node node) {
+        long length = node.length();
+        Set<String> counted = new HashSet<>();
+        for (Directive directive : node.directives()) {
+            String child = directive.path();
+            if (nodes.containsKey(child) && counted.add(child)) {
+                length += expandedLengths.get(child) + 2L * child.length() + MARKER_LENGTH;
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE / 2, length);
+    }
+
+    String getSource(String path) {
+        return sources.get(path);
+    }
+
+    /**
+     * Parsed form of a pack file, or of an arbitrary source if it is not the pack's copy of that path
+     */
+    Node getNode(String path, String source) {
+        Node node = nodes.get(path);
+        if (node != null && source.equals(sources.get(path))) {
+            return node;
+        }
+        return Node.parse(path, source);
+    }
+
+    Node getNode(String path) {
+        return nodes.get(path);
+    }
+
+    /**
+     * Memoized expansion of an include as it appears the first time it is included. Only valid where
+     * none of the files it reaches have been included yet. Null if it cannot be memoized (cycles or
+     * missing files, which take the regular path so they produce the same output and errors).
+     */
+    Expansion getExpansion(String path, GLSLPreprocessor preprocessor) {
+        Optional<Expansion> cached = expansions.get(path);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+
+        Expansion expansion = null;
+        if (!cyclic.contains(path) && !incomplete.contains(path) && nodes.containsKey(path)) {
+            try {
+                expansion = preprocessor.expandInclude(path);
+            } catch (RuntimeException e) {
+                // Too deep on its own, expanding it in place reports the error
+                expansion = null;
+            }
+        }
+
+        expansions.putIfAbsent(path, Optional.ofNullable(expansion));
+        return expansion;
+    }
+
+    /**
+     * @param text     Expanded text, including the trailing newline the preprocessor guarantees
+     * @param depth    Deepest include level reached, relative to the expanded file
+     * @param reaches  The file itself plus every file it includes
+     */
+    record Expansion(String text, int depth, Set<String> reaches) {
+    }
+
+    /**
+     * An include line, by its offsets in the including file's source
+     */
+    record Directive(String path, int lineStart, int lineEnd, int lineNumber) {
+    }
+
+    /**
+     * A file split in a single pass into text ranges and include directives, all as offsets into its source:
+     * range i precedes directive i, the last range follows the last directive. Lines are the same as
+     * {@code source.split("\n")} would give (trailing newlines dropped, an empty source is one empty line),
+     * so appending the ranges reproduces what joining the non-include lines with newlines would.
+     */
+    static final class Node {
+        private final String path;
+        private final String source;
+        private final int[] bounds; // start/end pairs, one per range
+        private final Directive[] directives;
+        private final boolean terminate; // The last line has no newline of its own in the source
+
+        private Node(String path, String source, int[] bounds, Directive[] directives, boolean terminate) {
+            this.path = path;
+            this.source = source;
+            this.bounds = bounds;
+            this.directives = directives;
+            this.terminate = terminate;
+        }
+
+        String path() {
+            return path;
+        }
+
+        int length() {
+            return source.length();
+        }
+
+        Directive[] directives() {
+            return directives;
+        }
+
+        void appendRange(int index, StringBuilder out) {
+            out.append(source, bounds[2 * index], bounds[2 * index + 1]);
+            if (terminate && index == directives.length) {
+                out.append('\n');
+            }
+        }
+
+        void appendLine(Directive directive, StringBuilder out) {
+            out.append(source, directive.lineStart(), directive.lineEnd());
+        }
+
+        static Node parse(String path, String source) {
+            int length = source.length();
+            int end = length;
+            while (end > 0 && source.charAt(end - 1) == '\n') {
+                end--;
+            }
+
+            int[] bounds = new int[8];
+            int rangeCount = 0;
+            List<Directive> directives = new ArrayList<>();
+            int rangeStart = 0;
+            boolean lastIsText = false;
+
+            if (end > 0 || length == 0) {
+                int lineStart = 0;
+                int lineNumber = 0;
+                while (true) {
+                    int lineEnd = source.indexOf('\n', lineStart);
+                    if (lineEnd < 0 || lineEnd > end) {
+                        lineEnd = end;
+                    }
+                    lineNumber++;
+
+                    String include = scanInclude(source, lineStart, lineEnd);
+                    if (include != null) {
+                        if (2 * rangeCount + 2 > bounds.length) {
+                            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                        }
+                        bounds[2 * rangeCount] = rangeStart;
+                        bounds[2 * rangeCount + 1] = lineStart;
+                        rangeCount++;
+                        directives.add(new Directive(include, lineStart, lineEnd, lineNumber));
+                        rangeStart = Math.min(lineEnd + 1, length);
+                        lastIsText = false;
+                    } else {
+                        lastIsText = true;
+                    }
+
+                    if (lineEnd >= end) {
+                        break;
+                    }
+                    lineStart = lineEnd + 1;
+                }
+            }
+
+            // The last range runs through the last text line and its newline, if the source has one
+            boolean terminate = lastIsText && end == length;
+            int rangeEnd = lastIsText ? Math.min(end + 1, length) : rangeStart;
+            if (2 * rangeCount + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length + 2);
+            }
+            bounds[2 * rangeCount] = rangeStart;
+            bounds[2 * rangeCount + 1] = rangeEnd;
+            rangeCount++;
+
+            return new Node(path, source, Arrays.copyOf(bounds, 2 * rangeCount),
+                    directives.toArray(Directive[]::new), terminate);
+        }
+
+        /**
+         * Match {@code ^\s*#\s*include\s+["<]([^"'>]+)[">]} against one line without a regex.
+         * Lines whose first non-space character is not '#' are rejected immediately.
+         *
+         * @return The include path, or null if the line is not an include directive
+         */
+        static String scanInclude(String source, int from, int to) {
+            int i = skipWhitespace(source, from, to);
+            if (i >= to || source.charAt(i) != '#') {
+                return null;
+            }
+
+            i = skipWhitespace(source, i + 1, to);
+            if (i + 7 > to || !source.startsWith("include", i)) {
+                return null;
+            }
+
+            int afterKeyword = i + 7;
+            i = skipWhitespace(source, afterKeyword, to);
+            if (i == afterKeyword || i >= to) {
+                return null;
+            }
+
+            char open = source.charAt(i);
+            if (open != '"' && open != '<') {
+                return null;
+            }
+
+            int pathStart = ++i;
+            while (i < to) {
+                char c = source.charAt(i);
+                if (c == '"' || c == '\'' || c == '>') {
+                    break;
+                }
+                i++;
+            }
+
+            if (i == pathStart || i >= to || source.charAt(i) == '\'') {
+                return null;
+            }
+            return source.substring(pathStart, i);
+        }
+
+        private static int skipWhitespace(String source, int from, int to) {
+            int i = from;
+            while (i < to) {
+                char c = source.charAt(i);
+                // Same set as the regex \s
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Tarjan's algorithm: components come out in reverse topological order, so reachability can be
+     * accumulated from components already finished
+     */
+    private class SccBuilder {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final Map<String, Integer> lowLinks = new HashMap<>();
+        private final Deque<String> stack = new ArrayDeque<>();
+        private final Set<String> onStack = new HashSet<>();
+        private int nextIndex;
+
+        void run() {
+            // Sorted so the topological order is stable between runs
+            for (String path : new TreeSet<>(nodes.keySet())) {
+                if (!indices.containsKey(path)) {
+                    visit(path);
+                }
+            }
+        }
+
+        private void visit(String path) {
+            indices.put(path, nextIndex);
+            lowLinks.put(path, nextIndex);
+            nextIndex++;
+            stack.push(path);
+            onStack.add(path);
+
+            for (Directive directive : nodes.get(path).directives()) {
+                String child = directive.path();
+                if (!nodes.containsKey(child)) {
+                    continue;
+                }
+                if (!indices.containsKey(child)) {
+                    visit(child);
+                    lowLinks.put(path, Math.min(lowLinks.get(path), lowLinks.get(child)));
+                } else if (onStack.contains(child)) {
+                    lowLinks.put(path, Math.min(lowLinks.get(path), indices.get(child)));
+                }
+            }
+
+            if (lowLinks.get(path).equals(indices.get(path))) {
+                List<String> component = new ArrayList<>();
+                String member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    component.add(member);
+                } while (!member.equals(path));
+
+                finish(component);
+            }
+        }
+
+        private void finish(List<String> component) {
+            Set<String> reaches = new HashSet<>();
+            boolean missing = false;
+            boolean selfLoop = false;
+
+            for (String member : component) {
+                for (Directive directive : nodes.get(member).directives()) {
+                    String child = directive.path();
+                    if (!nodes.containsKey(child)) {
+                        missing = true;
+                    } else if (component.contains(child)) {
+                        selfLoop = true;
+                    } else {
+                        reaches.add(child);
+                        reaches.addAll(reachable.get(child));
+                        missing |= incomplete.contains(child);
+                    }
+                }
+            }
+
+            if (component.size() > 1 || selfLoop) {
+                reaches.addAll(component);
+                cyclic.addAll(component);
+            }
+
+            long reachedLength = 0;
+            for (String reached : reaches) {
+                reachedLength += nodes.get(reached).length() + 2L * reached.length() + MARKER_LENGTH;
+            }
+
+            for (String member : component) {
+                expandedLengths.put(member,
+                        (int) Math.min(Integer.MAX_VALUE / 2, nodes.get(member).length() + reachedLength));
+                reachable.put(member, reaches);
+                topologicalOrder.add(member);
+                if (missing) {
+                    incomplete.add(member);
+                }
+            }
+        }
+    }
+}
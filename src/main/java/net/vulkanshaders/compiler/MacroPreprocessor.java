@@ -0,0 +1,846 @@
+package net.vulkanshaders.compiler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Evaluates #define/#undef/#if/#ifdef/#ifndef/#elif/#else against the pack's option defines and strips
+ * dead conditional blocks before the source reaches conversion, hashing and shaderc
+ *
+ * Removed lines (dead blocks and the resolved directives themselves) are replaced by empty lines, so
+ * line N of the output is line N of the input and compiler errors still point at the right line.
+ * Option macros are never emitted as #define lines: their values are substituted where the surviving
+ * code uses them, so option sets that only differ in code that is stripped produce identical sources.
+ *
+ * Evaluation is conservative. Conditionals depending on macros this stage cannot know (e.g. ones shaderc
+ * predefines such as VULKAN or extension macros) are left in place with all their branches, for shaderc
+ * to resolve. Holds no per-call state, one instance can be used by several threads.
+ */
+public class MacroPreprocessor {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Macros");
+    private static final int MAX_EXPANSION_DEPTH = 16;
+
+    private final Map<String, Macro> initialMacros;
+
+    /**
+     * @param defines   Option macros and their values (empty string for a plain define)
+     * @param undefined Option macros known to be undefined (e.g. disabled boolean options)
+     */
+    public MacroPreprocessor(Map<String, String> defines, Set<String> undefined) {
+        Map<String, Macro> macros = new HashMap<>();
+        undefined.forEach(name -> macros.put(name, Macro.OPTION_UNDEFINED));
+        defines.forEach((name, value) -> macros.put(name, new Macro(Kind.DEFINED, value.trim(), false, true)));
+        this.initialMacros = Map.copyOf(macros);
+    }
+
+    /**
+     * Define set for option values: enabled booleans are defined as 1, disabled ones are known to be
+     * undefined, other options are defined to their value
+     */
+    public static MacroPreprocessor forValues(Map<String, Object> values) {
+        Map<String, String> defines = new HashMap<>();
+        Set<String> undefined = new HashSet<>();
+
+        values.forEach((name, value) -> {
+            if (value == null || Boolean.FALSE.equals(value)) {
+                undefined.add(name);
+            } else if (Boolean.TRUE.equals(value)) {
+                defines.put(name, "1");
+            } else if (value instanceof Number number) {
+                defines.put(name, formatNumber(number));
+            } else {
+                defines.put(name, value.toString());
+            }
+        });
+
+        return new MacroPreprocessor(defines, undefined);
+    }
+
+    private static String formatNumber(Number number) {
+        double value = number.doubleValue();
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Strip dead conditional blocks and substitute option macros
+     *
+     * @param source     Include-expanded shader source
+     * @param shaderPath Path of the shader (for error messages)
+     * @return Source with the same number of lines
+     */
+    public String process(String source, String shaderPath) {
+        return new Pass(source, shaderPath).run();
+    }
+
+    private enum Kind {
+        DEFINED, UNDEFINED, UNKNOWN
+    }
+
+    /**
+     * @param option Defined (or undefined) by a pack option rather than by the source
+     */
+    private record Macro(Kind kind, String body, boolean function, boolean option) {
+        static final Macro OPTION_UNDEFINED = new Macro(Kind.UNDEFINED, null, false, true);
+        static final Macro UNDEFINED = new Macro(Kind.UNDEFINED, null, false, false);
+        static final Macro UNKNOWN = new Macro(Kind.UNKNOWN, null, false, false);
+    }
+
+    private enum Mode {
+        SKIPPED,     // Inside a dead block, nothing is evaluated
+        DECIDED,     // Condition known, directives removed, one branch kept
+        PASSTHROUGH  // Condition unknown, the whole chain is kept for shaderc
+    }
+
+    private static final class Frame {
+        final Mode parentMode;
+        Mode mode;
+        boolean taking;
+        boolean anyTaken;
+        int openLine;
+        // PASSTHROUGH: macro table at the #if, and names any branch has (re)defined
+        Map<String, Macro> snapshot;
+        final Set<String> touched = new HashSet<>();
+
+        Frame(Mode parentMode, Mode mode, int openLine) {
+            this.parentMode = parentMode;
+            this.mode = mode;
+            this.openLine = openLine;
+        }
+
+        boolean emitting() {
+            return switch (mode) {
+                case SKIPPED -> false;
+                case DECIDED -> taking;
+                case PASSTHROUGH -> true;
+            };
+        }
+    }
+
+    /**
+     * State of one {@link #process} call
+     */
+    private final class Pass {
+        private final String source;
+        private final String shaderPath;
+        private final StringBuilder out;
+        private final Map<String, Macro> macros = new HashMap<>(initialMacros);
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private boolean inBlockComment;
+        private int lineNumber;
+
+        Pass(String source, String shaderPath) {
+            this.source = source;
+            this.shaderPath = shaderPath;
+            this.out = new StringBuilder(source.length());
+        }
+
+        String run() {
+            int length = source.length();
+            int pos = 0;
+
+            while (pos < length) {
+                int lineEnd = lineEnd(pos);
+                lineNumber++;
+                int firstLine = lineNumber;
+
+                if (!inBlockComment && isDirective(pos, lineEnd)) {
+                    // Join backslash continuations into one logical directive
+                    while (endsWithBackslash(pos, lineEnd) && lineEnd < length) {
+                        lineEnd = lineEnd(lineEnd + 1);
+                        lineNumber++;
+                    }
+                    directive(pos, lineEnd, lineNumber - firstLine + 1);
+                } else {
+                    if (emitting()) {
+                        substitute(pos, lineEnd, false);
+                    }
+                    scanComments(pos, lineEnd);
+                }
+
+                if (lineEnd < length) {
+                    out.append('\n');
+                }
+                pos = lineEnd + 1;
+            }
+
+            if (!frames.isEmpty()) {
+                throw new RuntimeException(String.format(
+                        "Unterminated #if (%s at line %d)", shaderPath, frames.peek().openLine));
+            }
+            return out.toString();
+        }
+
+        private boolean emitting() {
+            Frame frame = frames.peek();
+            return frame == null || frame.emitting();
+        }
+
+        private int lineEnd(int from) {
+            int end = source.indexOf('\n', from);
+            return end < 0 ? source.length() : end;
+        }
+
+        private boolean isDirective(int from, int to) {
+            int i = skipSpaces(from, to);
+            return i < to && source.charAt(i) == '#';
+        }
+
+        private boolean endsWithBackslash(int from, int to) {
+            int i = to - 1;
+            if (i >= from && source.charAt(i) == '\r') {
+                i--;
+            }
+            return i >= from && source.charAt(i) == '\\';
+        }
+
+        private int skipSpaces(int from, int to) {
+            int i = from;
+            while (i < to) {
+                char c = source.charAt(i);
+                if (c != ' ' && c != '\t' && c != '\r' && c != '\f' && c != '\u000B') {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Blank a directive spanning the given number of physical lines (keeps line numbering)
+         */
+        private void blank(int physicalLines) {
+            for (int i = 1; i < physicalLines; i++) {
+                out.append('\n');
+            }
+        }
+
+        private void directive(int from, int to, int physicalLines) {
+            int i = skipSpaces(source.indexOf('#', from) + 1, to);
+            int nameStart = i;
+            while (i < to && Character.isLetterOrDigit(source.charAt(i))) {
+                i++;
+            }
+            String name = source.substring(nameStart, i);
+            // Logical directive text after the name: continuations joined, comments removed
+            String rest = stripComments(source.substring(i, to).replace("\\\r\n", " ").replace("\\\n", " "));
+
+            switch (name) {
+                case "if", "ifdef", "ifndef" -> openConditional(name, rest, from, to, physicalLines);
+                case "elif" -> elif(rest, from, to, physicalLines);
+                case "else" -> elseBranch(from, to, physicalLines);
+                case "endif" -> endif(from, to, physicalLines);
+                case "define" -> define(rest, from, to, physicalLines);
+                case "undef" -> undef(rest, from, to, physicalLines);
+                default -> {
+                    // #version, #extension, #pragma, #error, #line...: kept only where live
+                    if (emitting()) {
+                        out.append(source, from, to);
+                    } else {
+                        blank(physicalLines);
+                    }
+                }
+            }
+        }
+
+        private void openConditional(String name, String rest, int from, int to, int physicalLines) {
+            Mode parentMode = frames.isEmpty() ? Mode.DECIDED : frames.peek().mode;
+
+            if (!emitting()) {
+                frames.push(new Frame(parentMode, Mode.SKIPPED, lineNumber));
+                blank(physicalLines);
+                return;
+            }
+
+            Long condition = switch (name) {
+                case "ifdef" -> isDefined(identifier(rest));
+                case "ifndef" -> negate(isDefined(identifier(rest)));
+                default -> evaluate(rest);
+            };
+
+            Frame frame;
+            if (condition != null) {
+                frame = new Frame(parentMode, Mode.DECIDED, lineNumber);
+                frame.taking = condition != 0;
+                frame.anyTaken = frame.taking;
+                blank(physicalLines);
+            } else {
+                frame = new Frame(parentMode, Mode.PASSTHROUGH, lineNumber);
+                frame.snapshot = new HashMap<>(macros);
+                substitute(from, to, true);
+            }
+            frames.push(frame);
+        }
+
+        private void elif(String rest, int from, int to, int physicalLines) {
+            Frame frame = current("elif");
+
+            switch (frame.mode) {
+                case SKIPPED -> blank(physicalLines);
+                case DECIDED -> {
+                    if (frame.anyTaken) {
+                        frame.taking = false;
+                        blank(physicalLines);
+                        return;
+                    }
+
+                    Long condition = evaluate(rest);
+                    if (condition != null) {
+                        frame.taking = condition != 0;
+                        frame.anyTaken = frame.taking;
+                        blank(physicalLines);
+                    } else {
+                        // Every earlier branch was removed, so the chain restarts here for shaderc
+                        frame.mode = Mode.PASSTHROUGH;
+                        frame.snapshot = new HashMap<>(macros);
+                        int elif = source.indexOf("elif", source.indexOf('#', from));
+                        out.append(source, from, elif).append("if");
+                        substitute(elif + 4, to, true);
+                    }
+                }
+                case PASSTHROUGH -> {
+                    nextPassthroughBranch(frame);
+                    substitute(from, to, true);
+                }
+            }
+        }
+
+        private void elseBranch(int from, int to, int physicalLines) {
+            Frame frame = current("else");
+
+            switch (frame.mode) {
+                case SKIPPED -> blank(physicalLines);
+                case DECIDED -> {
+                    frame.taking = !frame.anyTaken;
+                    frame.anyTaken = true;
+                    blank(physicalLines);
+                }
+                case PASSTHROUGH -> {
+                    nextPassthroughBranch(frame);
+                    out.append(source, from, to);
+                }
+            }
+        }
+
+        private void endif(int from, int to, int physicalLines) {
+            Frame frame = current("endif");
+            frames.pop();
+
+            if (frame.mode == Mode.PASSTHROUGH) {
+                // Which branch shaderc takes is unknown, so anything a branch defined is unknown from here on
+                nextPassthroughBranch(frame);
+                for (String name : frame.touched) {
+                    macros.put(name, Macro.UNKNOWN);
+                    touch(name);
+                }
+                out.append(source, from, to);
+            } else {
+                blank(physicalLines);
+            }
+        }
+
+        private void nextPassthroughBranch(Frame frame) {
+            for (var entry : macros.entrySet()) {
+                if (!Objects.equals(entry.getValue(), frame.snapshot.get(entry.getKey()))) {
+                    frame.touched.add(entry.getKey());
+                }
+            }
+            macros.clear();
+            macros.putAll(frame.snapshot);
+        }
+
+        private Frame current(String directive) {
+            Frame frame = frames.peek();
+            if (frame == null) {
+                throw new RuntimeException(String.format(
+                        "#%s without #if (%s at line %d)", directive, shaderPath, lineNumber));
+            }
+            return frame;
+        }
+
+        private void define(String rest, int from, int to, int physicalLines) {
+            if (!emitting()) {
+                blank(physicalLines);
+                return;
+            }
+
+            String name = identifier(rest);
+            if (name != null) {
+                int afterName = rest.indexOf(name) + name.length();
+                boolean function = afterName < rest.length() && rest.charAt(afterName) == '(';
+                String body = function ? null : rest.substring(afterName).trim();
+                macros.put(name, new Macro(Kind.DEFINED, body, function, false));
+                touch(name);
+            }
+
+            // Keep the line, only its body may use option macros
+            int nameEnd = name != null ? source.indexOf(name, source.indexOf("define", from)) + name.length() : to;
+            nameEnd = Math.min(nameEnd, to);
+            if (nameEnd >= to || source.charAt(nameEnd) != '(') {
+                out.append(source, from, nameEnd);
+                substitute(nameEnd, to, false);
+                return;
+            }
+
+            // Function-like: the parameter list is kept as is and parameters shadow options in the body
+            int close = source.indexOf(')', nameEnd);
+            if (close < 0 || close >= to) {
+                out.append(source, from, to);
+                return;
+            }
+            Set<String> parameters = new HashSet<>();
+            for (String parameter : source.substring(nameEnd + 1, close).split(",")) {
+                parameters.add(parameter.trim());
+            }
+            out.append(source, from, close + 1);
+            substitute(close + 1, to, false, parameters);
+        }
+
+        private void undef(String rest, int from, int to, int physicalLines) {
+            if (!emitting()) {
+                blank(physicalLines);
+                return;
+            }
+
+            String name = identifier(rest);
+            if (name != null) {
+                macros.put(name, Macro.UNDEFINED);
+                touch(name);
+            }
+            out.append(source, from, to);
+        }
+
+        private void touch(String name) {
+            for (Frame frame : frames) {
+                if (frame.mode == Mode.PASSTHROUGH) {
+                    frame.touched.add(name);
+                }
+            }
+        }
+
+        /**
+         * Copy a live range, replacing option macros. In directive lines {@code defined X} of an option is
+         * replaced by 1/0, because shaderc never sees option defines.
+         */
+        private void substitute(int from, int to, boolean directive) {
+            substitute(from, to, directive, Set.of());
+        }
+
+        /**
+         * @param shadowed Names that are never replaced, e.g. the parameters of a function-like macro
+         */
+        private void substitute(int from, int to, boolean directive, Set<String> shadowed) {
+            int i = from;
+            int copied = from;
+
+            while (i < to) {
+                char c = source.charAt(i);
+                if (!Character.isJavaIdentifierStart(c) || c == '$') {
+                    // Skip number literals whole so suffixes are not taken for identifiers
+                    if (Character.isDigit(c)) {
+                        while (i < to && (Character.isLetterOrDigit(source.charAt(i)) || source.charAt(i) == '.')) {
+                            i++;
+                        }
+                    } else {
+                        i++;
+                    }
+                    continue;
+                }
+
+                int start = i;
+                while (i < to && isIdentifierPart(source.charAt(i))) {
+                    i++;
+                }
+                String word = source.substring(start, i);
+
+                if (directive && word.equals("defined")) {
+                    int j = skipSpaces(i, to);
+                    boolean paren = j < to && source.charAt(j) == '(';
+                    int nameStart = paren ? skipSpaces(j + 1, to) : j;
+                    int nameEnd = nameStart;
+                    while (nameEnd < to && isIdentifierPart(source.charAt(nameEnd))) {
+                        nameEnd++;
+                    }
+                    int end = paren ? skipSpaces(nameEnd, to) : nameEnd;
+                    if (paren && (end >= to || source.charAt(end) != ')')) {
+                        continue;
+                    }
+                    end = paren ? end + 1 : end;
+
+                    Macro macro = macros.get(source.substring(nameStart, nameEnd));
+                    if (nameEnd > nameStart && macro != null && macro.option()) {
+                        out.append(source, copied, start).append(macro.kind() == Kind.DEFINED ? "1" : "0");
+                        copied = end;
+                    }
+                    i = end;
+                    continue;
+                }
+
+                Macro macro = shadowed.contains(word) ? null : macros.get(word);
+                if (macro != null && macro.option() && macro.kind() == Kind.DEFINED) {
+                    out.append(source, copied, start).append(macro.body());
+                    copied = i;
+                }
+            }
+
+            out.append(source, copied, to);
+        }
+
+        /**
+         * Track block comments across lines so directives inside them are not evaluated
+         */
+        private void scanComments(int from, int to) {
+            for (int i = from; i < to - 1 || (inBlockComment && i < to); i++) {
+                char c = source.charAt(i);
+                if (inBlockComment) {
+                    if (c == '*' && i + 1 < to && source.charAt(i + 1) == '/') {
+                        inBlockComment = false;
+                        i++;
+                    }
+                } else if (c == '/') {
+                    char next = source.charAt(i + 1);
+                    if (next == '/') {
+                        return;
+                    }
+                    if (next == '*') {
+                        inBlockComment = true;
+                        i++;
+                    }
+                }
+            }
+        }
+
+        private String stripComments(String text) {
+            if (text.indexOf('/') < 0) {
+                return text;
+            }
+
+            StringBuilder stripped = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '/' && i + 1 < text.length()) {
+                    char next = text.charAt(i + 1);
+                    if (next == '/') {
+                        break;
+                    }
+                    if (next == '*') {
+                        int close = text.indexOf("*/", i + 2);
+                        if (close < 0) {
+                            // Comment continues on the next lines
+                            inBlockComment = true;
+                            break;
+                        }
+                        stripped.append(' ');
+                        i = close + 1;
+                        continue;
+                    }
+                }
+                stripped.append(c);
+            }
+            return stripped.toString();
+        }
+
+        private Long isDefined(String name) {
+            if (name == null) {
+                return null;
+            }
+            Macro macro = macros.get(name);
+            if (macro == null || macro.kind() == Kind.UNKNOWN) {
+                return null;
+            }
+            return macro.kind() == Kind.DEFINED ? 1L : 0L;
+        }
+
+        private Long evaluate(String expression) {
+            try {
+                Expression parser = new Expression(expression, 0);
+                Long value = parser.parse();
+                return parser.atEnd() ? value : null;
+            } catch (RuntimeException e) {
+                LOGGER.debug("Leaving unparsable condition to shaderc: {} ({})", expression.trim(), shaderPath);
+                return null;
+            }
+        }
+
+        /**
+         * Recursive-descent evaluator for #if expressions. Values are null when they depend on something
+         * unknown; && and || still short-circuit on a known side.
+         */
+        private final class Expression {
+            private final String text;
+            private final int depth;
+            private int pos;
+
+            Expression(String text, int depth) {
+                this.text = text;
+                this.depth = depth;
+            }
+
+            boolean atEnd() {
+                skip();
+                return pos >= text.length();
+            }
+
+            Long parse() {
+                Long condition = binary(1);
+                skip();
+                if (!peek("?")) {
+                    return condition;
+                }
+
+                pos++;
+                Long whenTrue = parse();
+                expect(":");
+                Long whenFalse = parse();
+                if (condition == null) {
+                    return Objects.equals(whenTrue, whenFalse) ? whenTrue : null;
+                }
+                return condition != 0 ? whenTrue : whenFalse;
+            }
+
+            private static final String[][] LEVELS = {
+                    {},
+                    {"||"},
+                    {"&&"},
+                    {"|"},
+                    {"^"},
+                    {"&"},
+                    {"==", "!="},
+                    {"<=", ">=", "<", ">"},
+                    {"<<", ">>"},
+                    {"+", "-"},
+                    {"*", "/", "%"}
+            };
+
+            private Long binary(int level) {
+                if (level >= LEVELS.length) {
+                    return unary();
+                }
+
+                Long left = binary(level + 1);
+                while (true) {
+                    String operator = operator(LEVELS[level]);
+                    if (operator == null) {
+                        return left;
+                    }
+                    Long right = binary(level + 1);
+                    left = apply(operator, left, right);
+                }
+            }
+
+            private String operator(String[] operators) {
+                skip();
+                for (String operator : operators) {
+                    if (!text.startsWith(operator, pos)) {
+                        continue;
+                    }
+                    // Don't split && / || / << / >> / <= etc. into single-character operators
+                    int end = pos + operator.length();
+                    if (operator.length() == 1 && end < text.length()) {
+                        char next = text.charAt(end);
+                        if ((next == operator.charAt(0) && "&|<>".indexOf(next) >= 0) || (next == '=' && "<>!=".indexOf(operator.charAt(0)) >= 0)) {
+                            continue;
+                        }
+                    }
+                    pos = end;
+                    return operator;
+                }
+                return null;
+            }
+
+            private Long apply(String operator, Long left, Long right) {
+                switch (operator) {
+                    case "||" -> {
+                        if ((left != null && left != 0) || (right != null && right != 0)) {
+                            return 1L;
+                        }
+                        return left == null || right == null ? null : 0L;
+                    }
+                    case "&&" -> {
+                        if ((left != null && left == 0) || (right != null && right == 0)) {
+                            return 0L;
+                        }
+                        return left == null || right == null ? null : 1L;
+                    }
+                }
+
+                if (left == null || right == null) {
+                    return null;
+                }
+                long a = left;
+                long b = right;
+                return switch (operator) {
+                    case "|" -> a | b;
+                    case "^" -> a ^ b;
+                    case "&" -> a & b;
+                    case "==" -> a == b ? 1L : 0L;
+                    case "!=" -> a != b ? 1L : 0L;
+                    case "<" -> a < b ? 1L : 0L;
+                    case ">" -> a > b ? 1L : 0L;
+                    case "<=" -> a <= b ? 1L : 0L;
+                    case ">=" -> a >= b ? 1L : 0L;
+                    case "<<" -> a << b;
+                    case ">>" -> a >> b;
+                    case "+" -> a + b;
+                    case "-" -> a - b;
+                    case "*" -> a * b;
+                    case "/" -> b == 0 ? null : a / b;
+                    case "%" -> b == 0 ? null : a % b;
+                    default -> null;
+                };
+            }
+
+            private Long unary() {
+                skip();
+                if (pos >= text.length()) {
+                    throw new IllegalArgumentException("Unexpected end of expression");
+                }
+
+                char c = text.charAt(pos);
+                switch (c) {
+                    case '!' -> {
+                        pos++;
+                        return negate(unary());
+                    }
+                    case '~' -> {
+                        pos++;
+                        Long value = unary();
+                        return value == null ? null : ~value;
+                    }
+                    case '-' -> {
+                        pos++;
+                        Long value = unary();
+                        return value == null ? null : -value;
+                    }
+                    case '+' -> {
+                        pos++;
+                        return unary();
+                    }
+                    case '(' -> {
+                        pos++;
+                        Long value = parse();
+                        expect(")");
+                        return value;
+                    }
+                }
+
+                if (Character.isDigit(c)) {
+                    return number();
+                }
+                if (Character.isJavaIdentifierStart(c)) {
+                    return identifierValue();
+                }
+                throw new IllegalArgumentException("Unexpected character '" + c + "'");
+            }
+
+            private Long number() {
+                int start = pos;
+                while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                    pos++;
+                }
+                String literal = text.substring(start, pos).replaceAll("[uUlL]+$", "");
+
+                try {
+                    if (literal.startsWith("0x") || literal.startsWith("0X")) {
+                        return Long.parseLong(literal.substring(2), 16);
+                    }
+                    if (literal.length() > 1 && literal.startsWith("0")) {
+                        return Long.parseLong(literal.substring(1), 8);
+                    }
+                    return Long.parseLong(literal);
+                } catch (NumberFormatException e) {
+                    return null; // Floats are not valid here, let shaderc report it
+                }
+            }
+
+            private Long identifierValue() {
+                String name = word();
+
+                if (name.equals("defined")) {
+                    skip();
+                    boolean paren = peek("(");
+                    if (paren) {
+                        pos++;
+                    }
+                    skip();
+                    Long defined = isDefined(word());
+                    if (paren) {
+                        expect(")");
+                    }
+                    return defined;
+                }
+
+                Macro macro = macros.get(name);
+                if (macro == null || macro.kind() == Kind.UNKNOWN || macro.function()) {
+                    return null;
+                }
+                if (macro.kind() == Kind.UNDEFINED) {
+                    return 0L; // Undefined identifiers evaluate to 0
+                }
+                if (macro.body().isEmpty() || depth >= MAX_EXPANSION_DEPTH) {
+                    return null;
+                }
+
+                Expression body = new Expression(macro.body(), depth + 1);
+                Long value = body.parse();
+                return body.atEnd() ? value : null;
+            }
+
+            private String word() {
+                int start = pos;
+                while (pos < text.length() && isIdentifierPart(text.charAt(pos))) {
+                    pos++;
+                }
+                if (start == pos) {
+                    throw new IllegalArgumentException("Expected identifier");
+                }
+                return text.substring(start, pos);
+            }
+
+            private boolean peek(String token) {
+                return text.startsWith(token, pos);
+            }
+
+            private void expect(String token) {
+                skip();
+                if (!peek(token)) {
+                    throw new IllegalArgumentException("Expected '" + token + "'");
+                }
+                pos += token.length();
+            }
+
+            private void skip() {
+                while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                    pos++;
+                }
+            }
+        }
+    }
+
+    private static Long negate(Long value) {
+        return value == null ? null : (value == 0 ? 1L : 0L);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * First identifier in a directive's text, or null
+     */
+    private static String identifier(String text) {
+        int start = 0;
+        while (start < text.length() && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < text.length() && isIdentifierPart(text.charAt(end))) {
+            end++;
+        }
+        return end > start && !Character.isDigit(text.charAt(start)) ? text.substring(start, end) : null;
+    }
+}
@@ -0,0 +1,162 @@
+package net.vulkanshaders.compiler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte-budgeted, approximately LRU memory tier for {@link ShaderCache}
+ *
+ * Entries are weighed by their SPIR-V size and the least recently used ones are evicted once the
+ * budget is exceeded. Pinned entries (blobs referenced by live pipelines) are never evicted, even if
+ * that means going over budget.
+ * Lookups take no lock: compile workers and the render thread read a concurrent map and stamp the
+ * entry's last use, only writes (put, pin, eviction) are serialized. Eviction orders entries by those
+ * stamps, which a racing hit may update a little late, hence approximate.
+ * The tier holds one reference on every {@link SPIRVBuffer} it stores and releases it on eviction,
+ * buffers handed out by {@link #acquire(String)} stay valid until the caller releases them.
+ */
+public class MemoryTier {
+    private final long budgetBytes;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Guarded by this, like sizeBytes
+    private final Map<String, Integer> pins = new HashMap<>();
+    private long sizeBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public MemoryTier(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @return The stored buffer with a reference taken for the caller, or null
+     */
+    public SPIRVBuffer acquire(String key) {
+        Entry entry = entries.get(key);
+        // An entry evicted concurrently may have dropped its last reference, that is a miss
+        if (entry == null || !entry.buffer.tryRetain()) {
+            misses.increment();
+            return null;
+        }
+
+        entry.lastUsed = System.nanoTime();
+        hits.increment();
+        return entry.buffer;
+    }
+
+    /**
+     * Store a buffer, the tier takes its own reference
+     */
+    public synchronized void put(String key, SPIRVBuffer buffer) {
+        Entry entry = new Entry(buffer.retain(), buffer.size());
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            sizeBytes -= previous.size;
+            previous.buffer.release();
+        }
+        sizeBytes += entry.size;
+        evict();
+    }
+
+    /**
+     * Keep an entry resident. Pins are counted, every pin needs a matching {@link #unpin(String)}.
+     */
+    public synchronized void pin(String key) {
+        pins.merge(key, 1, Integer::sum);
+    }
+
+    public synchronized void unpin(String key) {
+        pins.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+        evict();
+    }
+
+    public synchronized boolean isPinned(String key) {
+        return pins.containsKey(key);
+    }
+
+    public synchronized void clear() {
+        // Pins belong to live pipelines and outlive a cache clear
+        for (String key : List.copyOf(entries.keySet())) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                entry.buffer.release();
+            }
+        }
+        sizeBytes = 0;
+    }
+
+    private void evict() {
+        if (sizeBytes <= budgetBytes) {
+            return;
+        }
+
+        // Only runs on writes over budget, so sorting a snapshot is cheaper than ordering every hit.
+        // The stamps are copied first, hits keep updating them while this sorts.
+        List<Candidate> candidates = new ArrayList<>(entries.size());
+        entries.forEach((key, entry) -> candidates.add(new Candidate(key, entry, entry.lastUsed)));
+        candidates.sort(Comparator.comparingLong(Candidate::lastUsed));
+
+        for (Candidate candidate : candidates) {
+            if (sizeBytes <= budgetBytes) {
+                break;
+            }
+            if (pins.containsKey(candidate.key())) {
+                continue;
+            }
+
+            Entry entry = candidate.entry();
+            if (entries.remove(candidate.key(), entry)) {
+                sizeBytes -= entry.size;
+                entry.buffer.release();
+                evictions.increment();
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private record Candidate(String key, Entry entry, long lastUsed) {
+    }
+
+    private static final class Entry {
+        final SPIRVBuffer buffer;
+        final int size;
+        // Racy on purpose: a lost update only makes the eviction order slightly less exact
+        volatile long lastUsed = System.nanoTime();
+
+        Entry(SPIRVBuffer buffer, int size) {
+            this.buffer = buffer;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package net.vulkanshaders.compiler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which pack options each shader depends on
+ *
+ * A file depends on an option if the option's name appears as an identifier anywhere in the file or in
+ * anything it includes. Built once per pack over its include graph, it tells an option change which
+ * programs have to be recompiled and keeps unrelated options out of a shader's variant key.
+ */
+public class OptionDependencyIndex {
+    private final IncludeGraph graph;
+    // File -> options named in the file's own text
+    private final Map<String, Set<String>> direct = new HashMap<>();
+    // File -> options named in the file or anything it includes
+    private final Map<String, Set<String>> closures = new ConcurrentHashMap<>();
+
+    public OptionDependencyIndex(IncludeGraph graph, Collection<String> optionNames) {
+        this.graph = graph;
+
+        Set<String> names = Set.copyOf(optionNames);
+        if (names.isEmpty()) {
+            return;
+        }
+        for (String path : graph.getTopologicalOrder()) {
+            Set<String> used = scan(graph.getSource(path), names);
+            if (!used.isEmpty()) {
+                direct.put(path, used);
+            }
+        }
+    }
+
+    /**
+     * Options the given shader depends on, over its whole include closure
+     */
+    public Set<String> getOptions(String path) {
+        return closures.computeIfAbsent(path, key -> {
+            Set<String> options = new TreeSet<>(direct.getOrDefault(key, Set.of()));
+            for (String include : graph.getIncludes(key)) {
+                options.addAll(direct.getOrDefault(include, Set.of()));
+            }
+            return Collections.unmodifiableSet(options);
+        });
+    }
+
+    /**
+     * Whether changing any of the given options can change the given shader
+     */
+    public boolean dependsOnAny(String path, Set<String> options) {
+        for (String option : getOptions(path)) {
+            if (options.contains(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> scan(String source, Set<String> names) {
+        Set<String> used = new HashSet<>();
+        if (source == null) {
+            return used;
+        }
+
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (Character.isDigit(c)) {
+                // Skip number literals so suffixes are not taken for identifiers
+                while (i < length && Character.isLetterOrDigit(source.charAt(i))) {
+                    i++;
+                }
+            } else if (c == '_' || Character.isLetter(c)) {
+                int start = i;
+                while (i < length && (source.charAt(i) == '_' || Character.isLetterOrDigit(source.charAt(i)))) {
+                    i++;
+                }
+                String word = source.substring(start, i);
+                if (names.contains(word)) {
+                    used.add(word);
+                }
+            } else {
+                i++;
+            }
+        }
+        return used;
+    }
+}
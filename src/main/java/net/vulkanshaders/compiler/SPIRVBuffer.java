@@ -0,0 +1,132 @@
+package net.vulkanshaders.compiler;
+
+import net.vulkanmod.vulkan.shader.SPIRVUtils;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Reference-counted, read-only, off-heap SPIR-V (or cache record) bytes shared by the cache and pipelines
+ *
+ * The memory is either an aligned native allocation owned by this buffer, or a slice of the mapped blob
+ * store (kept alive by the mapping itself). Either way the address can be handed straight to
+ * vkCreateShaderModule, so no copy is made between the cache and shader module creation.
+ * The creator holds the first reference, every {@link #retain()} needs a matching {@link #release()}.
+ */
+public final class SPIRVBuffer {
+    // vkCreateShaderModule needs 4-byte aligned code, allocate on a cache line boundary anyway
+    public static final int ALIGNMENT = 64;
+    private static final int REQUIRED_ALIGNMENT = 4;
+
+    private final ByteBuffer data;      // Read-only view, position 0
+    private final ByteBuffer allocation; // Owned native memory, null when backed by the blob store mapping
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private SPIRVBuffer(ByteBuffer data, ByteBuffer allocation) {
+        this.data = data;
+        this.allocation = allocation;
+    }
+
+    /**
+     * Copy the remaining bytes of a buffer (heap or direct) into a new aligned native allocation
+     */
+    public static SPIRVBuffer copyOf(ByteBuffer source) {
+        int size = source.remaining();
+        ByteBuffer allocation = MemoryUtil.memAlignedAlloc(ALIGNMENT, Math.max(size, 1));
+        ByteBuffer data = allocation.duplicate().put(source.duplicate()).flip();
+        return new SPIRVBuffer(data.asReadOnlyBuffer(), allocation);
+    }
+
+    /**
+     * Allocate an aligned native buffer of the given size and let the writer fill it from position 0
+     */
+    public static SPIRVBuffer allocate(int size, Consumer<ByteBuffer> writer) {
+        ByteBuffer allocation = MemoryUtil.memAlignedAlloc(ALIGNMENT, Math.max(size, 1));
+        try {
+            writer.accept(allocation.duplicate().limit(size));
+        } catch (RuntimeException | Error e) {
+            MemoryUtil.memAlignedFree(allocation);
+            throw e;
+        }
+        return new SPIRVBuffer(allocation.duplicate().limit(size).asReadOnlyBuffer(), allocation);
+    }
+
+    /**
+     * Share a slice of mapped memory without copying, or copy it if it is not suitably aligned
+     */
+    public static SPIRVBuffer wrapMapped(ByteBuffer slice) {
+        if (!isUsable(slice)) {
+            return copyOf(slice);
+        }
+        return new SPIRVBuffer(slice.slice().asReadOnlyBuffer(), null);
+    }
+
+    /**
+     * Whether a buffer can be passed to vkCreateShaderModule as is
+     */
+    public static boolean isUsable(ByteBuffer buffer) {
+        return buffer.isDirect() && MemoryUtil.memAddress(buffer) % REQUIRED_ALIGNMENT == 0;
+    }
+
+    /**
+     * Read-only view of the bytes. Views share memory, each caller gets its own position/limit.
+     * Only valid while the caller holds a reference.
+     */
+    public ByteBuffer view() {
+        return data.duplicate();
+    }
+
+    public int size() {
+        return data.remaining();
+    }
+
+    /**
+     * Wrap as VulkanMod SPIR-V. The handle is 0: the bytes belong to this buffer, not to shaderc,
+     * so {@link SPIRVUtils.SPIRV#free()} must not be used on it.
+     */
+    public SPIRVUtils.SPIRV toSPIRV() {
+        return new SPIRVUtils.SPIRV(0, view());
+    }
+
+    public SPIRVBuffer retain() {
+        if (!tryRetain()) {
+            throw new IllegalStateException("SPIR-V buffer already released");
+        }
+        return this;
+    }
+
+    /**
+     * Take a reference unless the last one is already gone, for readers racing a release without a lock
+     *
+     * @return Whether a reference was taken
+     */
+    public boolean tryRetain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count == 0 && allocation != null) {
+            MemoryUtil.memAlignedFree(allocation);
+        } else if (count < 0) {
+            throw new IllegalStateException("SPIR-V buffer released too many times");
+        }
+    }
+
+    public int getReferenceCount() {
+        return references.get();
+    }
+
+    public boolean isMapped() {
+        return allocation == null;
+    }
+}
@@ -1,44 +1,196 @@
 package net.vulkanshaders.compiler;
 
+import net.fabricmc.loader.api.FabricLoader;
 import net.vulkanmod.vulkan.shader.SPIRVUtils;
 import net.vulkanmod.vulkan.shader.converter.GLSLParser;
 import net.vulkanmod.vulkan.shader.converter.Lexer;
 import net.vulkanmod.vulkan.shader.descriptor.ImageDescriptor;
 import net.vulkanmod.vulkan.shader.descriptor.UBO;
+import net.vulkanshaders.spirv.SPIRVReducer;
+import net.vulkanshaders.spirv.SPIRVReflector;
+import net.vulkanshaders.spirv.ShaderReflection;
+import org.lwjgl.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Compiles GLSL 450 shader source to SPIR-V bytecode with caching
  * Supports both Vulkan-native and OpenGL-style GLSL (auto-converted via VulkanMod)
+ * Safe to call from multiple compile threads at once
  */
 public class SPIRVCompiler {
     private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Compiler");
+
+    // Bump when needsConversion/convertToVulkan change behaviour, invalidates first-level keys
+    private static final int CONVERSION_REVISION = 1;
+    // shaderc comes with LWJGL, so its version pins the compiler
+    private static final String CONVERTER_VERSION = CONVERSION_REVISION + "/" + vulkanModVersion()
+            + "/lwjgl-" + Version.getVersion();
+    private static final String SOURCE_KEY_PREFIX = "src-";
+    private static final String REFLECTION_KEY_PREFIX = "refl-";
+    private static final String VARIANT_KEY_PREFIX = "var-";
+    private static final String BUNDLE_KEY_PREFIX = "pack-";
+
     private final ShaderCache cache;
-    private final Map<String, ShaderMetadata> metadataCache = new HashMap<>();
+    private final boolean stripDebugInfo;
+    // Reduced and unreduced SPIR-V must not share cache entries, nor output of different reducer revisions
+    private final String reductionTag;
+    // Converter metadata by blob key, blobs are content-addressed so identical shaders share an entry
+    private final Map<String, ShaderMetadata> metadataCache = new ConcurrentHashMap<>();
+    private final ContentIndex contentIndex = new ContentIndex();
+    // Identical requests racing each other share one compile, each waiter takes its own buffer reference
+    private final SingleFlight<String, CompiledShader> inFlight =
+            new SingleFlight<>(shader -> shader.bytecode().retain());
 
     public SPIRVCompiler(ShaderCache cache) {
+        this(cache, true);
+    }
+
+    /**
+     * @param stripDebugInfo Strip debug info from compiled SPIR-V, unused declarations are removed either way
+     */
+    public SPIRVCompiler(ShaderCache cache, boolean stripDebugInfo) {
         this.cache = cache;
+        this.stripDebugInfo = stripDebugInfo;
+        this.reductionTag = "|reduced-r" + SPIRVReducer.REVISION + (stripDebugInfo ? "" : "-debug");
+    }
+
+    /**
+     * Compile and also report the cache key the SPIR-V is stored under, so callers can pin it
+     * The result holds a reference on the cached bytecode, owned by the caller.
+     */
+    public CompiledShader compileShader(String shaderName, String source,
+                                        SPIRVUtils.ShaderKind kind,
+                                        String packVersion) {
+        return ShaderCompileExecutor.await(compileShaderShared(shaderName, source, kind, packVersion));
+    }
+
+    /**
+     * Single-flight variant of {@link #compileShader}: if the same source is already being compiled,
+     * under this or any other name, the in-flight compile's future is returned instead of compiling it
+     * again (and without blocking). Every caller still gets its own reference on the bytecode.
+     */
+    public CompletableFuture<CompiledShader> compileShaderShared(String shaderName, String source,
+                                                                 SPIRVUtils.ShaderKind kind,
+                                                                 String packVersion) {
+        // First level: raw source key, a hit skips the Lexer/GLSLParser conversion entirely.
+        // Callers hand in include-expanded source, so the include closure is covered by the source hash.
+        // Neither level depends on the shader's name, identical sources are compiled and stored once.
+        // Whether the source gets converted is part of the key, a comment can decide it.
+        String sourceKey = SOURCE_KEY_PREFIX + generateContentKey(source, kind,
+                getCompilerVersion() + (needsConversion(source) ? "|converted" : "|native"));
+
+        return inFlight.run(sourceKey, () -> compileUncached(shaderName, source, kind, sourceKey))
+                .thenApply(shader -> {
+                    contentIndex.record(shaderName, shader.cacheKey());
+                    return shader;
+                });
     }
 
-    public SPIRVUtils.SPIRV compile(String shaderName, String source,
-                                    SPIRVUtils.ShaderKind kind,
-                                    String packVersion) {
-        // CRITICAL: Preprocess FIRST, use converted source for cache key
-        String vulkanSource = preprocessGLSL(shaderName, source, kind);
-        String cacheKey = generateCacheKey(shaderName, vulkanSource, kind, packVersion);
+    /**
+     * Compile one option variant of a shader, looked up by its variant key before anything else
+     * A hit costs a cache lookup: the source is not preprocessed, converted or hashed. A miss compiles
+     * the supplied source through {@link #compileShaderShared} and records the variant key for next time.
+     *
+     * @param variantKey Identifies the shader's sources and the option values it depends on
+     * @param source     Supplies the option-specialized source, only called on a miss
+     */
+    public CompletableFuture<CompiledShader> compileVariantShared(String shaderName, String variantKey,
+                                                                  Supplier<String> source,
+                                                                  SPIRVUtils.ShaderKind kind,
+                                                                  String packVersion) {
+        // The variant key names the shader's path, so these records form the persistent name -> blob index
+        String key = VARIANT_KEY_PREFIX + generateCacheKey(variantKey, kind,
+                packVersion + "|" + getCompilerVersion());
 
-        ByteBuffer cached = cache.get(cacheKey);
+        CompiledShader cached = loadFromSourceKey(shaderName, key);
+        if (cached != null) {
+            contentIndex.record(shaderName, cached.cacheKey());
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return compileShaderShared(shaderName, source.get(), kind, packVersion).thenApply(shader -> {
+            storeSourceKey(key, shader.cacheKey(), metadataCache.get(shader.cacheKey()));
+            return shader;
+        });
+    }
+
+    /**
+     * Version of the GLSL conversion and SPIR-V post-processing, precompiled SPIR-V is only valid for
+     * the version it was produced with
+     */
+    public String getCompilerVersion() {
+        return CONVERTER_VERSION + reductionTag;
+    }
+
+    /**
+     * Make precompiled SPIR-V (e.g. from a pack bundle) the result of a shader variant, so
+     * {@link #compileVariantShared} returns it without touching the source. The buffers are served from
+     * the cache as they are (mapped, not copied) and not written to the disk tier.
+     *
+     * @param variantKey Variant key the SPIR-V was compiled for, as passed to {@link #compileVariantShared}
+     * @param reflection Encoded reflection of the SPIR-V, may be empty (reflected on first use)
+     * @param metadata   Converter metadata, may be null
+     */
+    public void addPrecompiled(String shaderName, String variantKey, SPIRVUtils.ShaderKind kind,
+                               String packVersion, ByteBuffer spirv, ByteBuffer reflection,
+                               ShaderMetadata metadata) {
+        String variantHash = generateCacheKey(variantKey, kind, packVersion + "|" + getCompilerVersion());
+        // Addressed by the SPIR-V itself, stages shared between bundles are held once
+        String spirvKey = BUNDLE_KEY_PREFIX + hash(spirv);
+
+        Map<String, ByteBuffer> entries = new HashMap<>();
+        entries.put(spirvKey, spirv);
+        entries.put(VARIANT_KEY_PREFIX + variantHash, new SourceCacheEntry(spirvKey, metadata).encode());
+        if (reflection.hasRemaining()) {
+            entries.put(REFLECTION_KEY_PREFIX + spirvKey, reflection);
+        }
+        cache.attach(entries);
+    }
+
+    /**
+     * Name -> blob index of the shaders compiled or loaded so far, with the number of collapsed duplicates
+     */
+    public ContentIndex getContentIndex() {
+        return contentIndex;
+    }
+
+    /**
+     * Number of compile requests that attached to an identical in-flight compile
+     */
+    public long getDeduplicatedCount() {
+        return inFlight.getDeduplicatedCount();
+    }
+
+    private CompiledShader compileUncached(String shaderName, String source,
+                                           SPIRVUtils.ShaderKind kind, String sourceKey) {
+        CompiledShader warm = loadFromSourceKey(shaderName, sourceKey);
+        if (warm != null) {
+            return warm;
+        }
+
+        // Second level: post-conversion key, dedups sources that convert to the same Vulkan GLSL.
+        // Versioned like the first level, a compiler or reducer upgrade must not serve old SPIR-V.
+        Conversion conversion = preprocessGLSL(shaderName, source, kind);
+        String vulkanSource = conversion.source();
+        String cacheKey = generateContentKey(vulkanSource, kind, getCompilerVersion());
+        if (conversion.metadata() != null) {
+            metadataCache.put(cacheKey, conversion.metadata());
+        }
+
+        SPIRVBuffer cached = cache.acquire(cacheKey);
         if (cached != null) {
             LOGGER.debug("Loaded {} from cache", shaderName);
-            return new SPIRVUtils.SPIRV(0, cached);
+            storeSourceKey(sourceKey, cacheKey, conversion.metadata());
+            return compiled(cached, cacheKey);
         }
 
         LOGGER.info("Compiling shader: {} ({}). Source: {} chars",
@@ -56,14 +208,97 @@ public class SPIRVCompiler {
         long duration = System.currentTimeMillis() - startTime;
         LOGGER.info("Compiled {} in {}ms", shaderName, duration);
 
-        cache.put(cacheKey, spirv.bytecode());
-        return spirv;
+        // Hand the reduced bytes to the cache and drop shaderc's result, the cached copy is used from here on
+        SPIRVBuffer bytecode;
+        try {
+            bytecode = cache.putAndAcquire(cacheKey, reduce(shaderName, spirv.bytecode()));
+        } finally {
+            spirv.free();
+        }
+        storeSourceKey(sourceKey, cacheKey, conversion.metadata());
+        return compiled(bytecode, cacheKey);
+    }
+
+    /**
+     * Strip unused declarations (and debug info unless kept), falling back to shaderc's output
+     */
+    private ByteBuffer reduce(String shaderName, ByteBuffer bytecode) {
+        try {
+            ByteBuffer reduced = SPIRVReducer.reduce(bytecode, stripDebugInfo);
+            LOGGER.debug("Reduced {}: {} -> {} bytes", shaderName, bytecode.remaining(), reduced.remaining());
+            return reduced;
+        } catch (RuntimeException e) {
+            LOGGER.warn("SPIR-V reduction failed for {}, caching it unreduced", shaderName, e);
+            return bytecode;
+        }
+    }
+
+    private CompiledShader loadFromSourceKey(String shaderName, String sourceKey) {
+        ByteBuffer record = cache.get(sourceKey);
+        if (record == null) {
+            return null;
+        }
+
+        SourceCacheEntry entry = SourceCacheEntry.decode(record);
+        if (entry == null) {
+            LOGGER.debug("Ignoring unreadable source cache entry for {}", shaderName);
+            return null;
+        }
+
+        SPIRVBuffer cached = cache.acquire(entry.spirvKey());
+        if (cached == null) {
+            return null;
+        }
+
+        if (entry.metadata() != null) {
+            metadataCache.put(entry.spirvKey(), entry.metadata());
+        }
+
+        LOGGER.debug("Loaded {} from cache (conversion skipped)", shaderName);
+        return compiled(cached, entry.spirvKey());
     }
 
-    private String preprocessGLSL(String shaderName, String source, SPIRVUtils.ShaderKind kind) {
+    private CompiledShader compiled(SPIRVBuffer bytecode, String cacheKey) {
+        return new CompiledShader(bytecode, cacheKey, reflect(bytecode.view(), cacheKey));
+    }
+
+    /**
+     * Reflect descriptor layouts from the bytecode once and keep the result next to the blob
+     */
+    private ShaderReflection reflect(ByteBuffer bytecode, String cacheKey) {
+        String reflectionKey = REFLECTION_KEY_PREFIX + cacheKey;
+
+        ByteBuffer stored = cache.get(reflectionKey);
+        if (stored != null) {
+            ShaderReflection reflection = ShaderReflection.decode(stored);
+            if (reflection != null) {
+                return reflection;
+            }
+        }
+
+        try {
+            ShaderReflection reflection = SPIRVReflector.reflect(bytecode);
+            cache.put(reflectionKey, reflection.encode());
+            return reflection;
+        } catch (RuntimeException e) {
+            LOGGER.warn("SPIR-V reflection failed for cache entry {}", cacheKey, e);
+            return null;
+        }
+    }
+
+    private void storeSourceKey(String sourceKey, String spirvKey, ShaderMetadata metadata) {
+        try {
+            cache.put(sourceKey, new SourceCacheEntry(spirvKey, metadata).encode());
+        } catch (RuntimeException e) {
+            // Only costs a conversion on the next start
+            LOGGER.warn("Failed to store source cache entry: {}", sourceKey, e);
+        }
+    }
+
+    private Conversion preprocessGLSL(String shaderName, String source, SPIRVUtils.ShaderKind kind) {
         if (!needsConversion(source)) {
             LOGGER.debug("{}: Native Vulkan GLSL (fast path)", shaderName);
-            return source;
+            return new Conversion(source, null);
         }
 
         LOGGER.info("Converting OpenGL GLSL → Vulkan: {}", shaderName);
@@ -79,7 +314,7 @@ public class SPIRVCompiler {
     }
 
     /** EXACT VulkanMod GLSLParser workflow from attached source */
-    private String convertToVulkan(String source, SPIRVUtils.ShaderKind kind, String shaderName) {
+    private Conversion convertToVulkan(String source, SPIRVUtils.ShaderKind kind, String shaderName) {
         try {
             GLSLParser.Stage stage = switch (kind) {
                 case VERTEX_SHADER -> GLSLParser.Stage.VERTEX;
@@ -99,44 +334,79 @@ public class SPIRVCompiler {
             UBO[] ubos = parser.createUBOs();
             List<ImageDescriptor> samplers = parser.getSamplerList();
 
-            metadataCache.put(shaderName, new ShaderMetadata(ubos, samplers));
+            ShaderMetadata metadata = new ShaderMetadata(ubos, samplers);
             LOGGER.debug("{}: Converted → {} UBOs, {} samplers",
                     shaderName, ubos.length, samplers.size());
 
-            return vulkanGLSL;
+            return new Conversion(vulkanGLSL, metadata);
 
         } catch (Exception e) {
             LOGGER.error("GLSL conversion failed for {}: {}", shaderName, e.getMessage());
             LOGGER.debug("Source preview:\n{}", source.substring(0, Math.min(1000, source.length())));
-            return source;  // Fallback: let SPIRVUtils fail-fast
+            return new Conversion(source, null);  // Fallback: let SPIRVUtils fail-fast
         }
     }
 
+    /**
+     * Converter metadata of the blob the shader resolved to last
+     */
     public ShaderMetadata getMetadata(String shaderName) {
-        return metadataCache.get(shaderName);
+        String contentKey = contentIndex.getContentKey(shaderName);
+        return contentKey != null ? metadataCache.get(contentKey) : null;
     }
 
-    private String generateCacheKey(String name, String source, SPIRVUtils.ShaderKind kind, String version) {
+    /**
+     * Key of a shader's source content, the same for sources that only differ in comments or formatting
+     * With debug info kept, the SPIR-V carries the source text and line numbers, so the raw text is used.
+     */
+    private String generateContentKey(String source, SPIRVUtils.ShaderKind kind, String version) {
+        return generateCacheKey(stripDebugInfo ? SourceNormalizer.normalize(source) : source, kind, version);
+    }
+
+    private static String vulkanModVersion() {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            digest.update(name.getBytes());
-            digest.update(source.getBytes());  // POST-conversion source
-            digest.update(kind.name().getBytes());
-            digest.update(version.getBytes());
-
-            byte[] hash = digest.digest();
-            StringBuilder hex = new StringBuilder();
-            for (byte b : hash) {
-                String h = Integer.toHexString(0xff & b);
-                if (h.length() == 1) hex.append('0');
-                hex.append(h);
-            }
-            return hex.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 unavailable", e);
+            return FabricLoader.getInstance()
+                    .getModContainer("vulkanmod")
+                    .map(mod -> mod.getMetadata().getVersion().getFriendlyString())
+                    .orElse("unknown");
+        } catch (RuntimeException e) {
+            // No loader state when running headless (benchmarks)
+            return "unknown";
         }
     }
 
+    /**
+     * The same source, stage and version give the same key whatever the shader is called
+     */
+    public static String generateCacheKey(String source, SPIRVUtils.ShaderKind kind, String version) {
+        return ContentHasher.get()
+                .putString(source)  // POST-conversion source
+                .putString(kind.name())
+                .putString(version)
+                .finish()
+                .toHex();
+    }
+
+    private static String hash(ByteBuffer data) {
+        return ContentHasher.get().putBytes(data).finish().toHex();
+    }
+
+    /**
+     * @param bytecode   Cache-owned SPIR-V, the holder of this record owns one reference on it
+     * @param reflection Descriptor layout reflected from the SPIR-V, null if reflection failed
+     */
+    public record CompiledShader(SPIRVBuffer bytecode, String cacheKey, ShaderReflection reflection) {
+        /**
+         * Zero-copy VulkanMod view of the bytecode, valid while the reference is held
+         */
+        public SPIRVUtils.SPIRV spirv() {
+            return bytecode.toSPIRV();
+        }
+    }
+
+    private record Conversion(String source, ShaderMetadata metadata) {
+    }
+
     public static class ShaderMetadata {
         public final UBO[] ubos;
         public final List<ImageDescriptor> samplers;
@@ -0,0 +1,253 @@
+package net.vulkanshaders.compiler;
+
+import net.vulkanshaders.spirv.SPIRVConstants;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact on-disk encoding for cached SPIR-V
+ *
+ * A SMOL-V style word transform followed by Deflate. Each instruction becomes its opcode and word count
+ * as varints, and every operand is stored as the zigzag varint of its difference to the same operand of
+ * the previous instruction with that opcode. Ids grow almost monotonically and literals repeat, so most
+ * operands shrink to a single byte that Deflate then compresses well.
+ *
+ * Entries start with a 16-byte header (magic, format version, codec, decoded and transformed sizes), so
+ * they can sit in the same store as raw SPIR-V and cache records. Decoding reuses a per-thread Inflater and
+ * staging buffer and writes words straight into the caller's (direct) buffer, without allocating.
+ */
+public final class SPIRVCompression {
+    public static final int MAGIC = 0x56535A31; // "VSZ1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int CODEC_WORD_DELTA_DEFLATE = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // Previous-operand table, indexed by opcode hash. Encoder and decoder use the same indexing,
+    // so collisions only cost compression, never correctness.
+    private static final int OPCODE_SLOTS = 1024;
+    private static final int TRACKED_OPERANDS = 16;
+
+    private static final ThreadLocal<Decoder> DECODERS = ThreadLocal.withInitial(Decoder::new);
+
+    private SPIRVCompression() {
+    }
+
+    /**
+     * Encode a SPIR-V module
+     *
+     * @param level Deflate level, 1 (fastest) to 9 (smallest)
+     * @return Encoded entry, or null if the data is not SPIR-V or would not get smaller
+     */
+    public static ByteBuffer compress(ByteBuffer bytecode, int level) {
+        ByteBuffer data = bytecode.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < SPIRVConstants.HEADER_WORDS * 4 || data.remaining() % 4 != 0
+                || data.getInt(data.position()) != SPIRVConstants.MAGIC) {
+            return null;
+        }
+
+        int[] words = SPIRVConstants.toWords(data);
+        // Instruction headers take up to 6 bytes (two 3-byte varints), operands up to 5
+        byte[] transformed = new byte[words.length * 6];
+        int transformedSize;
+        try {
+            transformedSize = transform(words, transformed);
+        } catch (IllegalArgumentException e) {
+            return null; // Malformed instruction stream, store it as is
+        }
+
+        Deflater deflater = new Deflater(Math.max(1, Math.min(9, level)));
+        try {
+            deflater.setInput(transformed, 0, transformedSize);
+            deflater.finish();
+
+            ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + data.remaining());
+            out.putInt(MAGIC)
+                    .put((byte) FORMAT_VERSION)
+                    .put((byte) CODEC_WORD_DELTA_DEFLATE)
+                    .putShort((short) 0)
+                    .putInt(data.remaining())
+                    .putInt(transformedSize);
+
+            while (!deflater.finished()) {
+                if (!out.hasRemaining() || deflater.deflate(out) == 0 && deflater.needsInput()) {
+                    return null; // Not smaller than raw
+                }
+            }
+            return out.position() < data.remaining() ? out.flip() : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Whether a stored entry was written by {@link #compress}
+     */
+    public static boolean isCompressed(ByteBuffer entry) {
+        return entry.remaining() >= HEADER_SIZE && entry.getInt(entry.position()) == MAGIC;
+    }
+
+    /**
+     * Size of the SPIR-V an entry decodes to
+     */
+    public static int decodedSize(ByteBuffer entry) {
+        return entry.getInt(entry.position() + 8);
+    }
+
+    /**
+     * Decode an entry into the target, starting at its position (which is advanced)
+     *
+     * @throws IllegalArgumentException if the entry is corrupt or of an unknown format
+     */
+    public static void decompress(ByteBuffer entry, ByteBuffer target) {
+        int start = entry.position();
+        if (!isCompressed(entry) || entry.get(start + 4) != FORMAT_VERSION
+                || entry.get(start + 5) != CODEC_WORD_DELTA_DEFLATE) {
+            throw new IllegalArgumentException("Unsupported compressed cache entry");
+        }
+
+        int decodedSize = entry.getInt(start + 8);
+        int transformedSize = entry.getInt(start + 12);
+        if (decodedSize % 4 != 0 || decodedSize < 0 || transformedSize < 0 || target.remaining() < decodedSize) {
+            throw new IllegalArgumentException("Corrupt compressed cache entry header");
+        }
+
+        DECODERS.get().decode(entry.duplicate().position(start + HEADER_SIZE), transformedSize,
+                target, decodedSize);
+    }
+
+    private static int transform(int[] words, byte[] out) {
+        int size = 0;
+        for (int i = 0; i < SPIRVConstants.HEADER_WORDS; i++) {
+            size = putVarint(out, size, words[i] & 0xFFFFFFFFL);
+        }
+
+        int[] previous = new int[OPCODE_SLOTS * TRACKED_OPERANDS];
+        int i = SPIRVConstants.HEADER_WORDS;
+        while (i < words.length) {
+            int count = SPIRVConstants.wordCount(words[i]);
+            int op = SPIRVConstants.opcode(words[i]);
+            if (count == 0 || i + count > words.length) {
+                throw new IllegalArgumentException("Malformed SPIR-V instruction at word " + i);
+            }
+
+            size = putVarint(out, size, op);
+            size = putVarint(out, size, count);
+
+            int slot = (op & (OPCODE_SLOTS - 1)) * TRACKED_OPERANDS;
+            for (int k = 1; k < count; k++) {
+                int word = words[i + k];
+                if (k < TRACKED_OPERANDS) {
+                    size = putVarint(out, size, zigzag(word - previous[slot + k]));
+                    previous[slot + k] = word;
+                } else {
+                    size = putVarint(out, size, word & 0xFFFFFFFFL);
+                }
+            }
+            i += count;
+        }
+        return size;
+    }
+
+    private static int putVarint(byte[] out, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Per-thread decoding state, reused for every entry
+     */
+    private static final class Decoder {
+        private final Inflater inflater = new Inflater();
+        private final int[] previous = new int[OPCODE_SLOTS * TRACKED_OPERANDS];
+        private byte[] staging = new byte[64 * 1024];
+        private int position;
+        private int limit;
+
+        void decode(ByteBuffer compressed, int transformedSize, ByteBuffer target, int decodedSize) {
+            if (staging.length < transformedSize) {
+                staging = new byte[Math.max(transformedSize, staging.length * 2)];
+            }
+
+            inflater.reset();
+            inflater.setInput(compressed);
+            try {
+                int inflated = 0;
+                while (inflated < transformedSize) {
+                    int n = inflater.inflate(staging, inflated, transformedSize - inflated);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IllegalArgumentException("Truncated compressed cache entry");
+                    }
+                    inflated += n;
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalArgumentException("Corrupt compressed cache entry", e);
+            }
+            position = 0;
+            limit = transformedSize;
+
+            ByteBuffer out = target.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int base = out.position();
+            int words = decodedSize / 4;
+            int written = 0;
+
+            for (; written < SPIRVConstants.HEADER_WORDS && written < words; written++) {
+                out.putInt(base + written * 4, getVarint());
+            }
+
+            Arrays.fill(previous, 0);
+            while (written < words) {
+                int op = getVarint();
+                int count = getVarint();
+                if (count == 0 || written + count > words) {
+                    throw new IllegalArgumentException("Corrupt compressed cache entry");
+                }
+
+                out.putInt(base + written * 4, count << 16 | op);
+                int slot = (op & (OPCODE_SLOTS - 1)) * TRACKED_OPERANDS;
+                for (int k = 1; k < count; k++) {
+                    int value = getVarint();
+                    if (k < TRACKED_OPERANDS) {
+                        value = previous[slot + k] + unzigzag(value);
+                        previous[slot + k] = value;
+                    }
+                    out.putInt(base + (written + k) * 4, value);
+                }
+                written += count;
+            }
+
+            target.position(target.position() + decodedSize);
+        }
+
+        private int getVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (position >= limit) {
+                    throw new IllegalArgumentException("Truncated compressed cache entry");
+                }
+                byte b = staging[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Corrupt varint in compressed cache entry");
+        }
+    }
+}
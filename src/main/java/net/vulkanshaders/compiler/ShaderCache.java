@@ -1,6 +1,7 @@
 package net.vulkanshaders.compiler;
 
 import net.fabricmc.loader.api.FabricLoader;
+import net.vulkanshaders.config.VulkanShadersConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -8,22 +9,63 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Caches compiled SPIR-V bytecode to disk for faster loading
+ * Thread-safe: used concurrently by the compile executor
+ *
+ * Disk tier is a single memory-mapped {@link CacheBlobStore}. The old one-file-per-shader layout
+ * is still read as a fallback and migrated into the store on first hit.
+ * Memory tier is a byte-budgeted LRU ({@link MemoryTier}), blobs used by live pipelines are pinned.
+ * Disk quota and age-based eviction are handled by {@link CacheJanitor} in the background.
+ * SPIR-V can optionally be stored compressed ({@link SPIRVCompression}), compressed and raw entries are
+ * read either way, so switching the mode never invalidates the cache.
  */
 public class ShaderCache {
     private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Cache");
+    private static final double COMPACT_THRESHOLD = 0.5;
+
     private final Path cacheDir;
-    private final Map<String, ByteBuffer> memoryCache;
+    private final MemoryTier memoryCache;
+    private final CacheBlobStore blobStore; // null if the store could not be opened
+    private final int compressionLevel; // 0 stores raw SPIR-V
+    // Read-only entries served from outside the store (precompiled pack bundles), never written to disk
+    private final Map<String, ByteBuffer> attached = new ConcurrentHashMap<>();
+
+    // Legacy per-file entries, kept incrementally so getStats never scans the directory.
+    // Exact once the janitor has recounted them.
+    private final AtomicInteger legacyFiles = new AtomicInteger();
+    private final AtomicLong legacyBytes = new AtomicLong();
 
     public ShaderCache() {
-        this.cacheDir = FabricLoader.getInstance()
-                .getGameDir()
-                .resolve("shadercache");
-        this.memoryCache = new HashMap<>();
+        this(FabricLoader.getInstance().getGameDir().resolve("shadercache"),
+                VulkanShadersConfig.get().getMemoryCacheBudgetBytes(),
+                VulkanShadersConfig.get().compressDiskCache
+                        ? VulkanShadersConfig.get().getDiskCacheCompressionLevel() : 0,
+                VulkanShadersConfig.get().getDiskCacheQuotaBytes());
+    }
+
+    public ShaderCache(Path cacheDir, long memoryBudgetBytes) {
+        this(cacheDir, memoryBudgetBytes, 0);
+    }
+
+    public ShaderCache(Path cacheDir, long memoryBudgetBytes, int compressionLevel) {
+        this(cacheDir, memoryBudgetBytes, compressionLevel, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param compressionLevel Deflate level for new disk entries, 0 to store them raw
+     * @param diskQuotaBytes Blob store size above which the dead space left by evictions is compacted at startup
+     */
+    public ShaderCache(Path cacheDir, long memoryBudgetBytes, int compressionLevel, long diskQuotaBytes) {
+        this.cacheDir = cacheDir;
+        this.memoryCache = new MemoryTier(memoryBudgetBytes);
+        this.compressionLevel = compressionLevel;
 
         // Create cache directory
         try {
@@ -32,40 +74,143 @@ public class ShaderCache {
         } catch (IOException e) {
             LOGGER.error("Failed to create shader cache directory", e);
         }
+
+        this.blobStore = openBlobStore(diskQuotaBytes);
+    }
+
+    private CacheBlobStore openBlobStore(long diskQuotaBytes) {
+        try {
+            // Compacts (before mapping) from the same single index read when too much of the file is dead,
+            // or when the janitor's evictions left the file over quota
+            CacheBlobStore store = CacheBlobStore.open(cacheDir, COMPACT_THRESHOLD, diskQuotaBytes);
+            LOGGER.info("Shader blob store opened: {} entries", store.size());
+            return store;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to open shader blob store, using per-file cache", e);
+            return null;
+        }
     }
 
     /**
-     * Get cached SPIR-V bytecode
+     * Get cached SPIR-V bytecode (or a small cache record) as a heap copy
+     * Use {@link #acquire(String)} for bytecode that is handed to Vulkan, it avoids the copy.
      *
-     * @param key Cache key (SHA-256 hash)
+     * @param key Cache key (content hash, see {@link ContentHasher})
      * @return Cached bytecode, or null if not found
      */
     public ByteBuffer get(String key) {
+        SPIRVBuffer buffer = acquire(key);
+        if (buffer == null) {
+            return null;
+        }
+
+        try {
+            ByteBuffer copy = ByteBuffer.allocate(buffer.size());
+            return copy.put(buffer.view()).flip();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Get cached bytecode without copying: an aligned, read-only, off-heap buffer
+     *
+     * @param key Cache key (content hash, see {@link ContentHasher})
+     * @return Cached bytecode with a reference taken for the caller (call {@link SPIRVBuffer#release()}), or null
+     */
+    public SPIRVBuffer acquire(String key) {
         // Check memory cache first
-        if (memoryCache.containsKey(key)) {
-            return memoryCache.get(key);
+        SPIRVBuffer memoryCached = memoryCache.acquire(key);
+        if (memoryCached != null) {
+            return memoryCached;
         }
 
-        // Check disk cache
-        Path cachePath = cacheDir.resolve(key + ".spv");
-        if (!Files.exists(cachePath)) {
+        // Precompiled entries come next, they are never evicted from the backing mapping
+        ByteBuffer precompiled = attached.get(key);
+        if (precompiled != null) {
+            SPIRVBuffer buffer = fromDisk(key, precompiled);
+            if (buffer != null) {
+                memoryCache.put(key, buffer);
+            }
+            return buffer;
+        }
+
+        // Check blob store (hash probe + mapped slice, no file syscalls)
+        if (blobStore != null) {
+            ByteBuffer stored = blobStore.get(key);
+            if (stored != null) {
+                SPIRVBuffer buffer = fromDisk(key, stored);
+                if (buffer != null) {
+                    memoryCache.put(key, buffer);
+                }
+                return buffer;
+            }
+        }
+
+        // Fall back to the legacy per-file layout
+        ByteBuffer legacy = readLegacyFile(key);
+        if (legacy == null) {
             return null;
         }
 
-        try {
-            byte[] bytes = Files.readAllBytes(cachePath);
-            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        migrateLegacyFile(key, legacy);
 
-            // Store in memory cache
+        // Store in memory cache
+        SPIRVBuffer buffer = fromDisk(key, legacy);
+        if (buffer != null) {
             memoryCache.put(key, buffer);
+        }
+        return buffer;
+    }
 
-            return buffer;
+    /**
+     * Raw entries are shared as is (mapped, zero-copy), compressed ones are decoded once into memory
+     */
+    private SPIRVBuffer fromDisk(String key, ByteBuffer stored) {
+        if (!SPIRVCompression.isCompressed(stored)) {
+            return stored.isDirect() ? SPIRVBuffer.wrapMapped(stored) : SPIRVBuffer.copyOf(stored);
+        }
+
+        try {
+            return SPIRVBuffer.allocate(SPIRVCompression.decodedSize(stored),
+                    target -> SPIRVCompression.decompress(stored, target));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Failed to decode compressed cache entry {}, ignoring it", key, e);
+            return null;
+        }
+    }
+
+    private ByteBuffer readLegacyFile(String key) {
+        Path cachePath = cacheDir.resolve(key + ".spv");
+        if (!Files.exists(cachePath)) {
+            return null;
+        }
+
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(cachePath));
         } catch (IOException e) {
             LOGGER.warn("Failed to read cached shader: {}", key, e);
             return null;
         }
     }
 
+    private void migrateLegacyFile(String key, ByteBuffer buffer) {
+        if (blobStore == null) {
+            return;
+        }
+
+        try {
+            blobStore.put(key, buffer);
+            if (Files.deleteIfExists(cacheDir.resolve(key + ".spv"))) {
+                legacyFiles.decrementAndGet();
+                legacyBytes.addAndGet(-buffer.remaining());
+            }
+            LOGGER.debug("Migrated cached shader into blob store: {}", key);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to migrate cached shader: {}", key, e);
+        }
+    }
+
     /**
      * Store SPIR-V bytecode in cache
      *
@@ -73,10 +218,43 @@ public class ShaderCache {
      * @param bytecode Compiled SPIR-V bytecode
      */
     public void put(String key, ByteBuffer bytecode) {
-        // Store in memory
-        memoryCache.put(key, bytecode);
+        putAndAcquire(key, bytecode).release();
+    }
+
+    /**
+     * Store bytecode and keep a reference to the cache-owned copy, so the caller can drop its own
+     * (e.g. the shaderc result) right away
+     *
+     * @return Cached bytecode with a reference taken for the caller
+     */
+    public SPIRVBuffer putAndAcquire(String key, ByteBuffer bytecode) {
+        // Store in memory, one aligned off-heap copy shared by every reader
+        SPIRVBuffer buffer = SPIRVBuffer.copyOf(bytecode);
+        memoryCache.put(key, buffer);
+        writeToDisk(key, bytecode);
+        return buffer;
+    }
+
+    private void writeToDisk(String key, ByteBuffer bytecode) {
+        if (compressionLevel > 0) {
+            // Cache records and anything that would not shrink stay raw
+            ByteBuffer compressed = SPIRVCompression.compress(bytecode, compressionLevel);
+            if (compressed != null) {
+                bytecode = compressed;
+            }
+        }
 
         // Store on disk
+        if (blobStore != null) {
+            try {
+                blobStore.put(key, bytecode);
+                LOGGER.debug("Cached shader: {}", key);
+                return;
+            } catch (IOException e) {
+                LOGGER.warn("Failed to append shader to blob store, writing separate file: {}", key, e);
+            }
+        }
+
         Path cachePath = cacheDir.resolve(key + ".spv");
 
         try {
@@ -84,19 +262,87 @@ public class ShaderCache {
             byte[] bytes = new byte[bytecode.remaining()];
             bytecode.duplicate().get(bytes); // Use duplicate to avoid affecting position
 
-            Files.write(cachePath, bytes);
+            // Write to a temp file and move it into place so concurrent readers never see a partial blob
+            Path tempPath = Files.createTempFile(cacheDir, key, ".tmp");
+            Files.write(tempPath, bytes);
+            boolean replaced = Files.exists(cachePath);
+            Files.move(tempPath, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (!replaced) {
+                legacyFiles.incrementAndGet();
+                legacyBytes.addAndGet(bytes.length);
+            }
             LOGGER.debug("Cached shader: {}", key);
         } catch (IOException e) {
             LOGGER.warn("Failed to cache shader: {}", key, e);
         }
     }
 
+    /**
+     * Serve the given entries without storing them, e.g. slices of a mapped pack bundle
+     * They take precedence over the disk tier and stay available until the game exits.
+     */
+    public void attach(Map<String, ByteBuffer> entries) {
+        attached.putAll(entries);
+    }
+
+    /**
+     * Keep a blob in the memory tier while a live pipeline references it
+     */
+    public void pin(String key) {
+        memoryCache.pin(key);
+    }
+
+    public void unpin(String key) {
+        memoryCache.unpin(key);
+    }
+
+    public boolean isPinned(String key) {
+        return memoryCache.isPinned(key);
+    }
+
+    Path getCacheDir() {
+        return cacheDir;
+    }
+
+    CacheBlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    void resetLegacyCounters(int files, long bytes) {
+        legacyFiles.set(files);
+        legacyBytes.set(bytes);
+    }
+
+    /**
+     * Commit queued disk writes and persist last-access times, called when the game exits
+     */
+    public void shutdown() {
+        if (blobStore == null) {
+            return;
+        }
+
+        try {
+            blobStore.flush();
+            blobStore.saveAccessTimes();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save shader blob store state on shutdown", e);
+        }
+    }
+
     /**
      * Clear all cached shaders
      */
     public void clear() {
         memoryCache.clear();
 
+        if (blobStore != null) {
+            try {
+                blobStore.clear();
+            } catch (IOException e) {
+                LOGGER.error("Failed to clear shader blob store", e);
+            }
+        }
+
         try {
             Files.walk(cacheDir)
                     .filter(Files::isRegularFile)
@@ -109,6 +355,7 @@ public class ShaderCache {
                         }
                     });
 
+            resetLegacyCounters(0, 0);
             LOGGER.info("Shader cache cleared");
         } catch (IOException e) {
             LOGGER.error("Failed to clear shader cache", e);
@@ -116,51 +363,47 @@ public class ShaderCache {
     }
 
     /**
-     * Get cache statistics
+     * Get cache statistics, O(1): built from counters, no directory scan
      */
     public CacheStats getStats() {
-        int diskCacheSize = 0;
-        long totalSizeBytes = 0;
-
-        try {
-            diskCacheSize = (int) Files.walk(cacheDir)
-                    .filter(Files::isRegularFile)
-                    .filter(p -> p.toString().endsWith(".spv"))
-                    .count();
+        int diskCacheSize = legacyFiles.get();
+        long totalSizeBytes = legacyBytes.get();
 
-            totalSizeBytes = Files.walk(cacheDir)
-                    .filter(Files::isRegularFile)
-                    .filter(p -> p.toString().endsWith(".spv"))
-                    .mapToLong(p -> {
-                        try {
-                            return Files.size(p);
-                        } catch (IOException e) {
-                            return 0;
-                        }
-                    })
-                    .sum();
-        } catch (IOException e) {
-            LOGGER.warn("Failed to get cache stats", e);
+        if (blobStore != null) {
+            diskCacheSize += blobStore.size();
+            totalSizeBytes += blobStore.getFileBytes();
         }
 
-        return new CacheStats(memoryCache.size(), diskCacheSize, totalSizeBytes);
+        return new CacheStats(memoryCache.size(), diskCacheSize, totalSizeBytes,
+                memoryCache.getSizeBytes(), memoryCache.getHits(), memoryCache.getMisses(),
+                memoryCache.getEvictions());
     }
 
     public static class CacheStats {
         public final int memoryCached;
         public final int diskCached;
         public final long totalSizeBytes;
+        public final long memorySizeBytes;
+        public final long memoryHits;
+        public final long memoryMisses;
+        public final long memoryEvictions;
 
-        public CacheStats(int memoryCached, int diskCached, long totalSizeBytes) {
+        public CacheStats(int memoryCached, int diskCached, long totalSizeBytes,
+                          long memorySizeBytes, long memoryHits, long memoryMisses, long memoryEvictions) {
             this.memoryCached = memoryCached;
             this.diskCached = diskCached;
             this.totalSizeBytes = totalSizeBytes;
+            this.memorySizeBytes = memorySizeBytes;
+            this.memoryHits = memoryHits;
+            this.memoryMisses = memoryMisses;
+            this.memoryEvictions = memoryEvictions;
         }
 
         @Override
         public String toString() {
-            return String.format("Memory: %d, Disk: %d, Size: %.2f MB",
-                    memoryCached, diskCached, totalSizeBytes / 1024.0 / 1024.0);
+            return String.format("Memory: %d (%.2f MB, %d hits, %d misses, %d evicted), Disk: %d, Size: %.2f MB",
+                    memoryCached, memorySizeBytes / 1024.0 / 1024.0, memoryHits, memoryMisses, memoryEvictions,
+                    diskCached, totalSizeBytes / 1024.0 / 1024.0);
         }
     }
 }
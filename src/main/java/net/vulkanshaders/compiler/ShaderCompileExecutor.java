@@ -0,0 +1,160 @@
+package net.vulkanshaders.compiler;
+
+import net.vulkanmod.vulkan.shader.SPIRVUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, core-sized thread pool that runs shader compile jobs in parallel.
+ * Each (pipeline, stage) job is preprocessed, converted, hashed and compiled on its own worker,
+ * and failures stay isolated in that job's future.
+ * Identical jobs are deduplicated by {@link SPIRVCompiler#compileShaderShared}.
+ * Background jobs (prewarming inactive packs) wait until no regular job is queued, so a regular job
+ * joining a background compile always joins one that is already running on a worker.
+ */
+public class ShaderCompileExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/CompileExecutor");
+
+    private final SPIRVCompiler compiler;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong submitted = new AtomicLong();
+    private final Executor regular = task -> execute(task, false);
+    private final Executor background = task -> execute(task, true);
+
+    public ShaderCompileExecutor(SPIRVCompiler compiler) {
+        this(compiler, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShaderCompileExecutor(SPIRVCompiler compiler, int threads) {
+        this.compiler = compiler;
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new CompileThreadFactory()
+        );
+        // Let workers die once pack loading is done instead of idling for the whole session
+        this.executor.allowCoreThreadTimeOut(true);
+
+        LOGGER.info("Shader compile executor started with {} thread(s)", threads);
+    }
+
+    /**
+     * Submit a compile job for a single shader stage
+     *
+     * @param shaderName Name used for logging and metadata lookup
+     * @param source Supplies the source to compile; runs on the worker so preprocessing is parallel too
+     * @param kind Shader stage
+     * @param packVersion Version of the owning pack (part of the cache key)
+     * @return Future completing with the compiled SPIR-V and its cache key, or exceptionally if this job failed
+     */
+    public CompletableFuture<SPIRVCompiler.CompiledShader> submit(String shaderName, Supplier<String> source,
+                                                                  SPIRVUtils.ShaderKind kind,
+                                                                  String packVersion) {
+        // A job duplicating one already in flight completes with it instead of occupying a worker
+        return CompletableFuture.supplyAsync(
+                () -> compiler.compileShaderShared(shaderName, source.get(), kind, packVersion),
+                regular
+        ).thenCompose(Function.identity());
+    }
+
+    /**
+     * Submit a compile job for one option variant of a shader stage, see {@link SPIRVCompiler#compileVariantShared}
+     *
+     * @param variantKey Identifies the stage's sources and the option values it depends on
+     * @param source Supplies the option-specialized source, only called if the variant is not cached
+     */
+    public CompletableFuture<SPIRVCompiler.CompiledShader> submitVariant(String shaderName, String variantKey,
+                                                                         Supplier<String> source,
+                                                                         SPIRVUtils.ShaderKind kind,
+                                                                         String packVersion) {
+        return submitVariant(shaderName, variantKey, source, kind, packVersion, false);
+    }
+
+    /**
+     * @param background Run only once no regular job is waiting
+     */
+    public CompletableFuture<SPIRVCompiler.CompiledShader> submitVariant(String shaderName, String variantKey,
+                                                                         Supplier<String> source,
+                                                                         SPIRVUtils.ShaderKind kind,
+                                                                         String packVersion,
+                                                                         boolean background) {
+        return CompletableFuture.supplyAsync(
+                () -> compiler.compileVariantShared(shaderName, variantKey, source, kind, packVersion),
+                background ? this.background : regular
+        ).thenCompose(Function.identity());
+    }
+
+    private void execute(Runnable task, boolean background) {
+        executor.execute(new Job(task, background, submitted.getAndIncrement()));
+    }
+
+    /**
+     * Release the result of a job that will not be used, now or whenever the job finishes
+     * Each result holds a reference on its bytecode, dropping the job without this leaks it.
+     */
+    public static void discard(CompletableFuture<SPIRVCompiler.CompiledShader> job) {
+        job.thenAccept(shader -> shader.bytecode().release());
+    }
+
+    /**
+     * Wait for a compile job, unwrapping the job's own failure
+     */
+    public static SPIRVCompiler.CompiledShader await(CompletableFuture<SPIRVCompiler.CompiledShader> job) {
+        try {
+            return job.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Queued job: regular jobs first, each kind in submission order
+     */
+    private record Job(Runnable task, boolean background, long sequence) implements Runnable, Comparable<Job> {
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (background != other.background) {
+                return background ? 1 : -1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static class CompileThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "VulkanShaders-Compile-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package net.vulkanshaders.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent requests for the same key into one execution
+ *
+ * The first caller for a key runs the task on its own thread. Callers arriving while it is in flight
+ * get the same future instead of repeating the work, and never block a thread while waiting.
+ * Results that carry ownership (ref-counted buffers) are handed to the share hook once per extra
+ * waiter before the result is published, so every caller owns its own reference.
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, Flight<V>> inFlight = new HashMap<>();
+    private final Consumer<V> share;
+    private final LongAdder deduplicated = new LongAdder();
+
+    /**
+     * @param share Called once per waiter that joined an in-flight execution, e.g. to take a reference for it
+     */
+    public SingleFlight(Consumer<V> share) {
+        this.share = share;
+    }
+
+    /**
+     * Run the task for this key, or join the execution already in flight
+     *
+     * @return Completed future if this caller ran the task, otherwise the in-flight execution's future
+     */
+    public CompletableFuture<V> run(K key, Supplier<V> task) {
+        Flight<V> flight;
+        synchronized (inFlight) {
+            flight = inFlight.get(key);
+            if (flight != null) {
+                flight.waiters++;
+                deduplicated.increment();
+                return flight.result;
+            }
+
+            flight = new Flight<>();
+            inFlight.put(key, flight);
+        }
+
+        V value;
+        try {
+            value = task.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (inFlight) {
+                inFlight.remove(key);
+            }
+            flight.result.completeExceptionally(e);
+            return flight.result;
+        }
+
+        int waiters;
+        synchronized (inFlight) {
+            // Nobody can join after this, so the waiter count is final
+            inFlight.remove(key);
+            waiters = flight.waiters;
+        }
+
+        for (int i = 0; i < waiters; i++) {
+            share.accept(value);
+        }
+        flight.result.complete(value);
+        return flight.result;
+    }
+
+    /**
+     * Number of requests that joined an execution instead of running their own
+     */
+    public long getDeduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+    private static class Flight<V> {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        int waiters; // Guarded by the inFlight lock
+    }
+}
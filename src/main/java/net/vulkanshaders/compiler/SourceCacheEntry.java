@@ -0,0 +1,109 @@
+package net.vulkanshaders.compiler;
+
+import net.vulkanmod.vulkan.shader.descriptor.ImageDescriptor;
+import net.vulkanmod.vulkan.shader.descriptor.UBO;
+import net.vulkanmod.vulkan.shader.layout.AlignedStruct;
+import net.vulkanmod.vulkan.shader.layout.Uniform;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * First-level cache record: maps a pre-conversion source key to the post-conversion SPIR-V key
+ * plus the serialized {@link SPIRVCompiler.ShaderMetadata}, so a warm start never runs the GLSL converter
+ */
+public record SourceCacheEntry(String spirvKey, SPIRVCompiler.ShaderMetadata metadata) {
+    private static final int MAGIC = 0x56535343; // "VSSC"
+    private static final int FORMAT_VERSION = 1;
+
+    public ByteBuffer encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(spirvKey);
+            out.writeBoolean(metadata != null);
+
+            if (metadata != null) {
+                out.writeInt(metadata.ubos.length);
+                for (UBO ubo : metadata.ubos) {
+                    out.writeInt(ubo.getBinding());
+                    out.writeInt(ubo.getStages());
+
+                    List<Uniform> uniforms = ubo.getUniforms();
+                    out.writeInt(uniforms.size());
+                    for (Uniform uniform : uniforms) {
+                        Uniform.Info info = uniform.getInfo();
+                        out.writeUTF(info.type);
+                        out.writeUTF(info.name);
+                        out.writeInt(info.align);
+                        out.writeInt(info.size);
+                    }
+                }
+
+                out.writeInt(metadata.samplers.size());
+                for (ImageDescriptor sampler : metadata.samplers) {
+                    out.writeInt(sampler.getBinding());
+                    out.writeUTF(sampler.qualifier);
+                    out.writeUTF(sampler.name);
+                    out.writeInt(sampler.imageIdx);
+                }
+            }
+
+            out.flush();
+            return ByteBuffer.wrap(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode source cache entry", e);
+        }
+    }
+
+    /**
+     * @return Decoded entry, or null if the data is from another format version or corrupt
+     */
+    public static SourceCacheEntry decode(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            String spirvKey = in.readUTF();
+            if (!in.readBoolean()) {
+                return new SourceCacheEntry(spirvKey, null);
+            }
+
+            UBO[] ubos = new UBO[in.readInt()];
+            for (int i = 0; i < ubos.length; i++) {
+                int binding = in.readInt();
+                int stages = in.readInt();
+
+                AlignedStruct.Builder builder = new AlignedStruct.Builder();
+                int uniformCount = in.readInt();
+                for (int u = 0; u < uniformCount; u++) {
+                    builder.addUniformInfo(new Uniform.Info(in.readUTF(), in.readUTF(), in.readInt(), in.readInt()));
+                }
+                ubos[i] = builder.buildUBO(binding, stages);
+            }
+
+            int samplerCount = in.readInt();
+            List<ImageDescriptor> samplers = new ArrayList<>(samplerCount);
+            for (int i = 0; i < samplerCount; i++) {
+                samplers.add(new ImageDescriptor(in.readInt(), in.readUTF(), in.readUTF(), in.readInt()));
+            }
+
+            return new SourceCacheEntry(spirvKey, new SPIRVCompiler.ShaderMetadata(ubos, samplers));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
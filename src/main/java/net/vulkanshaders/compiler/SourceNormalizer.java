@@ -0,0 +1,145 @@
+package net.vulkanshaders.compiler;
+
+import java.util.Set;
+
+/**
+ * Canonical form of GLSL source for cache keys: the token stream without comments or formatting
+ *
+ * Comments (including the include markers {@link GLSLPreprocessor} emits) are dropped, line splices are
+ * joined and whitespace is only kept where removing it would merge two tokens. Preprocessor directives
+ * stay on their own lines with their whitespace collapsed to single spaces, since a directive ends at the
+ * newline and a space before '(' decides whether a macro is function-like. Two sources with the same
+ * canonical form compile to the same SPIR-V once debug info is stripped.
+ */
+public final class SourceNormalizer {
+    private static final Set<String> MERGING_OPERATORS = Set.of(
+            "++", "--", "<<", ">>", "<=", ">=", "==", "!=", "&&", "||", "^^",
+            "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", "##", "//", "/*");
+
+    private SourceNormalizer() {
+    }
+
+    /**
+     * @return Canonical form, or the source unchanged if it uses __LINE__ (line numbers are semantic then)
+     */
+    public static String normalize(String source) {
+        if (source.contains("__LINE__")) {
+            return source;
+        }
+
+        int length = source.length();
+        StringBuilder out = new StringBuilder(length);
+        boolean lineStart = true;
+        boolean directive = false;
+        boolean space = false;
+
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+
+            int splice = spliceLength(source, i);
+            if (splice > 0) {
+                i += splice;
+                continue;
+            }
+
+            if (c == '\n') {
+                if (directive) {
+                    out.append('\n');
+                    directive = false;
+                    space = false;
+                } else {
+                    space = true;
+                }
+                lineStart = true;
+                i++;
+                continue;
+            }
+
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == 0x0B) {
+                space = true;
+                i++;
+                continue;
+            }
+
+            if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                // Runs to the end of the line, which a splice extends
+                i += 2;
+                while (i < length && source.charAt(i) != '\n') {
+                    int commentSplice = spliceLength(source, i);
+                    i += commentSplice > 0 ? commentSplice : 1;
+                }
+                space = true;
+                continue;
+            }
+
+            if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                // Counts as one space, also inside a directive spanning lines
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                space = true;
+                continue;
+            }
+
+            if (lineStart && c == '#') {
+                if (!out.isEmpty() && out.charAt(out.length() - 1) != '\n') {
+                    out.append('\n');
+                }
+                directive = true;
+            } else if (space && !out.isEmpty()) {
+                char previous = out.charAt(out.length() - 1);
+                if (previous != '\n' && (directive || needsSeparator(previous, c))) {
+                    out.append(' ');
+                }
+            }
+            space = false;
+            lineStart = false;
+
+            if (c == '"') {
+                // #include and #line file names are kept verbatim
+                int end = i + 1;
+                while (end < length && source.charAt(end) != '"' && source.charAt(end) != '\n') {
+                    end++;
+                }
+                end = end < length && source.charAt(end) == '"' ? end + 1 : end;
+                out.append(source, i, end);
+                i = end;
+                continue;
+            }
+
+            out.append(c);
+            i++;
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Length of a backslash-newline at this position, 0 if there is none
+     */
+    private static int spliceLength(String source, int i) {
+        if (source.charAt(i) != '\\' || i + 1 >= source.length()) {
+            return 0;
+        }
+        if (source.charAt(i + 1) == '\n') {
+            return 2;
+        }
+        return source.startsWith("\r\n", i + 1) ? 3 : 0;
+    }
+
+    /**
+     * Whether dropping the whitespace between these characters could change the tokens
+     */
+    private static boolean needsSeparator(char previous, char next) {
+        if (isWord(previous) && isWord(next)) {
+            return true;
+        }
+        // Two operators only merge if they start a longer operator (or a comment)
+        return MERGING_OPERATORS.contains(String.valueOf(new char[]{previous, next}));
+    }
+
+    private static boolean isWord(char c) {
+        // '.' belongs to numbers (1 .5 is not 1.5)
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+}
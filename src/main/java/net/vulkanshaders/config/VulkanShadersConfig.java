@@ -0,0 +1,123 @@
+package net.vulkanshaders.config;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import net.fabricmc.loader.api.FabricLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User settings, stored in config/vulkanshaders.json
+ */
+public class VulkanShadersConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Config");
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private static VulkanShadersConfig instance;
+
+    private transient Path file;
+
+    /** Heap budget for SPIR-V blobs kept in memory, in megabytes */
+    public long memoryCacheBudgetMb = 64;
+
+    /** Disk space the shader cache may use before the least recently used entries are evicted, in megabytes */
+    public long diskCacheQuotaMb = 256;
+
+    /** Entries not used for this many days are deleted */
+    public int diskCacheMaxAgeDays = 30;
+
+    /** Delay after startup before the first cache cleanup, it then repeats every 10 minutes, in seconds */
+    public int cacheCleanupDelaySeconds = 60;
+
+    /** Store cached SPIR-V compressed on disk: smaller cache, decoded once per load into memory */
+    public boolean compressDiskCache = false;
+
+    /** Deflate level for compressed cache entries, 1 (fastest) to 9 (smallest) */
+    public int diskCacheCompressionLevel = 6;
+
+    /** Keep SPIR-V debug info (names, source, line info) in cached shaders, always on in a dev environment */
+    public boolean keepShaderDebugInfo = false;
+
+    /** Name of the shader pack in use, remembered across restarts. Empty selects the first installed pack */
+    public String activePack = "";
+
+    /** Compile inactive packs into the cache in the background so switching to them is instant (turn off on weak CPUs) */
+    public boolean prewarmInactivePacks = true;
+
+    public static synchronized VulkanShadersConfig get() {
+        if (instance == null) {
+            instance = load(FabricLoader.getInstance().getConfigDir().resolve("vulkanshaders.json"));
+        }
+        return instance;
+    }
+
+    /**
+     * Load settings from a file, writing defaults if it doesn't exist yet
+     */
+    public static VulkanShadersConfig load(Path path) {
+        VulkanShadersConfig config = null;
+
+        if (Files.exists(path)) {
+            try {
+                config = GSON.fromJson(Files.readString(path), VulkanShadersConfig.class);
+            } catch (IOException | JsonParseException e) {
+                LOGGER.warn("Failed to read {}, using defaults", path, e);
+            }
+        }
+
+        if (config == null) {
+            config = new VulkanShadersConfig();
+        }
+        config.file = path;
+
+        // Rewrite so newly added settings show up in the file
+        config.save();
+        return config;
+    }
+
+    /**
+     * Write the current settings back to the file they were loaded from
+     */
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, GSON.toJson(this));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write {}", file, e);
+        }
+    }
+
+    public long getMemoryCacheBudgetBytes() {
+        return Math.max(0, memoryCacheBudgetMb) * 1024 * 1024;
+    }
+
+    public long getDiskCacheQuotaBytes() {
+        return Math.max(0, diskCacheQuotaMb) * 1024 * 1024;
+    }
+
+    public int getDiskCacheCompressionLevel() {
+        return Math.max(1, Math.min(9, diskCacheCompressionLevel));
+    }
+
+    public long getDiskCacheMaxAgeMillis() {
+        return TimeUnit.DAYS.toMillis(Math.max(1, diskCacheMaxAgeDays));
+    }
+
+    public boolean shouldKeepShaderDebugInfo() {
+        return keepShaderDebugInfo || FabricLoader.getInstance().isDevelopmentEnvironment();
+    }
+
+    public long getCacheCleanupDelayMillis() {
+        return TimeUnit.SECONDS.toMillis(Math.max(0, cacheCleanupDelaySeconds));
+    }
+}
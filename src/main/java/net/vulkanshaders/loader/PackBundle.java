@@ -0,0 +1,294 @@
+package net.vulkanshaders.loader;
+
+import net.vulkanmod.vulkan.shader.SPIRVUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Precompiled shader pack bundle (.vspack)
+ *
+ * A single memory-mapped file: a fixed header, then 16-byte aligned blobs, then an index describing them.
+ * The bundle carries pack.json and the GLSL sources (so it is a complete pack on its own) plus one SPIR-V
+ * blob per stage and option variant, each with its reflection and converter metadata, the fingerprint of
+ * the sources it was compiled from and the option part of its variant key. Precompiled blobs are only used
+ * if their fingerprint matches the bundled sources and the bundle was written by the same compiler and
+ * converter version, anything else falls back to compiling the GLSL.
+ *
+ * Blobs are handed out as slices of the mapping, so they go to the shader cache without a copy.
+ */
+public final class PackBundle {
+    public static final String EXTENSION = ".vspack";
+
+    private static final int MAGIC = 0x5653504B; // "VSPK"
+    // 2: option values in variant keys are length-prefixed
+    private static final int FORMAT_VERSION = 2;
+    // magic(4) + version(4) + indexOffset(8) + indexLength(4) + indexCrc(4) + reserved(8)
+    private static final int HEADER_SIZE = 32;
+    // Blobs start on aligned offsets so mapped slices can go to vkCreateShaderModule without a copy
+    private static final int BLOB_ALIGNMENT = 16;
+
+    private final Path path;
+    private final ByteBuffer mapped;
+    private final String compilerVersion;
+    private final ByteBuffer packJson;
+    private final Map<String, ByteBuffer> sources;
+    private final List<Entry> entries;
+
+    private PackBundle(Path path, ByteBuffer mapped, String compilerVersion, ByteBuffer packJson,
+                       Map<String, ByteBuffer> sources, List<Entry> entries) {
+        this.path = path;
+        this.mapped = mapped;
+        this.compilerVersion = compilerVersion;
+        this.packJson = packJson;
+        this.sources = sources;
+        this.entries = entries;
+    }
+
+    /**
+     * Map a bundle and read its index. Blobs are not touched until used.
+     *
+     * @throws IOException if the file is not a bundle of a supported format version, or is truncated
+     */
+    public static PackBundle open(Path path) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a shader pack bundle: " + path.getFileName());
+            }
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).asReadOnlyBuffer();
+        }
+
+        if (mapped.getInt(0) != MAGIC) {
+            throw new IOException("Not a shader pack bundle: " + path.getFileName());
+        }
+        if (mapped.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported shader pack bundle version " + mapped.getInt(4) + ": " + path.getFileName());
+        }
+
+        long indexOffset = mapped.getLong(8);
+        int indexLength = mapped.getInt(16);
+        if (indexOffset < HEADER_SIZE || indexLength < 0 || indexOffset + indexLength > mapped.capacity()) {
+            throw new IOException("Truncated shader pack bundle: " + path.getFileName());
+        }
+
+        ByteBuffer index = mapped.slice((int) indexOffset, indexLength);
+        CRC32C crc = new CRC32C();
+        crc.update(index.duplicate());
+        if ((int) crc.getValue() != mapped.getInt(20)) {
+            throw new IOException("Corrupt shader pack bundle index: " + path.getFileName());
+        }
+
+        byte[] indexBytes = new byte[indexLength];
+        index.get(indexBytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(indexBytes))) {
+            String compilerVersion = in.readUTF();
+            ByteBuffer packJson = readBlob(in, mapped);
+
+            int sourceCount = in.readInt();
+            Map<String, ByteBuffer> sources = new LinkedHashMap<>();
+            for (int i = 0; i < sourceCount; i++) {
+                sources.put(in.readUTF(), readBlob(in, mapped));
+            }
+
+            int entryCount = in.readInt();
+            List<Entry> entries = new ArrayList<>(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                String stage = in.readUTF();
+                SPIRVUtils.ShaderKind kind = SPIRVUtils.ShaderKind.valueOf(in.readUTF());
+                String optionsKey = in.readUTF();
+                String sourceHash = in.readUTF();
+                int spirvCrc = in.readInt();
+                entries.add(new Entry(stage, kind, optionsKey, sourceHash, spirvCrc,
+                        readBlob(in, mapped), readBlob(in, mapped), readBlob(in, mapped)));
+            }
+
+            return new PackBundle(path, mapped, compilerVersion, packJson,
+                    Collections.unmodifiableMap(sources), Collections.unmodifiableList(entries));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IOException("Corrupt shader pack bundle index: " + path.getFileName(), e);
+        }
+    }
+
+    private static ByteBuffer readBlob(DataInputStream in, ByteBuffer mapped) throws IOException {
+        long offset = in.readLong();
+        int length = in.readInt();
+        if (offset < HEADER_SIZE || length < 0 || offset + length > mapped.capacity()) {
+            throw new IOException("Blob outside of bundle at offset " + offset);
+        }
+        return mapped.slice((int) offset, length);
+    }
+
+    /**
+     * Write a bundle, replacing the target atomically
+     *
+     * @param compilerVersion Version of the compiler and converter the blobs were produced with
+     * @param sources         GLSL sources by pack path, the fallback when a blob cannot be used
+     */
+    public static void write(Path target, String compilerVersion, String packJson,
+                             Map<String, String> sources, List<Entry> entries) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer writer = new Writer(channel);
+
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(4096);
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            index.writeUTF(compilerVersion);
+            writer.blob(index, ByteBuffer.wrap(packJson.getBytes(StandardCharsets.UTF_8)));
+
+            index.writeInt(sources.size());
+            for (var source : sources.entrySet()) {
+                index.writeUTF(source.getKey());
+                writer.blob(index, ByteBuffer.wrap(source.getValue().getBytes(StandardCharsets.UTF_8)));
+            }
+
+            index.writeInt(entries.size());
+            for (Entry entry : entries) {
+                CRC32C crc = new CRC32C();
+                crc.update(entry.spirv().duplicate());
+
+                index.writeUTF(entry.stage());
+                index.writeUTF(entry.kind().name());
+                index.writeUTF(entry.optionsKey());
+                index.writeUTF(entry.sourceHash());
+                index.writeInt((int) crc.getValue());
+                writer.blob(index, entry.spirv());
+                writer.blob(index, entry.reflection());
+                writer.blob(index, entry.metadata());
+            }
+            index.flush();
+
+            ByteBuffer indexData = ByteBuffer.wrap(indexBytes.toByteArray());
+            long indexOffset = writer.align();
+            writer.write(indexData.duplicate(), indexOffset);
+
+            CRC32C indexCrc = new CRC32C();
+            indexCrc.update(indexData);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(indexOffset)
+                    .putInt(indexBytes.size())
+                    .putInt((int) indexCrc.getValue())
+                    .putLong(0)
+                    .flip();
+            writer.write(header, 0);
+            channel.force(true);
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public String getCompilerVersion() {
+        return compilerVersion;
+    }
+
+    public String getPackJson() {
+        return StandardCharsets.UTF_8.decode(packJson.duplicate()).toString();
+    }
+
+    /**
+     * Pack paths of the bundled GLSL sources
+     */
+    public Set<String> getSourcePaths() {
+        return sources.keySet();
+    }
+
+    /**
+     * Decode one bundled source from the mapping
+     *
+     * @return Source text, or null if the bundle has no such source
+     */
+    public String readSource(String path) {
+        ByteBuffer bytes = sources.get(path);
+        return bytes != null ? StandardCharsets.UTF_8.decode(bytes.duplicate()).toString() : null;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public long getSizeBytes() {
+        return mapped.capacity();
+    }
+
+    /**
+     * One precompiled stage variant
+     *
+     * @param stage      Pack path of the stage's main source
+     * @param optionsKey Option part of the variant key ({@link net.vulkanshaders.model.ShaderOptions#variantKey})
+     * @param sourceHash Fingerprint of the stage's include closure the blob was compiled from
+     * @param spirvCrc   CRC32C of the SPIR-V, checked before the blob is used
+     * @param spirv      SPIR-V module
+     * @param reflection Encoded {@link net.vulkanshaders.spirv.ShaderReflection}, may be empty
+     * @param metadata   Encoded {@link net.vulkanshaders.compiler.SourceCacheEntry} with the converter metadata
+     */
+    public record Entry(String stage, SPIRVUtils.ShaderKind kind, String optionsKey, String sourceHash,
+                        int spirvCrc, ByteBuffer spirv, ByteBuffer reflection, ByteBuffer metadata) {
+        /**
+         * Whether the SPIR-V still matches the checksum it was written with
+         */
+        public boolean verify() {
+            CRC32C crc = new CRC32C();
+            crc.update(spirv.duplicate());
+            return (int) crc.getValue() == spirvCrc;
+        }
+    }
+
+    /**
+     * Appends aligned blobs after the header and records their location in the index
+     */
+    private static final class Writer {
+        private final FileChannel channel;
+        private long position = HEADER_SIZE;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void blob(DataOutputStream index, ByteBuffer data) throws IOException {
+            long offset = align();
+            int length = data.remaining();
+            write(data.duplicate(), offset);
+            position = offset + length;
+
+            index.writeLong(offset);
+            index.writeInt(length);
+        }
+
+        long align() {
+            return (position + BLOB_ALIGNMENT - 1) & -BLOB_ALIGNMENT;
+        }
+
+        void write(ByteBuffer data, long offset) throws IOException {
+            while (data.hasRemaining()) {
+                offset += channel.write(data, offset);
+            }
+        }
+    }
+}
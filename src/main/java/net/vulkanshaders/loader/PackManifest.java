@@ -0,0 +1,185 @@
+package net.vulkanshaders.loader;
+
+import net.vulkanshaders.compiler.ContentHasher;
+import net.vulkanshaders.compiler.ShaderCache;
+import net.vulkanshaders.model.PipelineConfig;
+import net.vulkanshaders.model.ShaderPack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What a warm start needs to know about a pack's stages, persisted in the shader cache
+ *
+ * For every pipeline stage: the fingerprint of its include closure and the options it depends on, which is
+ * all a variant key is made of. The manifest is stamped with the pack file's identity (path, size,
+ * modification time and entry CRCs, see {@link ShaderPack#getStamp()}), and only used while the stamp
+ * matches. With a valid manifest, variant keys are built without reading, preprocessing or hashing any GLSL,
+ * so a warm start costs a few cache lookups per pipeline.
+ */
+public final class PackManifest {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Manifest");
+
+    private static final int MAGIC = 0x5653504D; // "VSPM"
+    private static final int FORMAT_VERSION = 1;
+    private static final String KEY_PREFIX = "manifest-";
+
+    private final String stamp;
+    private final Map<String, Stage> stages;
+
+    private PackManifest(String stamp, Map<String, Stage> stages) {
+        this.stamp = stamp;
+        this.stages = stages;
+    }
+
+    /**
+     * @param sourceHash Fingerprint of the stage's include closure
+     * @param options    Options the stage depends on
+     */
+    public record Stage(String sourceHash, Set<String> options) {
+    }
+
+    /**
+     * Build the manifest from the pack's sources (reads and hashes every stage)
+     */
+    public static PackManifest build(ShaderPack pack) {
+        Map<String, Stage> stages = new LinkedHashMap<>();
+        for (PipelineConfig config : pack.getMetadata().pipelines.values()) {
+            for (String path : new String[]{config.vertex, config.fragment}) {
+                if (path != null && !stages.containsKey(path) && pack.hasShaderSource(path)) {
+                    stages.put(path, new Stage(pack.getIncludeGraph().getFingerprint(path),
+                            pack.getOptionIndex().getOptions(path)));
+                }
+            }
+        }
+        return new PackManifest(pack.getStamp(), Collections.unmodifiableMap(stages));
+    }
+
+    /**
+     * The stored manifest for a pack, if it was written for the pack file as it is now
+     *
+     * @return Manifest, or null if there is none, it is stale or the pack has no stamp
+     */
+    public static PackManifest load(ShaderCache cache, ShaderPack pack) {
+        if (pack.getStamp() == null) {
+            return null;
+        }
+
+        ByteBuffer stored = cache.get(cacheKey(pack));
+        if (stored == null) {
+            return null;
+        }
+
+        PackManifest manifest = decode(stored);
+        if (manifest == null || !manifest.stamp.equals(pack.getStamp())) {
+            LOGGER.debug("Ignoring stale manifest for {}", pack.getName());
+            return null;
+        }
+        return manifest;
+    }
+
+    /**
+     * Persist the manifest for the pack, nothing happens for packs without a stamp
+     */
+    public void store(ShaderCache cache, ShaderPack pack) {
+        if (stamp == null) {
+            return;
+        }
+
+        try {
+            cache.put(cacheKey(pack), encode());
+        } catch (RuntimeException e) {
+            // Only costs hashing the sources on the next start
+            LOGGER.warn("Failed to store manifest for {}", pack.getName(), e);
+        }
+    }
+
+    /**
+     * @return The stage's entry, or null if the manifest does not cover it
+     */
+    public Stage getStage(String path) {
+        return stages.get(path);
+    }
+
+    public int size() {
+        return stages.size();
+    }
+
+    private static String cacheKey(ShaderPack pack) {
+        return KEY_PREFIX + ContentHasher.get()
+                .putString(pack.getPackPath().toAbsolutePath().toString())
+                .finish()
+                .toHex();
+    }
+
+    private ByteBuffer encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + stages.size() * 128);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(stamp);
+            out.writeInt(stages.size());
+            for (var entry : stages.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().sourceHash());
+                out.writeInt(entry.getValue().options().size());
+                for (String option : entry.getValue().options()) {
+                    out.writeUTF(option);
+                }
+            }
+
+            out.flush();
+            return ByteBuffer.wrap(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode pack manifest", e);
+        }
+    }
+
+    /**
+     * @return Decoded manifest, or null if the data is from another format version or corrupt
+     */
+    private static PackManifest decode(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            String stamp = in.readUTF();
+            int count = in.readInt();
+            Map<String, Stage> stages = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                String sourceHash = in.readUTF();
+
+                int optionCount = in.readInt();
+                List<String> options = new ArrayList<>(optionCount);
+                for (int o = 0; o < optionCount; o++) {
+                    options.add(in.readUTF());
+                }
+                stages.put(path, new Stage(sourceHash, Collections.unmodifiableSet(new TreeSet<>(options))));
+            }
+
+            return new PackManifest(stamp, Collections.unmodifiableMap(stages));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package net.vulkanshaders.loader;
+
+import net.vulkanmod.vulkan.shader.SPIRVUtils;
+import net.vulkanshaders.compiler.SPIRVCompiler;
+import net.vulkanshaders.model.PipelineConfig;
+import net.vulkanshaders.model.ShaderPack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Compiles inactive packs into the shader cache in the background, so switching to one later is instant
+ *
+ * Submits one stage at a time as a background compile job, so it only uses spare workers and never
+ * delays the active pack. Nothing is built or published, the compiled SPIR-V is only left in the cache.
+ * A pack that gets activated is handed over with {@link #skip(ShaderPack)}.
+ */
+public class PackPrewarmer {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Prewarm");
+
+    private final List<ShaderPack> packs;
+    private final StageCompiler compiler;
+    private final Consumer<ShaderPack> onPackDone;
+    private final CompletableFuture<Integer> done = new CompletableFuture<>();
+    // Guarded by this while onPackDone runs
+    private final Set<ShaderPack> skipped = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Compiles one stage of a pack for its current options, waiting for the result
+     */
+    @FunctionalInterface
+    public interface StageCompiler {
+        SPIRVCompiler.CompiledShader compile(ShaderPack pack, String path, SPIRVUtils.ShaderKind kind);
+    }
+
+    /**
+     * @param onPackDone Called on the prewarm thread after each fully prewarmed pack
+     */
+    public PackPrewarmer(List<ShaderPack> packs, StageCompiler compiler, Consumer<ShaderPack> onPackDone) {
+        this.packs = List.copyOf(packs);
+        this.compiler = compiler;
+        this.onPackDone = onPackDone;
+    }
+
+    /**
+     * @return Future completing with the number of prewarmed stages
+     */
+    public CompletableFuture<Integer> start() {
+        // Only waits for the compile workers
+        Thread thread = new Thread(this::run, "VulkanShaders-Prewarm");
+        thread.setDaemon(true);
+        thread.start();
+        return done;
+    }
+
+    /**
+     * Stop prewarming a pack (it was activated and is compiled for real now)
+     * Once this returns, {@code onPackDone} is not running for the pack and never will.
+     */
+    public synchronized void skip(ShaderPack pack) {
+        skipped.add(pack);
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        int warmed = 0;
+        int failed = 0;
+
+        try {
+            for (ShaderPack pack : packs) {
+                for (var stage : stages(pack).entrySet()) {
+                    if (skipped.contains(pack)) {
+                        LOGGER.debug("Prewarm of {} skipped, it was activated", pack.getName());
+                        break;
+                    }
+
+                    try {
+                        compiler.compile(pack, stage.getKey(), stage.getValue()).bytecode().release();
+                        warmed++;
+                    } catch (RuntimeException e) {
+                        failed++;
+                        LOGGER.debug("Prewarm of {} in {} failed", stage.getKey(), pack.getName(), e);
+                    }
+                }
+                synchronized (this) {
+                    if (!skipped.contains(pack)) {
+                        onPackDone.accept(pack);
+                    }
+                }
+            }
+
+            LOGGER.info("✓ Prewarmed {} stage(s) of {} inactive pack(s) in {}ms ({} failed)",
+                    warmed, packs.size(), (System.nanoTime() - start) / 1_000_000, failed);
+        } catch (RuntimeException e) {
+            LOGGER.warn("✗ Prewarm stopped", e);
+        } finally {
+            done.complete(warmed);
+        }
+    }
+
+    /**
+     * Every stage once, in pack.json order
+     */
+    private static Map<String, SPIRVUtils.ShaderKind> stages(ShaderPack pack) {
+        Map<String, SPIRVUtils.ShaderKind> stages = new LinkedHashMap<>();
+        if (pack.getMetadata().pipelines == null) {
+            return stages;
+        }
+        for (PipelineConfig config : pack.getMetadata().pipelines.values()) {
+            if (config.vertex != null && pack.hasShaderSource(config.vertex)) {
+                stages.putIfAbsent(config.vertex, SPIRVUtils.ShaderKind.VERTEX_SHADER);
+            }
+            if (config.fragment != null && pack.hasShaderSource(config.fragment)) {
+                stages.putIfAbsent(config.fragment, SPIRVUtils.ShaderKind.FRAGMENT_SHADER);
+            }
+        }
+        return stages;
+    }
+}
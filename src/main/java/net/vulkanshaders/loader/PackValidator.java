@@ -1,5 +1,6 @@
 package net.vulkanshaders.loader;
 
+import net.vulkanshaders.model.ShaderOptions;
 import net.vulkanshaders.model.ShaderPack;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,17 +47,33 @@ public class PackValidator {
             }
 
             // Check if shader sources exist
-            if (pipeline.vertex != null && pack.getShaderSource(pipeline.vertex) == null) {
+            if (pipeline.vertex != null && !pack.hasShaderSource(pipeline.vertex)) {
                 LOGGER.error("Missing vertex shader: {}", pipeline.vertex);
                 return false;
             }
 
-            if (pipeline.fragment != null && pack.getShaderSource(pipeline.fragment) == null) {
+            if (pipeline.fragment != null && !pack.hasShaderSource(pipeline.fragment)) {
                 LOGGER.error("Missing fragment shader: {}", pipeline.fragment);
                 return false;
             }
         }
 
+        // Not fatal, the option starts at its minimum instead
+        if (metadata.options != null) {
+            for (var entry : metadata.options.entrySet()) {
+                var option = entry.getValue();
+                if (option == null) {
+                    LOGGER.error("Option {} in pack {} has no definition", entry.getKey(), metadata.name);
+                    return false;
+                }
+                if (!ShaderOptions.hasValidDefault(option)) {
+                    LOGGER.warn("Option {} in pack {} has no valid {} default ({}), using {}",
+                            entry.getKey(), metadata.name, option.type, option.defaultValue,
+                            option.min != null ? option.min : 0);
+                }
+            }
+        }
+
         LOGGER.info("Shader pack {} validated successfully", metadata.name);
         return true;
     }
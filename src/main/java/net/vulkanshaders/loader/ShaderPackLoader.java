@@ -4,16 +4,23 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import net.fabricmc.loader.api.FabricLoader;
 import net.vulkanshaders.model.PackMetadata;
+import net.vulkanshaders.model.PackSources;
 import net.vulkanshaders.model.ShaderPack;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 /**
@@ -23,97 +30,162 @@ public class ShaderPackLoader {
     private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Loader");
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
-    private static final Path SHADER_PACKS_DIR = FabricLoader.getInstance()
-            .getGameDir().resolve("shaderpacks");
-
     /**
      * Load all shader packs from the shaderpacks directory
      */
     public static List<ShaderPack> loadAllPacks() {
+        return loadAllPacks(FabricLoader.getInstance().getGameDir().resolve("shaderpacks"));
+    }
+
+    /**
+     * Load all shader packs from a directory
+     *
+     * Packs are read concurrently, one virtual thread each, and returned in file name order whatever
+     * order they finish in. A pack that fails to load is logged and left out, the others are unaffected.
+     */
+    public static List<ShaderPack> loadAllPacks(Path directory) {
         List<ShaderPack> packs = new ArrayList<>();
 
         // Ensure directory exists
         try {
-            Files.createDirectories(SHADER_PACKS_DIR);
+            Files.createDirectories(directory);
         } catch (IOException e) {
             LOGGER.error("Failed to create shaderpacks directory", e);
             return packs;
         }
 
-        try (Stream<Path> paths = Files.list(SHADER_PACKS_DIR)) {
-            paths.filter(p -> p.toString().endsWith(".zip"))
-                    .forEach(zipPath -> {
-                        try {
-                            ShaderPack pack = loadPack(zipPath);
-                            if (PackValidator.validate(pack)) {
-                                packs.add(pack);
-                                LOGGER.info("Loaded shader pack: {} v{}",
-                                        pack.getName(), pack.getVersion());
-                            }
-                        } catch (Exception e) {
-                            LOGGER.error("Failed to load shader pack: {}",
-                                    zipPath.getFileName(), e);
-                        }
-                    });
+        List<Path> packPaths;
+        try (Stream<Path> paths = Files.list(directory)) {
+            packPaths = paths.filter(p -> p.toString().endsWith(".zip") || p.toString().endsWith(PackBundle.EXTENSION))
+                    .sorted(Comparator.comparing(p -> p.getFileName().toString()))
+                    .toList();
         } catch (IOException e) {
             LOGGER.error("Failed to list shader packs", e);
+            return packs;
+        }
+
+        // Pack reading is almost all I/O, a virtual thread per pack overlaps it
+        List<Future<ShaderPack>> pending = new ArrayList<>(packPaths.size());
+        try (ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path packPath : packPaths) {
+                pending.add(readers.submit(() -> loadPackFile(packPath)));
+            }
+        }
+
+        for (int i = 0; i < packPaths.size(); i++) {
+            Path packPath = packPaths.get(i);
+            try {
+                ShaderPack pack = pending.get(i).get();
+                if (PackValidator.validate(pack)) {
+                    packs.add(pack);
+                    LOGGER.info("Loaded shader pack: {} v{}",
+                            pack.getName(), pack.getVersion());
+                }
+            } catch (ExecutionException e) {
+                LOGGER.error("Failed to load shader pack: {}",
+                        packPath.getFileName(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.error("Interrupted while loading shader packs");
+                break;
+            }
         }
 
         return packs;
     }
 
+    /**
+     * Load one pack file, a zip or a precompiled bundle (not validated)
+     */
+    public static ShaderPack loadPackFile(Path packPath) throws IOException {
+        return packPath.toString().endsWith(PackBundle.EXTENSION) ? loadBundle(packPath) : loadPack(packPath);
+    }
+
+    /**
+     * Index a zip pack: pack.json is parsed, shader sources are only located (offset, size, CRC) and
+     * decoded on demand, so an installed pack costs next to no heap until it is compiled
+     */
     private static ShaderPack loadPack(Path zipPath) throws IOException {
-        try (FileSystem fs = FileSystems.newFileSystem(zipPath, (ClassLoader) null)) {
-            // Load pack.json
-            Path packJsonPath = fs.getPath("pack.json");
-            if (!Files.exists(packJsonPath)) {
-                throw new IOException("pack.json not found in shader pack");
-            }
+        // One pass over the central directory
+        ZipIndex index = ZipIndex.read(zipPath);
 
-            String packJson = Files.readString(packJsonPath);
-            PackMetadata metadata = GSON.fromJson(packJson, PackMetadata.class);
+        // Load pack.json
+        String packJson = index.readString("pack.json");
+        if (packJson == null) {
+            throw new IOException("pack.json not found in shader pack");
+        }
 
-            // Load all shader sources
-            Map<String, String> shaderSources = new HashMap<>();
-            loadShaderSources(fs, metadata, shaderSources);
+        PackMetadata metadata = GSON.fromJson(packJson, PackMetadata.class);
+        if (metadata == null) {
+            throw new IOException("pack.json is empty");
+        }
 
-            return new ShaderPack(metadata, shaderSources, zipPath);
+        // Index the shader sources, paths as written in pack.json
+        Set<String> paths = new LinkedHashSet<>();
+        collectShaderPaths(metadata, paths);
+        for (String path : paths) {
+            if (!index.contains(path)) {
+                throw new IOException("Shader file not found: " + path);
+            }
         }
+
+        ZipIndex sources = index.retain(paths);
+        String stamp = stamp(zipPath) + "|" + Long.toHexString(index.retain(List.of("pack.json")).checksum())
+                + "|" + Long.toHexString(sources.checksum());
+        return new ShaderPack(metadata, new PackSources(paths, sources::readString), zipPath, null, stamp);
     }
 
-    private static void loadShaderSources(FileSystem fs, PackMetadata metadata,
-                                          Map<String, String> sources) throws IOException {
-        // Load pipeline shaders
+    /**
+     * A precompiled bundle carries pack.json and the GLSL sources, its SPIR-V is seeded at compile time
+     */
+    private static ShaderPack loadBundle(Path bundlePath) throws IOException {
+        PackBundle bundle = PackBundle.open(bundlePath);
+        PackMetadata metadata = GSON.fromJson(bundle.getPackJson(), PackMetadata.class);
+        if (metadata == null) {
+            throw new IOException("pack.json not found in shader pack bundle");
+        }
+
+        LOGGER.debug("Opened shader pack bundle {}: {} precompiled stage(s), {} bytes",
+                bundlePath.getFileName(), bundle.getEntries().size(), bundle.getSizeBytes());
+        return new ShaderPack(metadata, new PackSources(bundle.getSourcePaths(), bundle::readSource),
+                bundlePath, bundle, stamp(bundlePath));
+    }
+
+    /**
+     * File identity part of a pack's stamp
+     */
+    private static String stamp(Path packPath) throws IOException {
+        return packPath.toAbsolutePath() + "|" + Files.size(packPath) + "|" + Files.getLastModifiedTime(packPath).toMillis();
+    }
+
+    /**
+     * Serialize pack metadata the way it is read, for writing it into a bundle
+     */
+    public static String toJson(PackMetadata metadata) {
+        return GSON.toJson(metadata);
+    }
+
+    private static void collectShaderPaths(PackMetadata metadata, Set<String> paths) {
+        if (metadata == null || metadata.pipelines == null) {
+            return;
+        }
+
+        // Pipeline shaders
         for (var pipeline : metadata.pipelines.values()) {
             if (pipeline.vertex != null) {
-                loadShaderFile(fs, pipeline.vertex, sources);
+                paths.add(pipeline.vertex);
             }
             if (pipeline.fragment != null) {
-                loadShaderFile(fs, pipeline.fragment, sources);
+                paths.add(pipeline.fragment);
             }
             if (pipeline.geometry != null) {
-                loadShaderFile(fs, pipeline.geometry, sources);
+                paths.add(pipeline.geometry);
             }
 
-            // Load includes
+            // Includes
             for (String include : pipeline.includes) {
-                loadShaderFile(fs, include, sources);
+                paths.add(include);
             }
         }
     }
-
-    private static void loadShaderFile(FileSystem fs, String path,
-                                       Map<String, String> sources) throws IOException {
-        if (sources.containsKey(path)) {
-            return; // Already loaded
-        }
-
-        Path shaderPath = fs.getPath(path);
-        if (!Files.exists(shaderPath)) {
-            throw new IOException("Shader file not found: " + path);
-        }
-
-        String content = Files.readString(shaderPath);
-        sources.put(path, content);
-    }
 }
@@ -7,14 +7,18 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Registry for managing loaded shader packs
+ * Thread-safe, packs are registered from the background loader while the game thread may query it
  */
 public class ShaderPackRegistry {
     private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Registry");
-    private static final List<ShaderPack> LOADED_PACKS = new ArrayList<>();
-    private static ShaderPack activePack = null;
+    private static final List<ShaderPack> LOADED_PACKS = new CopyOnWriteArrayList<>();
+    private static volatile ShaderPack activePack = null;
+    private static final List<Consumer<ShaderPack>> ACTIVATION_LISTENERS = new CopyOnWriteArrayList<>();
 
     public static void registerPack(ShaderPack pack) {
         LOADED_PACKS.add(pack);
@@ -31,7 +35,14 @@ public class ShaderPackRegistry {
                 .findFirst();
     }
 
-    public static void setActivePack(ShaderPack pack) {
+    /**
+     * Select the pack in use. Listeners are told about the change, compiling the pack is up to them.
+     */
+    public static synchronized void setActivePack(ShaderPack pack) {
+        if (pack == activePack) {
+            return;
+        }
+
         if (activePack != null) {
             LOGGER.info("Deactivating shader pack: {}", activePack.getName());
         }
@@ -41,6 +52,17 @@ public class ShaderPackRegistry {
         if (pack != null) {
             LOGGER.info("Activated shader pack: {}", pack.getName());
         }
+
+        for (Consumer<ShaderPack> listener : ACTIVATION_LISTENERS) {
+            listener.accept(pack);
+        }
+    }
+
+    /**
+     * Called with the new active pack (null when deactivated) whenever it changes
+     */
+    public static void addActivationListener(Consumer<ShaderPack> listener) {
+        ACTIVATION_LISTENERS.add(listener);
     }
 
     public static ShaderPack getActivePack() {
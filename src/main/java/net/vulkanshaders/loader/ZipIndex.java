@@ -0,0 +1,250 @@
+package net.vulkanshaders.loader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Index of a zip's entries (name -> local header offset, sizes, CRC) read from its central directory
+ *
+ * Entries are read on demand straight from the file, which is only open for the duration of a read, so an
+ * index costs a few numbers per entry and never holds the archive or its contents. Stored and deflated
+ * entries are supported, ZIP64 and encrypted archives are not.
+ */
+public final class ZipIndex {
+    private static final int END_SIGNATURE = 0x06054B50;
+    private static final int CENTRAL_SIGNATURE = 0x02014B50;
+    private static final int LOCAL_SIGNATURE = 0x04034B50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_ENCRYPTED = 1;
+
+    private final Path path;
+    private final Map<String, Entry> entries;
+
+    private ZipIndex(Path path, Map<String, Entry> entries) {
+        this.path = path;
+        this.entries = entries;
+    }
+
+    /**
+     * Read the central directory in a single pass
+     * Names are relative to the archive root, a leading slash is dropped.
+     */
+    public static ZipIndex read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int tailSize = (int) Math.min(size, END_SIZE + MAX_COMMENT);
+            ByteBuffer tail = readFully(channel, size - tailSize, tailSize);
+
+            int end = -1;
+            for (int i = tailSize - END_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_SIGNATURE) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                throw new IOException("Not a zip file (end of central directory not found): " + path.getFileName());
+            }
+
+            int count = Short.toUnsignedInt(tail.getShort(end + 10));
+            long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+            long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+            if (count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+                throw new IOException("ZIP64 shader packs are not supported: " + path.getFileName());
+            }
+            if (directoryOffset + directorySize > size) {
+                throw new IOException("Truncated zip central directory: " + path.getFileName());
+            }
+
+            ByteBuffer directory = readFully(channel, directoryOffset, (int) directorySize);
+            Map<String, Entry> entries = new HashMap<>(count * 2);
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                if (position + CENTRAL_HEADER_SIZE > directory.limit() || directory.getInt(position) != CENTRAL_SIGNATURE) {
+                    throw new IOException("Corrupt zip central directory: " + path.getFileName());
+                }
+
+                int flags = Short.toUnsignedInt(directory.getShort(position + 8));
+                int method = Short.toUnsignedInt(directory.getShort(position + 10));
+                int crc = directory.getInt(position + 16);
+                long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+                long uncompressedSize = Integer.toUnsignedLong(directory.getInt(position + 24));
+                int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+                int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+                int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+                long localOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+
+                if (position + CENTRAL_HEADER_SIZE + nameLength > directory.limit()) {
+                    throw new IOException("Corrupt zip central directory: " + path.getFileName());
+                }
+                byte[] nameBytes = new byte[nameLength];
+                directory.get(position + CENTRAL_HEADER_SIZE, nameBytes);
+                String name = normalize(new String(nameBytes, StandardCharsets.UTF_8));
+
+                boolean readable = (flags & FLAG_ENCRYPTED) == 0
+                        && (method == METHOD_STORED || method == METHOD_DEFLATED)
+                        && compressedSize <= Integer.MAX_VALUE && uncompressedSize <= Integer.MAX_VALUE;
+                if (readable && !name.isEmpty() && !name.endsWith("/")) {
+                    entries.putIfAbsent(name, new Entry(localOffset, (int) compressedSize,
+                            (int) uncompressedSize, crc, method));
+                }
+
+                position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            }
+
+            return new ZipIndex(path, entries);
+        }
+    }
+
+    /**
+     * Zip entry names and pack.json paths, both relative to the pack root
+     */
+    public static String normalize(String name) {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(normalize(name));
+    }
+
+    public Set<String> getNames() {
+        return entries.keySet();
+    }
+
+    /**
+     * Checksum over the names, sizes and CRCs of the indexed entries, changes whenever their content does
+     */
+    public long checksum() {
+        CRC32C checksum = new CRC32C();
+        ByteBuffer numbers = ByteBuffer.allocate(8);
+        for (String name : new TreeSet<>(entries.keySet())) {
+            Entry entry = entries.get(name);
+            checksum.update(name.getBytes(StandardCharsets.UTF_8));
+            checksum.update(numbers.clear().putInt(entry.size()).putInt(entry.crc()).flip());
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Index over just the given entries (the rest of the archive is not needed afterwards)
+     */
+    public ZipIndex retain(Collection<String> names) {
+        Map<String, Entry> retained = new HashMap<>();
+        for (String name : names) {
+            Entry entry = entries.get(normalize(name));
+            if (entry != null) {
+                retained.put(normalize(name), entry);
+            }
+        }
+        return new ZipIndex(path, retained);
+    }
+
+    /**
+     * Read and decompress one entry, checking its CRC
+     *
+     * @return Entry contents, or null if the archive has no such entry
+     */
+    public byte[] read(String name) throws IOException {
+        Entry entry = entries.get(normalize(name));
+        if (entry == null) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, entry.offset(), LOCAL_HEADER_SIZE);
+            if (header.getInt(0) != LOCAL_SIGNATURE) {
+                throw new IOException("Corrupt zip entry " + name + " in " + path.getFileName());
+            }
+            long dataOffset = entry.offset() + LOCAL_HEADER_SIZE
+                    + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+
+            ByteBuffer data = readFully(channel, dataOffset, entry.compressedSize());
+            byte[] contents = entry.method() == METHOD_STORED ? toArray(data) : inflate(data, entry.size(), name);
+
+            CRC32 crc = new CRC32();
+            crc.update(contents);
+            if ((int) crc.getValue() != entry.crc() || contents.length != entry.size()) {
+                throw new IOException("CRC mismatch for zip entry " + name + " in " + path.getFileName());
+            }
+            return contents;
+        }
+    }
+
+    /**
+     * Read an entry as UTF-8 text
+     */
+    public String readString(String name) throws IOException {
+        byte[] contents = read(name);
+        return contents != null ? new String(contents, StandardCharsets.UTF_8) : null;
+    }
+
+    private byte[] inflate(ByteBuffer data, int size, String name) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] contents = new byte[size];
+            int inflated = 0;
+            while (inflated < size) {
+                int n = inflater.inflate(contents, inflated, size - inflated);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != size) {
+                throw new IOException("Truncated zip entry " + name + " in " + path.getFileName());
+            }
+            return contents;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt zip entry " + name + " in " + path.getFileName(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of zip file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+
+    /**
+     * @param offset Offset of the entry's local header
+     */
+    private record Entry(long offset, int compressedSize, int size, int crc, int method) {
+    }
+}
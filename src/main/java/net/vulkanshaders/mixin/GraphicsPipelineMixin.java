@@ -1,18 +1,36 @@
 package net.vulkanshaders.mixin;
 
 import net.vulkanmod.vulkan.shader.GraphicsPipeline;
+import net.vulkanshaders.pipeline.CustomPipeline;
+import net.vulkanshaders.pipeline.OverrideSlot;
 import net.vulkanshaders.pipeline.PipelineManager;
+import net.vulkanshaders.pipeline.PipelineSlot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 @Mixin(value = GraphicsPipeline.class, remap = false)
-public class GraphicsPipelineMixin {
+public class GraphicsPipelineMixin implements PipelineSlot {
     private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Mixin");
-    private static boolean customPipelinesReady = false;
+    private static volatile boolean customPipelinesReady = false;
+
+    // Custom pipeline and override resolved for this pipeline, see PipelineManager.getSlot
+    @Unique
+    private OverrideSlot vulkanshaders$slot;
+
+    @Override
+    public OverrideSlot vulkanshaders$getSlot() {
+        return vulkanshaders$slot;
+    }
+
+    @Override
+    public void vulkanshaders$setSlot(OverrideSlot slot) {
+        vulkanshaders$slot = slot;
+    }
 
     /**
      * Inject at the end of the GraphicsPipeline constructor
@@ -30,17 +48,16 @@ public class GraphicsPipelineMixin {
         GraphicsPipeline thisPipeline = (GraphicsPipeline) (Object) this;
 
         // Check if we have a custom pipeline for this name
-        PipelineManager.getPipeline(pipelineName).ifPresent(customPipeline -> {
-            if (!customPipeline.isInitialized()) {
-                LOGGER.info("Initializing custom pipeline '{}' from VulkanMod template", pipelineName);
-                PipelineManager.initializePipeline(pipelineName, thisPipeline);
-
-                if (customPipeline.isInitialized()) {
-                    LOGGER.info("✓ Custom shader '{}' from {} is now active!",
-                            pipelineName,
-                            customPipeline.getSourcePack().getName());
-                }
+        CustomPipeline customPipeline = PipelineManager.getSlot(this, pipelineName).pipeline();
+        if (customPipeline != null && !customPipeline.isInitialized()) {
+            LOGGER.info("Initializing custom pipeline '{}' from VulkanMod template", pipelineName);
+            PipelineManager.initializePipeline(pipelineName, thisPipeline);
+
+            if (customPipeline.isInitialized()) {
+                LOGGER.info("✓ Custom shader '{}' from {} is now active!",
+                        pipelineName,
+                        customPipeline.getSourcePack().getName());
             }
-        });
+        }
     }
 }
@@ -2,7 +2,10 @@ package net.vulkanshaders.mixin;
 
 import net.vulkanmod.vulkan.shader.GraphicsPipeline;
 import net.vulkanmod.vulkan.shader.SPIRVUtils;
+import net.vulkanshaders.compiler.SPIRVBuffer;
+import net.vulkanshaders.pipeline.CustomPipeline;
 import net.vulkanshaders.pipeline.PipelineManager;
+import net.vulkanshaders.pipeline.PipelineSlot;
 import org.lwjgl.system.MemoryUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,56 +35,50 @@ public class GraphicsPipelineShaderMixin {
         // Get the pipeline name
         String pipelineName = ((PipelineAccessor) this).getName();
 
-        // Check if we have a custom override
-        PipelineManager.getPipeline(pipelineName).ifPresent(customPipeline -> {
+        // Check if we have a custom override (the slot is added by GraphicsPipelineMixin)
+        CustomPipeline customPipeline = PipelineManager.getSlot((PipelineSlot) this, pipelineName).pipeline();
+        if (customPipeline != null) {
             LOGGER.info("🔵 Replacing shaders for pipeline: {}", pipelineName);
 
-            // Use custom shaders instead
-            SPIRVUtils.SPIRV customVert = customPipeline.getVertexShader();
-            SPIRVUtils.SPIRV customFrag = customPipeline.getFragmentShader();
+            // Use custom shaders instead. Compiler output is already aligned, off-heap and owned by
+            // the cache (the pipeline holds a reference), so it is passed to Vulkan as is.
+            ByteBuffer vertBuffer = customPipeline.getVertexShader().bytecode();
+            ByteBuffer fragBuffer = customPipeline.getFragmentShader().bytecode();
 
-            // Get bytecode
-            ByteBuffer vertBuffer = customVert.bytecode();
-            ByteBuffer fragBuffer = customFrag.bytecode();
-
-            // Copy to DIRECT ByteBuffers (required by Vulkan native calls)
-            ByteBuffer directVertBuffer = copyToDirectBuffer(vertBuffer);
-            ByteBuffer directFragBuffer = copyToDirectBuffer(fragBuffer);
+            // SPIR-V handed in through the plain SPIRV constructor may still live on the heap
+            ByteBuffer vertCopy = SPIRVBuffer.isUsable(vertBuffer) ? null : copyToDirectBuffer(vertBuffer);
+            ByteBuffer fragCopy = SPIRVBuffer.isUsable(fragBuffer) ? null : copyToDirectBuffer(fragBuffer);
 
             try {
-                // Create shader modules using direct buffers
                 LOGGER.info("Creating vertex shader module...");
-                this.vertShaderModule = PipelineAccessorMethods.invokeCreateShaderModule(directVertBuffer);
+                this.vertShaderModule = PipelineAccessorMethods.invokeCreateShaderModule(
+                        vertCopy != null ? vertCopy : vertBuffer);
                 LOGGER.info("✓ Vertex shader module created");
 
                 LOGGER.info("Creating fragment shader module...");
-                this.fragShaderModule = PipelineAccessorMethods.invokeCreateShaderModule(directFragBuffer);
+                this.fragShaderModule = PipelineAccessorMethods.invokeCreateShaderModule(
+                        fragCopy != null ? fragCopy : fragBuffer);
                 LOGGER.info("✓ Fragment shader module created");
 
                 LOGGER.info("✓ Custom shaders ACTIVE for: {}", pipelineName);
             } finally {
-                // Free the direct buffers
-                MemoryUtil.memFree(directVertBuffer);
-                MemoryUtil.memFree(directFragBuffer);
+                // memFree ignores null
+                MemoryUtil.memFree(vertCopy);
+                MemoryUtil.memFree(fragCopy);
             }
 
             // Cancel the original method
             ci.cancel();
-        });
+        }
     }
 
     /**
-     * Copy a ByteBuffer to a direct ByteBuffer
+     * Copy the remaining bytes of a buffer to a new direct buffer, leaving the source untouched
      */
     private static ByteBuffer copyToDirectBuffer(ByteBuffer source) {
-        // Create a direct buffer
-        ByteBuffer direct = MemoryUtil.memAlloc(source.capacity());
-
-        // Copy data
-        source.rewind();
-        direct.put(source);
-        direct.rewind();
-
+        ByteBuffer direct = MemoryUtil.memAlloc(source.remaining());
+        direct.put(source.duplicate());
+        direct.flip();
         return direct;
     }
 }
@@ -0,0 +1,12 @@
+package net.vulkanshaders.mixin;
+
+import net.vulkanmod.vulkan.shader.Pipeline;
+import net.vulkanmod.vulkan.shader.layout.PushConstants;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(value = Pipeline.Builder.class, remap = false)
+public interface PipelineBuilderAccessor {
+    @Accessor("pushConstants")
+    void setPushConstants(PushConstants pushConstants);
+}
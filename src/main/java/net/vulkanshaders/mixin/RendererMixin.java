@@ -0,0 +1,20 @@
+package net.vulkanshaders.mixin;
+
+import net.vulkanmod.vulkan.Renderer;
+import net.vulkanshaders.pipeline.FrameScheduler;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(value = Renderer.class, remap = false)
+public class RendererMixin {
+
+    /**
+     * Run pipeline work queued by loader and compile threads, before the frame records anything
+     */
+    @Inject(method = "beginFrame", at = @At("HEAD"))
+    private void onBeginFrame(CallbackInfo ci) {
+        FrameScheduler.onFrameStart(Renderer.getFramesNum());
+    }
+}
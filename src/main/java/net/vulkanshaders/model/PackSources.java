@@ -0,0 +1,158 @@
+package net.vulkanshaders.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pack's shader sources by path, decoded on demand from the pack file
+ *
+ * Only the set of paths is held strongly. Decoded text sits behind soft references, so the GC can take it
+ * under memory pressure, and {@link #release()} drops it once the pack's SPIR-V is cached. A dropped
+ * source is simply read again on its next use. Read-only: behaves like an unmodifiable map.
+ */
+public class PackSources extends AbstractMap<String, String> {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Sources");
+
+    private final Set<String> paths;
+    private final Reader reader;
+    private final Map<String, SoftReference<String>> decoded = new ConcurrentHashMap<>();
+    // Sources that only exist in memory (packs built in code), never released. Null for pack-file backed sources.
+    private final Map<String, String> inMemory;
+
+    /**
+     * Reads one source, returns null if it does not exist
+     */
+    @FunctionalInterface
+    public interface Reader {
+        String read(String path) throws IOException;
+    }
+
+    /**
+     * @param paths  Every path the pack has a source for
+     * @param reader Decodes a source from the pack file
+     */
+    public PackSources(Set<String> paths, Reader reader) {
+        this.paths = Collections.unmodifiableSet(new LinkedHashSet<>(paths));
+        this.reader = reader;
+        this.inMemory = null;
+    }
+
+    private PackSources(Map<String, String> sources) {
+        this.paths = sources.keySet();
+        this.reader = sources::get;
+        this.inMemory = sources;
+    }
+
+    /**
+     * Sources already in memory, kept as they are
+     */
+    public static PackSources of(Map<String, String> sources) {
+        return sources instanceof PackSources packSources ? packSources : new PackSources(sources);
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String path) || !paths.contains(path)) {
+            return null;
+        }
+        if (inMemory != null) {
+            return inMemory.get(path);
+        }
+
+        SoftReference<String> reference = decoded.get(path);
+        String source = reference != null ? reference.get() : null;
+        if (source != null) {
+            return source;
+        }
+
+        try {
+            source = reader.read(path);
+        } catch (IOException e) {
+            LOGGER.error("Failed to read shader source: {}", path, e);
+            return null;
+        }
+        if (source != null) {
+            decoded.put(path, new SoftReference<>(source));
+        }
+        return source;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return paths.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return paths.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return paths;
+    }
+
+    /**
+     * Entries decode their source when iterated over
+     */
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                Iterator<String> keys = paths.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        String path = keys.next();
+                        return new SimpleImmutableEntry<>(path, get(path));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return paths.size();
+            }
+        };
+    }
+
+    /**
+     * Drop all decoded text, sources are read again from the pack file when next needed
+     */
+    public void release() {
+        decoded.clear();
+    }
+
+    /**
+     * Number of sources currently decoded in memory
+     */
+    public int getResidentCount() {
+        if (inMemory != null) {
+            return inMemory.size();
+        }
+        int resident = 0;
+        for (SoftReference<String> reference : decoded.values()) {
+            if (reference.get() != null) {
+                resident++;
+            }
+        }
+        return resident;
+    }
+}
@@ -0,0 +1,226 @@
+package net.vulkanshaders.model;
+
+import java.util.*;
+
+/**
+ * Selected values of a pack's options
+ *
+ * Options are ordered by name and indexed once per pack. Boolean options live in a bitset, the others
+ * are kept as normalized values. {@link #variantKey} encodes only the options a shader depends on, so
+ * changing an unrelated option leaves that shader's key, and its cached variant, untouched.
+ * Immutable, {@link #with} returns a new selection.
+ */
+public final class ShaderOptions {
+    private final Layout layout;
+    private final BitSet flags;
+    private final Object[] values;
+
+    private ShaderOptions(Layout layout, BitSet flags, Object[] values) {
+        this.layout = layout;
+        this.flags = flags;
+        this.values = values;
+    }
+
+    /**
+     * Every option of the pack at its default value
+     */
+    public static ShaderOptions defaults(PackMetadata metadata) {
+        Layout layout = new Layout(metadata.options != null ? metadata.options : Map.of());
+        ShaderOptions options = new ShaderOptions(layout, new BitSet(), new Object[layout.names.length]);
+
+        for (int i = 0; i < layout.names.length; i++) {
+            PackMetadata.OptionConfig config = layout.configs[i];
+            // A numeric option without a usable default starts at its minimum (or 0)
+            boolean usable = !layout.isNumber(i) || parseNumber(config.defaultValue) != null;
+            options.set(i, usable ? config.defaultValue : config.min != null ? config.min : 0.0);
+        }
+        return options;
+    }
+
+    /**
+     * Whether an option's default value fits its type, checked by the pack validator
+     * {@link #defaults} falls back to the minimum (or 0) for a numeric option where it does not.
+     */
+    public static boolean hasValidDefault(PackMetadata.OptionConfig config) {
+        return !isNumber(config) || parseNumber(config.defaultValue) != null;
+    }
+
+    /**
+     * Copy of this selection with one option changed
+     *
+     * @throws IllegalArgumentException If the pack has no such option or the value does not fit its type
+     */
+    public ShaderOptions with(String name, Object value) {
+        Integer index = layout.indices.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown shader option: " + name);
+        }
+
+        ShaderOptions copy = new ShaderOptions(layout, (BitSet) flags.clone(), values.clone());
+        copy.set(index, value);
+        return copy;
+    }
+
+    private void set(int index, Object value) {
+        PackMetadata.OptionConfig config = layout.configs[index];
+
+        if (layout.isBoolean(index)) {
+            flags.set(index, value instanceof Boolean bool ? bool : Boolean.parseBoolean(String.valueOf(value)));
+            return;
+        }
+
+        if (layout.isNumber(index)) {
+            Double parsed = parseNumber(value);
+            if (parsed == null) {
+                throw new IllegalArgumentException("Option " + layout.names[index] + " expects a number: " + value);
+            }
+            double number = parsed;
+
+            if (config.min != null) number = Math.max(config.min, number);
+            if (config.max != null) number = Math.min(config.max, number);
+            if ("int".equals(config.type) || "integer".equals(config.type)) number = Math.rint(number);
+            values[index] = number;
+            return;
+        }
+
+        values[index] = value != null ? value.toString() : null;
+    }
+
+    public Object get(String name) {
+        Integer index = layout.indices.get(name);
+        if (index == null) {
+            return null;
+        }
+        return layout.isBoolean(index) ? flags.get(index) : values[index];
+    }
+
+    /**
+     * Option names, sorted
+     */
+    public List<String> getNames() {
+        return List.of(layout.names);
+    }
+
+    /**
+     * Name -> current value, as booleans, doubles or strings
+     */
+    public Map<String, Object> getValues() {
+        Map<String, Object> result = new HashMap<>();
+        for (String name : layout.names) {
+            result.put(name, get(name));
+        }
+        return result;
+    }
+
+    /**
+     * Options whose value differs between this selection and another one of the same pack
+     */
+    public Set<String> diff(ShaderOptions other) {
+        Set<String> changed = new TreeSet<>();
+        for (String name : layout.names) {
+            if (!Objects.equals(get(name), other.get(name))) {
+                changed.add(name);
+            }
+        }
+        for (String name : other.layout.names) {
+            if (!layout.indices.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Compact key of the values of the given options: enabled booleans as a bitset in option order,
+     * followed by the other values in option order, each length-prefixed so no value can run into the next.
+     * Options outside the set do not affect it.
+     */
+    public String variantKey(Set<String> dependencies) {
+        BitSet bits = new BitSet();
+        StringBuilder key = new StringBuilder();
+        int bit = 0;
+
+        for (int i = 0; i < layout.names.length; i++) {
+            if (!dependencies.contains(layout.names[i])) {
+                continue;
+            }
+            if (layout.isBoolean(i)) {
+                bits.set(bit, flags.get(i));
+                bit++;
+            } else if (values[i] == null) {
+                key.append("/-");
+            } else {
+                String value = values[i].toString();
+                key.append('/').append(value.length()).append(':').append(value);
+            }
+        }
+
+        if (bit == 0 && key.isEmpty()) {
+            return "";
+        }
+        return HexFormat.of().formatHex(bits.toByteArray()) + ":" + bit + key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ShaderOptions other && getValues().equals(other.getValues());
+    }
+
+    @Override
+    public int hashCode() {
+        return getValues().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new TreeMap<>(getValues()).toString();
+    }
+
+    private static Double parseNumber(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isNumber(PackMetadata.OptionConfig config) {
+        return "int".equals(config.type) || "integer".equals(config.type)
+                || "float".equals(config.type) || "number".equals(config.type)
+                || (config.type == null && config.defaultValue instanceof Number);
+    }
+
+    /**
+     * Index assignment shared by every selection of the same pack
+     */
+    private static final class Layout {
+        final String[] names;
+        final PackMetadata.OptionConfig[] configs;
+        final Map<String, Integer> indices = new HashMap<>();
+
+        Layout(Map<String, PackMetadata.OptionConfig> options) {
+            this.names = new TreeSet<>(options.keySet()).toArray(String[]::new);
+            this.configs = new PackMetadata.OptionConfig[names.length];
+            for (int i = 0; i < names.length; i++) {
+                configs[i] = options.get(names[i]);
+                indices.put(names[i], i);
+            }
+        }
+
+        boolean isBoolean(int index) {
+            PackMetadata.OptionConfig config = configs[index];
+            return "boolean".equals(config.type) || "bool".equals(config.type)
+                    || (config.type == null && config.defaultValue instanceof Boolean);
+        }
+
+        boolean isNumber(int index) {
+            return ShaderOptions.isNumber(configs[index]);
+        }
+    }
+}
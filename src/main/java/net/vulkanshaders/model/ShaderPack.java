@@ -1,19 +1,42 @@
 package net.vulkanshaders.model;
 
+import net.vulkanshaders.compiler.IncludeGraph;
+import net.vulkanshaders.compiler.OptionDependencyIndex;
+import net.vulkanshaders.loader.PackBundle;
+import net.vulkanshaders.loader.PackManifest;
+
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.Set;
 
 public class ShaderPack {
 
     private final PackMetadata metadata;
-    private final Map<String, String> shaderSources;
+    private final PackSources shaderSources;
     private final Path packPath;
+    private final PackBundle bundle;
+    private final String stamp;
     private boolean enabled;
+    private volatile IncludeGraph includeGraph;
+    private volatile OptionDependencyIndex optionIndex;
+    private volatile ShaderOptions options;
+    private volatile PackManifest manifest;
 
     public ShaderPack(PackMetadata metadata, Map<String, String> shaderSources, Path packPath) {
+        this(metadata, shaderSources, packPath, null, null);
+    }
+
+    /**
+     * @param bundle Precompiled bundle the pack was loaded from, null for GLSL-only packs
+     * @param stamp  Identifies the pack file's current contents, null if unknown (no manifest is kept then)
+     */
+    public ShaderPack(PackMetadata metadata, Map<String, String> shaderSources, Path packPath,
+                      PackBundle bundle, String stamp) {
         this.metadata = metadata;
-        this.shaderSources = shaderSources;
+        this.shaderSources = PackSources.of(shaderSources);
         this.packPath = packPath;
+        this.bundle = bundle;
+        this.stamp = stamp;
         this.enabled = true;
     }
 
@@ -29,14 +52,146 @@ public class ShaderPack {
         return metadata;
     }
 
+    /**
+     * Source text of one file, decoded from the pack file if it is not in memory
+     */
     public String getShaderSource(String path) {
         return shaderSources.get(path);
     }
 
+    /**
+     * Whether the pack has a source for the path, without decoding it
+     */
+    public boolean hasShaderSource(String path) {
+        return shaderSources.containsKey(path);
+    }
+
+    /**
+     * All sources by path, a read-only view that decodes each source when it is read
+     */
     public Map<String, String> getAllShaderSources() {
         return shaderSources;
     }
 
+    /**
+     * Drop decoded source text and everything built from it, once the pack's SPIR-V is cached
+     * The include graph and option index are rebuilt from the pack file if they are needed again.
+     */
+    public synchronized void releaseSources() {
+        includeGraph = null;
+        optionIndex = null;
+        shaderSources.release();
+    }
+
+    /**
+     * Include graph over all of this pack's sources, built on first use and shared by every program
+     */
+    public IncludeGraph getIncludeGraph() {
+        IncludeGraph graph = includeGraph;
+        if (graph == null) {
+            synchronized (this) {
+                graph = includeGraph;
+                if (graph == null) {
+                    graph = new IncludeGraph(shaderSources);
+                    includeGraph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Options each of this pack's files depends on, built on first use
+     */
+    public OptionDependencyIndex getOptionIndex() {
+        OptionDependencyIndex index = optionIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = optionIndex;
+                if (index == null) {
+                    index = new OptionDependencyIndex(getIncludeGraph(), getOptions().getNames());
+                    optionIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Currently selected option values, the pack's defaults until changed
+     */
+    public ShaderOptions getOptions() {
+        ShaderOptions current = options;
+        if (current == null) {
+            synchronized (this) {
+                current = options;
+                if (current == null) {
+                    current = ShaderOptions.defaults(metadata);
+                    options = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public void setOptions(ShaderOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Identifies a stage's compiled SPIR-V: its sources (over the include closure) and the values of the
+     * options it depends on
+     */
+    public String getVariantKey(String path, ShaderOptions options) {
+        return variantKey(path, getSourceHash(path), options.variantKey(getStageOptions(path)));
+    }
+
+    /**
+     * Fingerprint of a stage's include closure, from the manifest if it covers the stage
+     */
+    public String getSourceHash(String path) {
+        PackManifest.Stage stage = manifest != null ? manifest.getStage(path) : null;
+        return stage != null ? stage.sourceHash() : getIncludeGraph().getFingerprint(path);
+    }
+
+    /**
+     * Options a stage depends on, from the manifest if it covers the stage
+     */
+    public Set<String> getStageOptions(String path) {
+        PackManifest.Stage stage = manifest != null ? manifest.getStage(path) : null;
+        return stage != null ? stage.options() : getOptionIndex().getOptions(path);
+    }
+
+    public static String variantKey(String path, String sourceHash, String optionsKey) {
+        return path + "@" + sourceHash + "#" + optionsKey;
+    }
+
+    /**
+     * Stage fingerprints and option dependencies recorded for the pack file as it is now, or null
+     * While set, variant keys are built without reading any source.
+     */
+    public PackManifest getManifest() {
+        return manifest;
+    }
+
+    public void setManifest(PackManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * Identity of the pack file's contents (path, size, modification time, entry checksums), or null
+     */
+    public String getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Precompiled bundle this pack was loaded from, or null
+     */
+    public PackBundle getBundle() {
+        return bundle;
+    }
+
     public Path getPackPath() {
         return packPath;
     }
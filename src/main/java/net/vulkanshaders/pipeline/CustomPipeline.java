@@ -5,7 +5,12 @@ import com.mojang.blaze3d.vertex.VertexFormat;
 import net.vulkanmod.vulkan.shader.GraphicsPipeline;
 import net.vulkanmod.vulkan.shader.Pipeline;
 import net.vulkanmod.vulkan.shader.SPIRVUtils;
+import net.vulkanshaders.compiler.SPIRVBuffer;
+import net.vulkanshaders.compiler.SPIRVCompiler;
+import net.vulkanshaders.compiler.ShaderCache;
+import net.vulkanshaders.mixin.PipelineBuilderAccessor;
 import net.vulkanshaders.model.ShaderPack;
+import net.vulkanshaders.spirv.ShaderReflection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,20 +22,52 @@ public class CustomPipeline {
     private final SPIRVUtils.SPIRV vertexShader;
     private final SPIRVUtils.SPIRV fragmentShader;
     private final PipelineConfiguration config;
+    private final ShaderReflection vertexReflection;
+    private final ShaderReflection fragmentReflection;
 
-    // Lazily initialized VulkanMod GraphicsPipeline
-    private GraphicsPipeline vulkanPipeline;
-    private boolean initialized = false;
+    // Cache-owned bytecode referenced by this pipeline, released in cleanup()
+    private SPIRVBuffer[] ownedBytecode = new SPIRVBuffer[0];
+
+    // Memory-tier entries pinned for as long as this pipeline is alive
+    private ShaderCache pinnedCache;
+    private String[] pinnedCacheKeys = new String[0];
+
+    // Lazily initialized VulkanMod GraphicsPipeline, read from the render thread
+    private volatile GraphicsPipeline vulkanPipeline;
+    private volatile boolean initialized = false;
 
     public CustomPipeline(String name, ShaderPack sourcePack,
                           SPIRVUtils.SPIRV vertexShader,
                           SPIRVUtils.SPIRV fragmentShader,
                           PipelineConfiguration config) {
+        this(name, sourcePack, vertexShader, fragmentShader, config, null, null);
+    }
+
+    public CustomPipeline(String name, ShaderPack sourcePack,
+                          SPIRVUtils.SPIRV vertexShader,
+                          SPIRVUtils.SPIRV fragmentShader,
+                          PipelineConfiguration config,
+                          ShaderReflection vertexReflection,
+                          ShaderReflection fragmentReflection) {
         this.name = name;
         this.sourcePack = sourcePack;
         this.vertexShader = vertexShader;
         this.fragmentShader = fragmentShader;
         this.config = config;
+        this.vertexReflection = vertexReflection;
+        this.fragmentReflection = fragmentReflection;
+    }
+
+    /**
+     * Build from compiler output, taking over the references both results hold on their bytecode
+     */
+    public CustomPipeline(String name, ShaderPack sourcePack,
+                          SPIRVCompiler.CompiledShader vertex,
+                          SPIRVCompiler.CompiledShader fragment,
+                          PipelineConfiguration config) {
+        this(name, sourcePack, vertex.spirv(), fragment.spirv(), config,
+                vertex.reflection(), fragment.reflection());
+        this.ownedBytecode = new SPIRVBuffer[]{vertex.bytecode(), fragment.bytecode()};
     }
 
     /**
@@ -56,12 +93,22 @@ public class CustomPipeline {
             // Set the compiled SPIR-V shaders
             builder.setSPIRVs(vertexShader, fragmentShader);
 
-            // Copy UBOs and descriptors from template pipeline
-            // The builder will auto-discover from SPIR-V
-            builder.setUniforms(
-                    java.util.Collections.emptyList(),
-                    java.util.Collections.emptyList()
-            );
+            // Descriptor layouts come from the cached SPIR-V reflection
+            if (vertexReflection != null && fragmentReflection != null) {
+                ReflectedLayout layout = new ReflectedLayout(vertexReflection, fragmentReflection);
+                builder.setUniforms(layout.getUniformBuffers(), layout.getImageDescriptors());
+                if (layout.getPushConstants() != null) {
+                    ((PipelineBuilderAccessor) builder).setPushConstants(layout.getPushConstants());
+                }
+                LOGGER.debug("Pipeline {}: {} UBOs, {} images, push constants: {} from reflection", name,
+                        layout.getUniformBuffers().size(), layout.getImageDescriptors().size(),
+                        layout.getPushConstants() != null);
+            } else {
+                builder.setUniforms(
+                        java.util.Collections.emptyList(),
+                        java.util.Collections.emptyList()
+                );
+            }
 
             // Create the graphics pipeline
             this.vulkanPipeline = builder.createGraphicsPipeline();
@@ -86,6 +133,13 @@ public class CustomPipeline {
         return vulkanPipeline;
     }
 
+    /**
+     * @return The Vulkan pipeline, or null while it is not initialized (one read, no check-then-act)
+     */
+    public GraphicsPipeline getVulkanPipelineIfReady() {
+        return vulkanPipeline;
+    }
+
     public String getName() {
         return name;
     }
@@ -106,14 +160,61 @@ public class CustomPipeline {
         return fragmentShader;
     }
 
+    public ShaderReflection getVertexReflection() {
+        return vertexReflection;
+    }
+
+    public ShaderReflection getFragmentReflection() {
+        return fragmentReflection;
+    }
+
+    /**
+     * Pin this pipeline's SPIR-V blobs in the cache's memory tier until {@link #cleanup()}
+     */
+    public void retainCacheEntries(ShaderCache cache, String... cacheKeys) {
+        releaseCacheEntries();
+
+        for (String key : cacheKeys) {
+            cache.pin(key);
+        }
+        this.pinnedCache = cache;
+        this.pinnedCacheKeys = cacheKeys;
+    }
+
+    private void releaseCacheEntries() {
+        if (pinnedCache != null) {
+            for (String key : pinnedCacheKeys) {
+                pinnedCache.unpin(key);
+            }
+            pinnedCache = null;
+            pinnedCacheKeys = new String[0];
+        }
+    }
+
+    private void releaseBytecode() {
+        for (SPIRVBuffer buffer : ownedBytecode) {
+            buffer.release();
+        }
+        ownedBytecode = new SPIRVBuffer[0];
+    }
+
     /**
      * Cleanup Vulkan resources
+     * Render thread only, once no frame in flight uses the pipeline (see {@link FrameScheduler#retire}).
      */
     public void cleanup() {
-        if (vulkanPipeline != null) {
-            vulkanPipeline.cleanUp();
+        releaseCacheEntries();
+
+        GraphicsPipeline pipeline = vulkanPipeline;
+        if (pipeline != null) {
+            // Unpublish before destroying, readers see either the live pipeline or null
             initialized = false;
+            vulkanPipeline = null;
+            pipeline.cleanUp();
             LOGGER.debug("Cleaned up pipeline: {}", name);
         }
+
+        // Shader modules are gone, the bytecode may be freed now
+        releaseBytecode();
     }
 }
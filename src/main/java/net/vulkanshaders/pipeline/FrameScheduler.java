@@ -0,0 +1,83 @@
+package net.vulkanshaders.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hands pipeline work from loader and compile threads to the render thread
+ *
+ * Vulkan pipelines are only created and destroyed on the render thread. Queued tasks run at the start of
+ * the next frame. Retired pipelines are destroyed once every frame that could have recorded them has
+ * finished on the GPU: a pipeline retired during frame N may be used by that frame, whose fence is only
+ * waited on when its slot comes around again, so it is destroyed at the start of frame N + framesInFlight + 1.
+ */
+public final class FrameScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/FrameScheduler");
+
+    private static final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private static final Queue<Retired> retiring = new ConcurrentLinkedQueue<>();
+    // Render thread only, in frame order
+    private static final Queue<Retired> retired = new ArrayDeque<>();
+
+    // Number of frames started, written by the render thread only
+    private static volatile long frame;
+
+    private record Retired(CustomPipeline pipeline, long frame) {
+    }
+
+    private FrameScheduler() {
+    }
+
+    /**
+     * Run a task on the render thread at the start of the next frame, in submission order
+     */
+    public static void runOnRenderThread(Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * Destroy a pipeline once no frame in flight can still use it. It must not be reachable from the
+     * published pipelines anymore.
+     */
+    public static void retire(CustomPipeline pipeline) {
+        retiring.add(new Retired(pipeline, frame));
+    }
+
+    /**
+     * Called by the render thread at the start of every frame, before anything is recorded
+     *
+     * @param framesInFlight Frames the CPU may record ahead of the GPU
+     */
+    public static void onFrameStart(int framesInFlight) {
+        long current = ++frame;
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("✗ Render thread task failed", e);
+            }
+        }
+
+        Retired next;
+        while ((next = retiring.poll()) != null) {
+            retired.add(next);
+        }
+        while ((next = retired.peek()) != null && current - next.frame() > framesInFlight) {
+            retired.poll();
+            next.pipeline().cleanup();
+        }
+    }
+
+    /**
+     * Pipelines waiting to be destroyed, for stats
+     */
+    public static int getRetiredCount() {
+        return retired.size() + retiring.size();
+    }
+}
@@ -0,0 +1,11 @@
+package net.vulkanshaders.pipeline;
+
+/**
+ * What a VulkanMod pipeline resolves to, cached on the pipeline itself (see {@link PipelineSlot})
+ *
+ * @param generation Generation of the pipeline snapshot the slot was resolved against
+ * @param pipeline   Custom pipeline with the same name, or null
+ * @param override   Custom pipeline overriding it, or null (also while overrides are disabled)
+ */
+public record OverrideSlot(int generation, CustomPipeline pipeline, CustomPipeline override) {
+}
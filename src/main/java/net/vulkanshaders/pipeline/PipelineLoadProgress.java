@@ -0,0 +1,108 @@
+package net.vulkanshaders.pipeline;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queryable progress of the background shader pack load.
+ * Custom pipelines are only published once their pack is fully compiled, until then VulkanMod's own pipelines are used.
+ */
+public class PipelineLoadProgress {
+    public enum State {
+        IDLE, SCANNING, COMPILING, READY, FAILED
+    }
+
+    private volatile State state = State.IDLE;
+    private volatile int totalPacks;
+    private final AtomicInteger readyPacks = new AtomicInteger();
+    private final AtomicInteger totalJobs = new AtomicInteger();
+    private final AtomicInteger completedJobs = new AtomicInteger();
+    private final AtomicInteger failedJobs = new AtomicInteger();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isDone() {
+        return state == State.READY || state == State.FAILED;
+    }
+
+    public int getTotalPacks() {
+        return totalPacks;
+    }
+
+    public int getReadyPacks() {
+        return readyPacks.get();
+    }
+
+    public int getTotalJobs() {
+        return totalJobs.get();
+    }
+
+    public int getCompletedJobs() {
+        return completedJobs.get();
+    }
+
+    public int getFailedJobs() {
+        return failedJobs.get();
+    }
+
+    /**
+     * Fraction of submitted compile jobs that have finished, 1.0 once loading is done
+     */
+    public float getFraction() {
+        if (isDone()) {
+            return 1.0f;
+        }
+        int total = totalJobs.get();
+        return total == 0 ? 0.0f : (float) completedJobs.get() / total;
+    }
+
+    /**
+     * Completes when loading has finished (successfully or not)
+     */
+    public CompletableFuture<Void> whenDone() {
+        return done.copy();
+    }
+
+    public void startScanning() {
+        state = State.SCANNING;
+    }
+
+    public void startCompiling(int packs) {
+        totalPacks = packs;
+        state = State.COMPILING;
+    }
+
+    public void jobSubmitted() {
+        totalJobs.incrementAndGet();
+    }
+
+    public void jobFinished(boolean failed) {
+        completedJobs.incrementAndGet();
+        if (failed) {
+            failedJobs.incrementAndGet();
+        }
+    }
+
+    public void packReady() {
+        readyPacks.incrementAndGet();
+    }
+
+    public void complete() {
+        state = State.READY;
+        done.complete(null);
+    }
+
+    public void fail() {
+        state = State.FAILED;
+        done.complete(null);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d shaders (%d failed), %d/%d packs ready",
+                state, completedJobs.get(), totalJobs.get(), failedJobs.get(), readyPacks.get(), totalPacks);
+    }
+}
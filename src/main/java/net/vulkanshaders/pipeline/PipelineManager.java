@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages custom shader pipelines and their overrides
@@ -14,29 +15,154 @@ import java.util.Optional;
 public class PipelineManager {
     private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Pipeline");
 
-    // Map of pipeline name -> CustomPipeline
-    private static final Map<String, CustomPipeline> CUSTOM_PIPELINES = new HashMap<>();
+    // Pipelines, overrides and the enabled flag as one immutable snapshot, replaced as a whole on every
+    // change, so the render thread reads a consistent state without locking while packs load in the background
+    private static volatile Snapshot snapshot = new Snapshot(0, Map.of(), Map.of(), false);
 
-    // Map of VulkanMod pipeline name -> CustomPipeline (for overrides)
-    private static final Map<String, CustomPipeline> PIPELINE_OVERRIDES = new HashMap<>();
+    // Map of pipeline name -> VulkanMod pipeline it was initialized from, reused for rebuilt pipelines
+    private static final Map<String, GraphicsPipeline> templates = new ConcurrentHashMap<>();
 
-    private static boolean overridesEnabled = false;
-    private static boolean pipelinesInitialized = false;
+    private static volatile boolean pipelinesInitialized = false;
+
+    /**
+     * @param pipelines Pipeline name -> CustomPipeline
+     * @param overrides VulkanMod pipeline name -> CustomPipeline overriding it
+     */
+    private record Snapshot(int generation,
+                            Map<String, CustomPipeline> pipelines,
+                            Map<String, CustomPipeline> overrides,
+                            boolean overridesEnabled) {
+
+        Snapshot with(Map<String, CustomPipeline> pipelines, Map<String, CustomPipeline> overrides, boolean overridesEnabled) {
+            return new Snapshot(generation + 1, Map.copyOf(pipelines), Map.copyOf(overrides), overridesEnabled);
+        }
+
+        OverrideSlot resolve(String name) {
+            return new OverrideSlot(generation, pipelines.get(name), overridesEnabled ? overrides.get(name) : null);
+        }
+    }
 
     /**
      * Register a custom pipeline
      */
     public static void registerPipeline(String name, CustomPipeline pipeline) {
-        CUSTOM_PIPELINES.put(name, pipeline);
-        LOGGER.debug("Registered custom pipeline: {}", name);
+        registerPipelines(Map.of(name, pipeline));
+    }
+
+    /**
+     * Register a set of pipelines at once, readers see either none or all of them
+     */
+    public static synchronized void registerPipelines(Map<String, CustomPipeline> pipelines) {
+        Snapshot current = snapshot;
+        Map<String, CustomPipeline> updated = new HashMap<>(current.pipelines());
+        updated.putAll(pipelines);
+        snapshot = current.with(updated, current.overrides(), current.overridesEnabled());
+        pipelines.keySet().forEach(name -> LOGGER.debug("Registered custom pipeline: {}", name));
+    }
+
+    /**
+     * Swap in rebuilt versions of already registered pipelines (e.g. after an option change)
+     * Runs on the render thread at the start of the next frame: pipelines whose template is known are
+     * initialized, overrides follow the new instances, and the replaced pipelines are destroyed once the
+     * frames in flight that may use them have finished.
+     */
+    public static void replacePipelines(Map<String, CustomPipeline> pipelines) {
+        FrameScheduler.runOnRenderThread(() -> swapPipelines(pipelines));
+    }
+
+    private static void swapPipelines(Map<String, CustomPipeline> pipelines) {
+        initializeFromTemplates(pipelines);
+
+        Map<String, CustomPipeline> replaced = new HashMap<>();
+        synchronized (PipelineManager.class) {
+            Snapshot current = snapshot;
+            Map<String, CustomPipeline> updated = new HashMap<>(current.pipelines());
+            for (var entry : pipelines.entrySet()) {
+                CustomPipeline previous = updated.put(entry.getKey(), entry.getValue());
+                if (previous != null && previous != entry.getValue()) {
+                    replaced.put(entry.getKey(), previous);
+                }
+            }
+
+            Map<String, CustomPipeline> overrides = new HashMap<>(current.overrides());
+            overrides.replaceAll((vulkanModName, pipeline) -> {
+                CustomPipeline rebuilt = pipelines.get(pipeline.getName());
+                return rebuilt != null && replaced.get(pipeline.getName()) == pipeline ? rebuilt : pipeline;
+            });
+
+            snapshot = current.with(updated, overrides, current.overridesEnabled());
+        }
+
+        replaced.values().forEach(FrameScheduler::retire);
+        LOGGER.info("Replaced {} custom pipeline(s)", pipelines.size());
+    }
+
+    /**
+     * Initialize new pipelines from the templates of same-named ones, render thread only
+     */
+    private static void initializeFromTemplates(Map<String, CustomPipeline> pipelines) {
+        for (var entry : pipelines.entrySet()) {
+            GraphicsPipeline template = templates.get(entry.getKey());
+            if (template != null && !entry.getValue().isInitialized()) {
+                try {
+                    entry.getValue().initializeFrom(template);
+                } catch (Exception e) {
+                    LOGGER.error("✗ Failed to initialize pipeline: {}", entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Publish a whole set of pipelines with its overrides (initial load, pack switch)
+     * Runs on the render thread at the start of the next frame. One snapshot write: readers see the previous
+     * state or the new pipelines together with their overrides and the enabled flag, never a mix. New pipelines
+     * are initialized from the templates of same-named ones first, and every pipeline not kept is destroyed
+     * once the frames in flight that may use it have finished.
+     *
+     * @param overrides VulkanMod pipeline name -> name of the custom pipeline overriding it, skipped if
+     *                  the new set has no such pipeline
+     */
+    public static void publish(Map<String, CustomPipeline> pipelines, Map<String, String> overrides,
+                               boolean overridesEnabled) {
+        Map<String, CustomPipeline> resolved = new HashMap<>();
+        overrides.forEach((vulkanModName, customName) -> {
+            CustomPipeline pipeline = pipelines.get(customName);
+            if (pipeline != null) {
+                resolved.put(vulkanModName, pipeline);
+            } else {
+                LOGGER.warn("Cannot override {}: custom pipeline {} not found", vulkanModName, customName);
+            }
+        });
+
+        FrameScheduler.runOnRenderThread(() -> swapAll(pipelines, resolved, overridesEnabled));
+    }
+
+    private static void swapAll(Map<String, CustomPipeline> pipelines, Map<String, CustomPipeline> overrides,
+                                boolean overridesEnabled) {
+        initializeFromTemplates(pipelines);
+
+        Map<String, CustomPipeline> previous;
+        synchronized (PipelineManager.class) {
+            Snapshot current = snapshot;
+            previous = current.pipelines();
+            snapshot = current.with(pipelines, overrides, overridesEnabled);
+        }
+
+        previous.values().stream()
+                .filter(pipeline -> !pipelines.containsValue(pipeline))
+                .forEach(FrameScheduler::retire);
+        LOGGER.info("Published {} custom pipeline(s), {} override(s) {}", pipelines.size(), overrides.size(),
+                overridesEnabled ? "enabled" : "disabled");
     }
 
     /**
      * Initialize a specific pipeline using a VulkanMod pipeline as template
      */
     public static void initializePipeline(String name, GraphicsPipeline template) {
-        CustomPipeline pipeline = CUSTOM_PIPELINES.get(name);
+        CustomPipeline pipeline = snapshot.pipelines().get(name);
         if (pipeline != null && !pipeline.isInitialized()) {
+            templates.put(name, template);
             try {
                 pipeline.initializeFrom(template);
                 LOGGER.info("✓ Initialized custom pipeline: {}", name);
@@ -49,52 +175,67 @@ public class PipelineManager {
     /**
      * Set a custom pipeline to override a VulkanMod pipeline
      */
-    public static void setOverride(String vulkanModPipelineName, String customPipelineName) {
-        CustomPipeline pipeline = CUSTOM_PIPELINES.get(customPipelineName);
+    public static synchronized void setOverride(String vulkanModPipelineName, String customPipelineName) {
+        Snapshot current = snapshot;
+        CustomPipeline pipeline = current.pipelines().get(customPipelineName);
         if (pipeline == null) {
             LOGGER.warn("Cannot override {}: custom pipeline {} not found",
                     vulkanModPipelineName, customPipelineName);
             return;
         }
 
-        PIPELINE_OVERRIDES.put(vulkanModPipelineName, pipeline);
+        Map<String, CustomPipeline> updated = new HashMap<>(current.overrides());
+        updated.put(vulkanModPipelineName, pipeline);
+        snapshot = current.with(current.pipelines(), updated, current.overridesEnabled());
         LOGGER.info("Set override: {} -> {}", vulkanModPipelineName, customPipelineName);
     }
 
     /**
-     * Get the override pipeline for a VulkanMod pipeline
-     * Returns the custom pipeline ONLY if it's initialized
+     * The resolved slot of a VulkanMod pipeline, for the pipeline creation and bind path
+     * Resolved by name and cached on the pipeline after the registered pipelines changed, otherwise a
+     * field read: no hashing, locking or allocation.
+     *
+     * @param name The pipeline's name, only used to resolve the slot
      */
-    public static Optional<GraphicsPipeline> getOverridePipeline(String vulkanModPipelineName) {
-        if (!overridesEnabled) {
-            return Optional.empty();
-        }
-
-        CustomPipeline customPipeline = PIPELINE_OVERRIDES.get(vulkanModPipelineName);
-        if (customPipeline != null && customPipeline.isInitialized()) {
-            return Optional.of(customPipeline.getVulkanPipeline());
+    public static OverrideSlot getSlot(PipelineSlot pipeline, String name) {
+        Snapshot current = snapshot;
+        OverrideSlot slot = pipeline.vulkanshaders$getSlot();
+        if (slot == null || slot.generation() != current.generation()) {
+            slot = current.resolve(name);
+            pipeline.vulkanshaders$setSlot(slot);
         }
+        return slot;
+    }
 
-        return Optional.empty();
+    /**
+     * Get the override pipeline for a VulkanMod pipeline through its slot
+     * Returns the custom pipeline ONLY if it's initialized
+     *
+     * @return Override pipeline, or null if there is none (yet)
+     */
+    public static GraphicsPipeline getOverridePipeline(PipelineSlot pipeline, String name) {
+        CustomPipeline override = getSlot(pipeline, name).override();
+        return override != null ? override.getVulkanPipelineIfReady() : null;
     }
 
     /**
      * Get a custom pipeline by name
      */
     public static Optional<CustomPipeline> getPipeline(String name) {
-        return Optional.ofNullable(CUSTOM_PIPELINES.get(name));
+        return Optional.ofNullable(snapshot.pipelines().get(name));
     }
 
     /**
      * Enable or disable pipeline overrides
      */
-    public static void setOverridesEnabled(boolean enabled) {
-        overridesEnabled = enabled;
+    public static synchronized void setOverridesEnabled(boolean enabled) {
+        Snapshot current = snapshot;
+        snapshot = current.with(current.pipelines(), current.overrides(), enabled);
         LOGGER.info("Pipeline overrides: {}", enabled ? "enabled" : "disabled");
     }
 
     public static boolean areOverridesEnabled() {
-        return overridesEnabled;
+        return snapshot.overridesEnabled();
     }
 
     public static boolean arePipelinesInitialized() {
@@ -105,24 +246,26 @@ public class PipelineManager {
      * Get statistics
      */
     public static String getStats() {
-        long initializedCount = CUSTOM_PIPELINES.values().stream()
+        Snapshot current = snapshot;
+        Map<String, CustomPipeline> pipelines = current.pipelines();
+        long initializedCount = pipelines.values().stream()
                 .filter(CustomPipeline::isInitialized)
                 .count();
 
         return String.format("Registered %d custom pipelines (%d initialized, %d overrides)",
-                CUSTOM_PIPELINES.size(),
+                pipelines.size(),
                 initializedCount,
-                PIPELINE_OVERRIDES.size());
+                current.overrides().size());
     }
 
     /**
-     * Clear all pipelines (for reload)
+     * Clear all pipelines (for reload), they are destroyed once no frame in flight uses them
      */
-    public static void clear() {
-        CUSTOM_PIPELINES.values().forEach(CustomPipeline::cleanup);
-        CUSTOM_PIPELINES.clear();
-        PIPELINE_OVERRIDES.clear();
-        overridesEnabled = false;
+    public static synchronized void clear() {
+        Map<String, CustomPipeline> pipelines = snapshot.pipelines();
+        snapshot = snapshot.with(Map.of(), Map.of(), false);
+        templates.clear();
+        pipelines.values().forEach(FrameScheduler::retire);
         pipelinesInitialized = false;
     }
 }
@@ -4,29 +4,34 @@ import net.vulkanshaders.VulkanShadersInit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class PipelineRegistry {
     private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/Pipeline");
 
-    private static final Map<String, CustomPipeline> registeredPipelines = new ConcurrentHashMap<>();
-    private static final Map<String, PipelineOverride> overrides = new ConcurrentHashMap<>();
+    // Immutable snapshots replaced on write, lookups are a plain read of the current map
+    private static volatile Map<String, CustomPipeline> registeredPipelines = Map.of();
+    private static volatile Map<String, PipelineOverride> overrides = Map.of();
 
     /**
      * Register a custom pipeline from a shader pack
      */
-    public static void registerCustomPipeline(String name, CustomPipeline pipeline) {
-        registeredPipelines.put(name, pipeline);
+    public static synchronized void registerCustomPipeline(String name, CustomPipeline pipeline) {
+        Map<String, CustomPipeline> updated = new HashMap<>(registeredPipelines);
+        updated.put(name, pipeline);
+        registeredPipelines = Map.copyOf(updated);
         LOGGER.info("Registered custom pipeline: {}", name);
     }
 
     /**
      * Register an override for a vanilla VulkanMod pipeline
      */
-    public static void registerOverride(String vanillaPipelineName, PipelineOverride override) {
-        overrides.put(vanillaPipelineName, override);
+    public static synchronized void registerOverride(String vanillaPipelineName, PipelineOverride override) {
+        Map<String, PipelineOverride> updated = new HashMap<>(overrides);
+        updated.put(vanillaPipelineName, override);
+        overrides = Map.copyOf(updated);
         LOGGER.info("Registered override for vanilla pipeline: {}", vanillaPipelineName);
     }
 
@@ -37,20 +42,14 @@ public class PipelineRegistry {
         return Optional.ofNullable(registeredPipelines.get(name));
     }
 
-    /**
-     * Get an override for a vanilla pipeline
-     */
-    public static Optional<PipelineOverride> getOverride(String vanillaPipelineName) {
-        return Optional.ofNullable(overrides.get(vanillaPipelineName));
-    }
-
     /**
      * Clear all registered pipelines (for hot reload)
      */
-    public static void clear() {
-        registeredPipelines.values().forEach(CustomPipeline::cleanup);
-        registeredPipelines.clear();
-        overrides.clear();
+    public static synchronized void clear() {
+        Map<String, CustomPipeline> pipelines = registeredPipelines;
+        registeredPipelines = Map.of();
+        overrides = Map.of();
+        pipelines.values().forEach(CustomPipeline::cleanup);
         LOGGER.info("Cleared all registered pipelines");
     }
 
@@ -0,0 +1,16 @@
+package net.vulkanshaders.pipeline;
+
+/**
+ * Implemented by VulkanMod's GraphicsPipeline through a mixin, holds the pipeline's resolved {@link OverrideSlot}
+ *
+ * The slot is resolved by name once per change of the registered pipelines, every other lookup is a field
+ * read (see {@link PipelineManager#getSlot}).
+ */
+public interface PipelineSlot {
+    /**
+     * @return Last resolved slot, or null if never resolved
+     */
+    OverrideSlot vulkanshaders$getSlot();
+
+    void vulkanshaders$setSlot(OverrideSlot slot);
+}
@@ -0,0 +1,198 @@
+package net.vulkanshaders.pipeline;
+
+import net.vulkanmod.vulkan.shader.descriptor.ImageDescriptor;
+import net.vulkanmod.vulkan.shader.descriptor.UBO;
+import net.vulkanmod.vulkan.shader.layout.AlignedStruct;
+import net.vulkanmod.vulkan.shader.layout.PushConstants;
+import net.vulkanmod.vulkan.shader.layout.Uniform;
+import net.vulkanshaders.spirv.ShaderReflection;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds VulkanMod descriptor layouts (UBOs, image descriptors and push constants) from the SPIR-V reflection
+ * of a vertex/fragment pair. Bindings used by both stages are merged into one descriptor visible to both.
+ *
+ * VulkanMod's {@link AlignedStruct} computes member offsets itself, so every block is checked against the
+ * offsets the compiler actually used. Layouts it cannot reproduce (explicit offsets, std430, other descriptor
+ * sets) are rejected with an {@link IllegalArgumentException} rather than uploading misplaced uniforms.
+ */
+public class ReflectedLayout {
+    private static final int STAGE_VERTEX = 0x01;   // VK_SHADER_STAGE_VERTEX_BIT
+    private static final int STAGE_FRAGMENT = 0x10; // VK_SHADER_STAGE_FRAGMENT_BIT
+
+    private final List<UBO> uniformBuffers = new ArrayList<>();
+    private final List<ImageDescriptor> imageDescriptors = new ArrayList<>();
+    private final PushConstants pushConstants;
+
+    public ReflectedLayout(ShaderReflection vertex, ShaderReflection fragment) {
+        Map<Slot, ShaderReflection.Descriptor> buffers = new TreeMap<>();
+        Map<Slot, Integer> bufferStages = new TreeMap<>();
+        Map<Slot, ShaderReflection.Descriptor> images = new TreeMap<>();
+
+        collect(vertex, STAGE_VERTEX, buffers, bufferStages, images);
+        collect(fragment, STAGE_FRAGMENT, buffers, bufferStages, images);
+
+        buffers.forEach((slot, descriptor) ->
+                uniformBuffers.add(buildUBO(descriptor, bufferStages.get(slot))));
+
+        int imageIdx = 0;
+        for (ShaderReflection.Descriptor image : images.values()) {
+            imageDescriptors.add(new ImageDescriptor(image.binding(), image.typeName(), image.name(),
+                    samplerIndex(image.name(), imageIdx)));
+            imageIdx++;
+        }
+
+        this.pushConstants = buildPushConstants(
+                vertex != null ? vertex.pushConstants() : null,
+                fragment != null ? fragment.pushConstants() : null);
+    }
+
+    public List<UBO> getUniformBuffers() {
+        return uniformBuffers;
+    }
+
+    public List<ImageDescriptor> getImageDescriptors() {
+        return imageDescriptors;
+    }
+
+    /**
+     * @return Push constant layout, or null if neither stage declares a push constant block
+     */
+    public PushConstants getPushConstants() {
+        return pushConstants;
+    }
+
+    private static void collect(ShaderReflection reflection, int stage,
+                                Map<Slot, ShaderReflection.Descriptor> buffers,
+                                Map<Slot, Integer> bufferStages,
+                                Map<Slot, ShaderReflection.Descriptor> images) {
+        if (reflection == null) {
+            return;
+        }
+
+        for (ShaderReflection.Descriptor descriptor : reflection.getUniformBuffers()) {
+            Slot slot = Slot.of(descriptor);
+            ShaderReflection.Descriptor existing = buffers.putIfAbsent(slot, descriptor);
+            if (existing != null && !existing.block().equals(descriptor.block())) {
+                throw new IllegalArgumentException("Stages disagree on the layout of uniform block "
+                        + descriptor.typeName() + " at " + slot);
+            }
+            bufferStages.merge(slot, stage, (a, b) -> a | b);
+        }
+
+        for (ShaderReflection.Descriptor descriptor : reflection.getImages()) {
+            images.putIfAbsent(Slot.of(descriptor), descriptor);
+        }
+    }
+
+    private static UBO buildUBO(ShaderReflection.Descriptor descriptor, int stages) {
+        UBO ubo = builderFor(descriptor.block()).buildUBO(descriptor.binding(), stages);
+        checkOffsets(descriptor.block(), ubo);
+        return ubo;
+    }
+
+    private static PushConstants buildPushConstants(ShaderReflection.Block vertex, ShaderReflection.Block fragment) {
+        if (vertex != null && fragment != null && !vertex.equals(fragment)) {
+            throw new IllegalArgumentException("Stages disagree on the push constant block layout");
+        }
+
+        ShaderReflection.Block block = vertex != null ? vertex : fragment;
+        if (block == null || block.members().isEmpty()) {
+            return null;
+        }
+
+        PushConstants pushConstants = builderFor(block).buildPushConstant();
+        checkOffsets(block, pushConstants);
+        return pushConstants;
+    }
+
+    private static AlignedStruct.Builder builderFor(ShaderReflection.Block block) {
+        AlignedStruct.Builder builder = new AlignedStruct.Builder();
+
+        for (ShaderReflection.Member member : block.members()) {
+            // VulkanMod lays out uniforms in 4-byte units with std140 alignment
+            int size = Math.max(1, member.size() / 4);
+            builder.addUniformInfo(new Uniform.Info(baseType(member.typeName()), member.name(),
+                    alignment(member.typeName()), size));
+        }
+        return builder;
+    }
+
+    /**
+     * The alignment guess has to land every member where the compiler put it
+     */
+    private static void checkOffsets(ShaderReflection.Block block, AlignedStruct struct) {
+        List<ShaderReflection.Member> members = block.members();
+        List<Uniform> uniforms = struct.getUniforms();
+
+        for (int i = 0; i < members.size(); i++) {
+            ShaderReflection.Member member = members.get(i);
+            long placed = uniforms.get(i).getOffset();
+            if (placed != member.offset()) {
+                throw new IllegalArgumentException(String.format(
+                        "Member %s of block %s is at offset %d, VulkanMod would place it at %d",
+                        member.name(), block.name(), member.offset(), placed));
+            }
+        }
+    }
+
+    private static String baseType(String typeName) {
+        int array = typeName.indexOf('[');
+        return array >= 0 ? typeName.substring(0, array) : typeName;
+    }
+
+    private static int alignment(String typeName) {
+        if (typeName.contains("[") || typeName.startsWith("mat")) {
+            return 4;
+        }
+        return switch (typeName) {
+            case "float", "int", "uint", "bool" -> 1;
+            case "vec2", "ivec2", "uvec2", "bvec2" -> 2;
+            default -> 4;
+        };
+    }
+
+    /**
+     * VulkanMod binds textures by Minecraft sampler slot, SamplerN maps to slot N
+     */
+    private static int samplerIndex(String name, int fallback) {
+        if (name.startsWith("Sampler")) {
+            try {
+                return Integer.parseInt(name.substring("Sampler".length()));
+            } catch (NumberFormatException ignored) {
+                // Not a numbered Minecraft sampler
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Descriptor position. VulkanMod pipelines have a single descriptor set, so anything outside set 0 is rejected.
+     */
+    private record Slot(int set, int binding) implements Comparable<Slot> {
+        private static final Comparator<Slot> ORDER = Comparator.comparingInt(Slot::set).thenComparingInt(Slot::binding);
+
+        static Slot of(ShaderReflection.Descriptor descriptor) {
+            if (descriptor.set() != 0) {
+                throw new IllegalArgumentException("Descriptor " + descriptor.name() + " uses set " + descriptor.set()
+                        + ", VulkanMod pipelines only have set 0");
+            }
+            return new Slot(descriptor.set(), descriptor.binding());
+        }
+
+        @Override
+        public int compareTo(Slot other) {
+            return ORDER.compare(this, other);
+        }
+
+        @Override
+        public String toString() {
+            return "set " + set + " binding " + binding;
+        }
+    }
+}
@@ -3,6 +3,9 @@ package net.vulkanshaders.pipeline;
 import net.vulkanmod.vulkan.shader.SPIRVUtils;
 import net.vulkanshaders.VulkanShadersInit;
 import net.vulkanshaders.compiler.GLSLPreprocessor;
+import net.vulkanshaders.compiler.MacroPreprocessor;
+import net.vulkanshaders.compiler.SPIRVCompiler;
+import net.vulkanshaders.compiler.ShaderCompileExecutor;
 import net.vulkanshaders.model.ShaderPack;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,9 +15,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 public class ShaderPackPipelineLoader {
     private static final Logger LOGGER = LoggerFactory.getLogger("VulkanShaders/PipelineLoader");
@@ -31,65 +34,94 @@ public class ShaderPackPipelineLoader {
 
             LOGGER.info("Found {} shader programs in {}", programs.size(), pack.getName());
 
+            // Submit every program's stages first so they preprocess and compile in parallel
+            List<PendingProgram> pending = new ArrayList<>();
             for (ShaderProgram program : programs) {
                 try {
-                    loadProgram(pack, program);
+                    pending.add(submitProgram(pack, program));
                 } catch (Exception e) {
                     LOGGER.error("Failed to load shader program: {}", program.getName(), e);
                 }
             }
 
+            // Register in discovery order so the registry contents are deterministic
+            for (PendingProgram job : pending) {
+                try {
+                    registerProgram(pack, job);
+                } catch (Exception e) {
+                    LOGGER.error("Failed to load shader program: {}", job.program().getName(), e);
+                }
+            }
+
         } catch (Exception e) {
             LOGGER.error("Failed to load pipelines from pack: {}", pack.getName(), e);
         }
     }
 
-    private static void loadProgram(ShaderPack pack, ShaderProgram program) {
+    private static PendingProgram submitProgram(ShaderPack pack, ShaderProgram program) {
         LOGGER.info("Loading shader program: {}", program.getName());
 
-        // Create preprocessor with available includes from the pack
-        GLSLPreprocessor preprocessor = new GLSLPreprocessor(pack.getAllShaderSources());
-
-        // Preprocess vertex shader
-        String processedVert = preprocessor.preprocess(
-                program.getVertexSource(),
-                "shaders/" + program.getName() + ".vsh"
-        );
+        ShaderCompileExecutor executor = VulkanShadersInit.getCompileExecutor();
 
-        // Preprocess fragment shader
-        String processedFrag = preprocessor.preprocess(
-                program.getFragmentSource(),
-                "shaders/" + program.getName() + ".fsh"
-        );
+        // One include graph per pack: shared includes are parsed and expanded once for all programs
+        GLSLPreprocessor preprocessor = new GLSLPreprocessor(pack.getIncludeGraph());
+        // Dead option blocks are stripped before conversion and hashing
+        MacroPreprocessor macros = MacroPreprocessor.forValues(pack.getOptions().getValues());
 
-        // Compile to SPIR-V
-        SPIRVUtils.SPIRV vertSpirv = VulkanShadersInit.getCompiler().compile(
+        // Sources are read on the workers too, so reading them is as parallel as compiling
+        CompletableFuture<SPIRVCompiler.CompiledShader> vertJob = executor.submit(
                 program.getName() + ".vert",
-                processedVert,
+                () -> stageSource(pack, preprocessor, macros, program.getVertexPath()),
                 SPIRVUtils.ShaderKind.VERTEX_SHADER,
                 pack.getVersion()
         );
 
-        SPIRVUtils.SPIRV fragSpirv = VulkanShadersInit.getCompiler().compile(
+        CompletableFuture<SPIRVCompiler.CompiledShader> fragJob = executor.submit(
                 program.getName() + ".frag",
-                processedFrag,
+                () -> stageSource(pack, preprocessor, macros, program.getFragmentPath()),
                 SPIRVUtils.ShaderKind.FRAGMENT_SHADER,
                 pack.getVersion()
         );
 
-        // Create configuration from properties
-        PipelineConfiguration config = PipelineConfiguration.fromShaderProperties(
-                program.getProperties()
-        );
+        return new PendingProgram(program, vertJob, fragJob);
+    }
 
-        // Build custom pipeline
-        CustomPipeline pipeline = new CustomPipeline(
-                program.getName(),
-                pack,
-                vertSpirv,
-                fragSpirv,
-                config
-        );
+    private static String stageSource(ShaderPack pack, GLSLPreprocessor preprocessor, MacroPreprocessor macros,
+                                      String path) {
+        String source = pack.getShaderSource(path);
+        if (source == null) {
+            throw new IllegalStateException("Shader source could not be read: " + path);
+        }
+        return macros.process(preprocessor.preprocess(source, path), path);
+    }
+
+    private static void registerProgram(ShaderPack pack, PendingProgram job) {
+        ShaderProgram program = job.program();
+        CustomPipeline pipeline = null;
+
+        try {
+            SPIRVCompiler.CompiledShader vertShader = ShaderCompileExecutor.await(job.vertex());
+            SPIRVCompiler.CompiledShader fragShader = ShaderCompileExecutor.await(job.fragment());
+
+            // Create configuration from properties
+            PipelineConfiguration config = PipelineConfiguration.fromShaderProperties(
+                    program.getProperties()
+            );
+
+            // Build custom pipeline
+            pipeline = new CustomPipeline(
+                    program.getName(),
+                    pack,
+                    vertShader,
+                    fragShader,
+                    config
+            );
+            pipeline.retainCacheEntries(VulkanShadersInit.getShaderCache(),
+                    vertShader.cacheKey(), fragShader.cacheKey());
+        } catch (RuntimeException e) {
+            VulkanShadersInit.releaseFailed(job.vertex(), job.fragment(), pipeline);
+            throw e;
+        }
 
         // Register the pipeline
         PipelineRegistry.registerCustomPipeline(program.getName(), pipeline);
@@ -105,6 +137,11 @@ public class ShaderPackPipelineLoader {
         }
     }
 
+    private record PendingProgram(ShaderProgram program,
+                                  CompletableFuture<SPIRVCompiler.CompiledShader> vertex,
+                                  CompletableFuture<SPIRVCompiler.CompiledShader> fragment) {
+    }
+
     /**
      * Discover shader programs in a shader pack
      */
@@ -148,15 +185,13 @@ public class ShaderPackPipelineLoader {
     private static ShaderProgram loadProgramIfExists(ShaderPack pack, String programName) {
         // Try to load vertex shader
         String vertPath = "shaders/" + programName + ".vsh";
-        String vertSource = pack.getShaderSource(vertPath);
-        if (vertSource == null) {
+        if (!pack.hasShaderSource(vertPath)) {
             return null; // Vertex shader not found
         }
 
         // Try to load fragment shader
         String fragPath = "shaders/" + programName + ".fsh";
-        String fragSource = pack.getShaderSource(fragPath);
-        if (fragSource == null) {
+        if (!pack.hasShaderSource(fragPath)) {
             return null; // Fragment shader not found
         }
 
@@ -178,8 +213,8 @@ public class ShaderPackPipelineLoader {
 
         return new ShaderProgram(
                 programName,
-                vertSource,
-                fragSource,
+                vertPath,
+                fragPath,
                 props,
                 isOverride,
                 vanillaTarget
@@ -4,28 +4,29 @@ import java.util.Properties;
 
 /**
  * Represents a shader program (vertex + fragment pair) from a shader pack
+ * Holds the stage paths, the sources are read by the compile jobs.
  */
 public class ShaderProgram {
     private final String name;
-    private final String vertexSource;
-    private final String fragmentSource;
+    private final String vertexPath;
+    private final String fragmentPath;
     private final Properties properties;
     private final boolean isOverride;
     private final String vanillaTarget;
 
-    public ShaderProgram(String name, String vertexSource, String fragmentSource,
+    public ShaderProgram(String name, String vertexPath, String fragmentPath,
                          Properties properties, boolean isOverride, String vanillaTarget) {
         this.name = name;
-        this.vertexSource = vertexSource;
-        this.fragmentSource = fragmentSource;
+        this.vertexPath = vertexPath;
+        this.fragmentPath = fragmentPath;
         this.properties = properties;
         this.isOverride = isOverride;
         this.vanillaTarget = vanillaTarget;
     }
 
     public String getName() { return name; }
-    public String getVertexSource() { return vertexSource; }
-    public String getFragmentSource() { return fragmentSource; }
+    public String getVertexPath() { return vertexPath; }
+    public String getFragmentPath() { return fragmentPath; }
     public Properties getProperties() { return properties; }
     public boolean isOverride() { return isOverride; }
     public String getVanillaTarget() { return vanillaTarget; }
@@ -0,0 +1,148 @@
+package net.vulkanshaders.spirv;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SPIR-V binary constants (subset used by reflection and post-processing) and word access helpers
+ */
+public final class SPIRVConstants {
+    public static final int MAGIC = 0x07230203;
+    public static final int HEADER_WORDS = 5;
+
+    // Opcodes
+    public static final int OP_NOP = 0;
+    public static final int OP_SOURCE_CONTINUED = 2;
+    public static final int OP_SOURCE = 3;
+    public static final int OP_SOURCE_EXTENSION = 4;
+    public static final int OP_NAME = 5;
+    public static final int OP_MEMBER_NAME = 6;
+    public static final int OP_STRING = 7;
+    public static final int OP_LINE = 8;
+    public static final int OP_ENTRY_POINT = 15;
+    public static final int OP_TYPE_VOID = 19;
+    public static final int OP_TYPE_BOOL = 20;
+    public static final int OP_TYPE_INT = 21;
+    public static final int OP_TYPE_FLOAT = 22;
+    public static final int OP_TYPE_VECTOR = 23;
+    public static final int OP_TYPE_MATRIX = 24;
+    public static final int OP_TYPE_IMAGE = 25;
+    public static final int OP_TYPE_SAMPLER = 26;
+    public static final int OP_TYPE_SAMPLED_IMAGE = 27;
+    public static final int OP_TYPE_ARRAY = 28;
+    public static final int OP_TYPE_RUNTIME_ARRAY = 29;
+    public static final int OP_TYPE_STRUCT = 30;
+    public static final int OP_TYPE_POINTER = 32;
+    public static final int OP_TYPE_FUNCTION = 33;
+    public static final int OP_CONSTANT_TRUE = 41;
+    public static final int OP_CONSTANT_FALSE = 42;
+    public static final int OP_CONSTANT = 43;
+    public static final int OP_CONSTANT_COMPOSITE = 44;
+    public static final int OP_CONSTANT_NULL = 46;
+    public static final int OP_SPEC_CONSTANT_TRUE = 48;
+    public static final int OP_SPEC_CONSTANT_FALSE = 49;
+    public static final int OP_SPEC_CONSTANT = 50;
+    public static final int OP_SPEC_CONSTANT_COMPOSITE = 51;
+    public static final int OP_FUNCTION = 54;
+    public static final int OP_VARIABLE = 59;
+    public static final int OP_DECORATE = 71;
+    public static final int OP_MEMBER_DECORATE = 72;
+    public static final int OP_NO_LINE = 317;
+    public static final int OP_MODULE_PROCESSED = 330;
+
+    // Decorations
+    public static final int DECORATION_BLOCK = 2;
+    public static final int DECORATION_BUFFER_BLOCK = 3;
+    public static final int DECORATION_ARRAY_STRIDE = 6;
+    public static final int DECORATION_MATRIX_STRIDE = 7;
+    public static final int DECORATION_BUILT_IN = 11;
+    public static final int DECORATION_LOCATION = 30;
+    public static final int DECORATION_BINDING = 33;
+    public static final int DECORATION_DESCRIPTOR_SET = 34;
+    public static final int DECORATION_OFFSET = 35;
+
+    // Storage classes
+    public static final int STORAGE_UNIFORM_CONSTANT = 0;
+    public static final int STORAGE_INPUT = 1;
+    public static final int STORAGE_UNIFORM = 2;
+    public static final int STORAGE_OUTPUT = 3;
+    public static final int STORAGE_PUSH_CONSTANT = 9;
+    public static final int STORAGE_STORAGE_BUFFER = 12;
+
+    // Execution models
+    public static final int EXECUTION_VERTEX = 0;
+    public static final int EXECUTION_GEOMETRY = 3;
+    public static final int EXECUTION_FRAGMENT = 4;
+    public static final int EXECUTION_GL_COMPUTE = 5;
+
+    private SPIRVConstants() {
+    }
+
+    public static int opcode(int word) {
+        return word & 0xFFFF;
+    }
+
+    public static int wordCount(int word) {
+        return word >>> 16;
+    }
+
+    /**
+     * Read a module into words, accepting either endianness
+     *
+     * @throws IllegalArgumentException if the data is not a SPIR-V module
+     */
+    public static int[] toWords(ByteBuffer bytecode) {
+        ByteBuffer data = bytecode.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() % 4 != 0 || data.remaining() < HEADER_WORDS * 4) {
+            throw new IllegalArgumentException("Not a SPIR-V module: " + data.remaining() + " bytes");
+        }
+
+        int first = data.getInt(data.position());
+        if (first != MAGIC) {
+            if (Integer.reverseBytes(first) != MAGIC) {
+                throw new IllegalArgumentException("Not a SPIR-V module: bad magic");
+            }
+            data.order(ByteOrder.BIG_ENDIAN);
+        }
+
+        int[] words = new int[data.remaining() / 4];
+        data.asIntBuffer().get(words);
+        return words;
+    }
+
+    /**
+     * Decode a nul-terminated literal string starting at the given word
+     */
+    public static String readString(int[] words, int start, int end) {
+        byte[] utf8 = new byte[(end - start) * 4];
+        int length = 0;
+
+        outer:
+        for (int i = start; i < end; i++) {
+            int word = words[i];
+            for (int b = 0; b < 4; b++) {
+                byte value = (byte) (word >>> (b * 8));
+                if (value == 0) {
+                    break outer;
+                }
+                utf8[length++] = value;
+            }
+        }
+
+        return new String(utf8, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Number of words a literal string starting at the given word occupies, including the terminator
+     */
+    public static int stringWords(int[] words, int start, int end) {
+        for (int i = start; i < end; i++) {
+            int word = words[i];
+            if ((word & 0xFF) == 0 || (word & 0xFF00) == 0 || (word & 0xFF0000) == 0 || (word & 0xFF000000) == 0) {
+                return i - start + 1;
+            }
+        }
+        return end - start;
+    }
+}
@@ -0,0 +1,291 @@
+package net.vulkanshaders.spirv;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+
+import static net.vulkanshaders.spirv.SPIRVConstants.*;
+
+/**
+ * Pure-Java SPIR-V size reduction, run on compiler output before it is cached
+ *
+ * Removes types, constants, undefs and global variables nothing references, together with their
+ * names and decorations, and optionally strips debug info (OpSource, OpLine, OpModuleProcessed,
+ * unreferenced OpStrings and most OpName/OpMemberName). Names reflection and descriptor binding rely on
+ * (interface and resource variables, struct types and their members) are always kept, and so are
+ * resource variables, so the pipeline layout matches the GLSL declarations.
+ *
+ * Any word that could be an id reference is treated as one, so a literal that happens to equal an id
+ * only ever keeps a declaration alive: the result is never less valid than the input.
+ */
+public final class SPIRVReducer {
+    // Bump when the reduced output changes, cached SPIR-V is keyed by it
+    public static final int REVISION = 1;
+
+    private static final int OP_UNDEF = 1;
+    private static final int OP_TYPE_FORWARD_POINTER = 39;
+    private static final int OP_SPEC_CONSTANT_OP = 52;
+    private static final int OP_DECORATE_ID = 332;
+    private static final int OP_DECORATE_STRING = 5632;
+    private static final int OP_MEMBER_DECORATE_STRING = 5633;
+
+    private final int[] words;
+    private final boolean stripDebugInfo;
+
+    // Instruction start offsets in module order
+    private int[] starts = new int[64];
+    private int instructionCount;
+    private int firstFunction;
+
+    // id -> index of the instruction declaring it, for removable declarations only
+    private int[] declarations;
+    // id -> storage class of a module-level variable, -1 for other ids
+    private int[] storages;
+    private final BitSet live = new BitSet();
+    private final Deque<Integer> pending = new ArrayDeque<>();
+
+    private SPIRVReducer(int[] words, boolean stripDebugInfo) {
+        this.words = words;
+        this.stripDebugInfo = stripDebugInfo;
+    }
+
+    /**
+     * Reduce a SPIR-V module
+     *
+     * @param stripDebugInfo Also drop debug instructions (keep them for debugging tools)
+     * @return Little-endian module, a new buffer
+     * @throws IllegalArgumentException if the bytecode is not valid SPIR-V
+     */
+    public static ByteBuffer reduce(ByteBuffer bytecode, boolean stripDebugInfo) {
+        SPIRVReducer reducer = new SPIRVReducer(toWords(bytecode), stripDebugInfo);
+        reducer.scan();
+        reducer.markLive();
+        return reducer.write();
+    }
+
+    private void scan() {
+        int bound = words[3];
+        if (bound < 0 || bound > 1 << 24) {
+            throw new IllegalArgumentException("Unreasonable SPIR-V id bound: " + bound);
+        }
+        declarations = new int[bound];
+        storages = new int[bound];
+        Arrays.fill(declarations, -1);
+        Arrays.fill(storages, -1);
+        firstFunction = -1;
+
+        int i = HEADER_WORDS;
+        while (i < words.length) {
+            int count = wordCount(words[i]);
+            if (count == 0 || i + count > words.length) {
+                throw new IllegalArgumentException("Malformed SPIR-V instruction at word " + i);
+            }
+
+            if (instructionCount == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            int index = instructionCount++;
+            starts[index] = i;
+
+            int op = opcode(words[i]);
+            if (op == OP_FUNCTION && firstFunction < 0) {
+                firstFunction = index;
+            }
+            if (firstFunction < 0) {
+                int result = removableResult(i, op, count);
+                if (result > 0 && result < bound) {
+                    declarations[result] = index;
+                }
+                if (op == OP_VARIABLE && count > 3 && words[i + 2] > 0 && words[i + 2] < bound) {
+                    storages[words[i + 2]] = words[i + 3];
+                }
+            }
+            i += count;
+        }
+
+        if (firstFunction < 0) {
+            firstFunction = instructionCount;
+        }
+    }
+
+    /**
+     * Result id of a module-level declaration that may be removed when unreferenced, or -1
+     */
+    private int removableResult(int start, int op, int count) {
+        if (isType(op) && count > 1) {
+            return words[start + 1];
+        }
+        if (isConstant(op) || op == OP_UNDEF) {
+            return count > 2 ? words[start + 2] : -1;
+        }
+        if (op == OP_VARIABLE && count > 3) {
+            // Resource variables define the pipeline layout, they stay even if unused
+            return isResource(words[start + 3]) ? -1 : words[start + 2];
+        }
+        if (op == OP_STRING && stripDebugInfo && count > 1) {
+            return words[start + 1];
+        }
+        return -1;
+    }
+
+    private void markLive() {
+        for (int index = 0; index < instructionCount; index++) {
+            int start = starts[index];
+            int op = opcode(words[start]);
+            int end = start + wordCount(words[start]);
+
+            if (index >= firstFunction) {
+                if (!isStrippedDebug(op)) {
+                    reference(start + 1, end);
+                }
+                continue;
+            }
+
+            if (isStrippedDebug(op) || isTargetAnnotation(op)) {
+                continue;
+            }
+            if (op == OP_DECORATE_ID) {
+                // Extra operands are ids, keep them whether or not the target survives
+                reference(start + 3, end);
+                continue;
+            }
+            if (removableResult(start, op, end - start) < 0) {
+                reference(start + 1, end);
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            int start = starts[pending.pop()];
+            int op = opcode(words[start]);
+            int end = start + wordCount(words[start]);
+
+            if (isType(op)) {
+                reference(start + 2, end);
+            } else if (op != OP_STRING) {
+                reference(start + 1, start + 2);
+                reference(start + 3, end);
+            }
+        }
+    }
+
+    /**
+     * Mark every word in the range that names a removable declaration as live
+     */
+    private void reference(int from, int to) {
+        for (int i = from; i < to; i++) {
+            int id = words[i];
+            if (id > 0 && id < declarations.length && declarations[id] >= 0 && !live.get(id)) {
+                live.set(id);
+                pending.push(declarations[id]);
+            }
+        }
+    }
+
+    private ByteBuffer write() {
+        int[] out = new int[words.length];
+        System.arraycopy(words, 0, out, 0, HEADER_WORDS);
+        int size = HEADER_WORDS;
+
+        for (int index = 0; index < instructionCount; index++) {
+            int start = starts[index];
+            int count = wordCount(words[start]);
+            if (keep(index, start, count)) {
+                System.arraycopy(words, start, out, size, count);
+                size += count;
+            }
+        }
+
+        ByteBuffer result = ByteBuffer.allocate(size * 4).order(ByteOrder.LITTLE_ENDIAN);
+        result.asIntBuffer().put(out, 0, size);
+        return result;
+    }
+
+    private boolean keep(int index, int start, int count) {
+        int op = opcode(words[start]);
+        if (isStrippedDebug(op)) {
+            return false;
+        }
+        if (index >= firstFunction) {
+            return true;
+        }
+
+        if (isTargetAnnotation(op) || op == OP_DECORATE_ID) {
+            int target = words[start + 1];
+            if (!isLive(target)) {
+                return false;
+            }
+            if (stripDebugInfo && op == OP_NAME) {
+                return isReflected(target);
+            }
+            if (stripDebugInfo && op == OP_MEMBER_NAME) {
+                return isStruct(target);
+            }
+            return true;
+        }
+
+        int result = removableResult(start, op, count);
+        return result < 0 || live.get(result);
+    }
+
+    /**
+     * Whether an id is still defined after reduction (ids that are not removable always are)
+     */
+    private boolean isLive(int id) {
+        return id <= 0 || id >= declarations.length || declarations[id] < 0 || live.get(id);
+    }
+
+    /**
+     * Names reflection reads: interface and resource variables, and struct types
+     */
+    private boolean isReflected(int id) {
+        if (id <= 0 || id >= declarations.length) {
+            return false;
+        }
+        if (isStruct(id)) {
+            return true;
+        }
+
+        int storage = storages[id];
+        return storage == STORAGE_INPUT || storage == STORAGE_OUTPUT || (storage >= 0 && isResource(storage));
+    }
+
+    private boolean isStruct(int id) {
+        if (id <= 0 || id >= declarations.length || declarations[id] < 0) {
+            return false;
+        }
+        return opcode(words[starts[declarations[id]]]) == OP_TYPE_STRUCT;
+    }
+
+    private boolean isStrippedDebug(int op) {
+        return stripDebugInfo && switch (op) {
+            case OP_SOURCE_CONTINUED, OP_SOURCE, OP_SOURCE_EXTENSION, OP_LINE, OP_NO_LINE, OP_MODULE_PROCESSED -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Instructions that only annotate their first operand and go away with it
+     */
+    private static boolean isTargetAnnotation(int op) {
+        return op == OP_NAME || op == OP_MEMBER_NAME || op == OP_DECORATE || op == OP_MEMBER_DECORATE
+                || op == OP_DECORATE_STRING || op == OP_MEMBER_DECORATE_STRING;
+    }
+
+    private static boolean isType(int op) {
+        return op >= OP_TYPE_VOID && op < OP_TYPE_FORWARD_POINTER;
+    }
+
+    private static boolean isConstant(int op) {
+        // OpConstantTrue..OpConstantNull include OpConstantSampler
+        return (op >= OP_CONSTANT_TRUE && op <= OP_CONSTANT_NULL)
+                || (op >= OP_SPEC_CONSTANT_TRUE && op <= OP_SPEC_CONSTANT_OP);
+    }
+
+    private static boolean isResource(int storage) {
+        return storage == STORAGE_UNIFORM_CONSTANT || storage == STORAGE_UNIFORM
+                || storage == STORAGE_PUSH_CONSTANT || storage == STORAGE_STORAGE_BUFFER;
+    }
+}
@@ -0,0 +1,363 @@
+package net.vulkanshaders.spirv;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.vulkanshaders.spirv.SPIRVConstants.*;
+
+/**
+ * Pure-Java SPIR-V reflection: extracts descriptor bindings, uniform block layouts, push constants and
+ * stage inputs/outputs straight from the bytecode, without touching the GLSL source
+ */
+public class SPIRVReflector {
+    private final int[] words;
+
+    private final Map<Integer, String> names = new HashMap<>();
+    private final Map<Long, String> memberNames = new HashMap<>();
+    private final Map<Integer, Map<Integer, Integer>> decorations = new HashMap<>();
+    private final Map<Long, Map<Integer, Integer>> memberDecorations = new HashMap<>();
+    private final Map<Integer, Type> types = new HashMap<>();
+    private final Map<Integer, Long> constants = new HashMap<>();
+    private final List<int[]> variables = new ArrayList<>(); // {resultType, id, storageClass}
+    private ShaderReflection.Stage stage = ShaderReflection.Stage.OTHER;
+
+    private SPIRVReflector(int[] words) {
+        this.words = words;
+    }
+
+    /**
+     * Reflect a SPIR-V module
+     *
+     * @throws IllegalArgumentException if the bytecode is not valid SPIR-V
+     */
+    public static ShaderReflection reflect(ByteBuffer bytecode) {
+        SPIRVReflector reflector = new SPIRVReflector(toWords(bytecode));
+        reflector.scan();
+        return reflector.build();
+    }
+
+    private void scan() {
+        int i = HEADER_WORDS;
+        boolean stageSeen = false;
+
+        while (i < words.length) {
+            int count = wordCount(words[i]);
+            int op = opcode(words[i]);
+            if (count == 0 || i + count > words.length) {
+                throw new IllegalArgumentException("Malformed SPIR-V instruction at word " + i);
+            }
+
+            int end = i + count;
+            switch (op) {
+                case OP_ENTRY_POINT -> {
+                    if (!stageSeen) {
+                        stage = switch (words[i + 1]) {
+                            case EXECUTION_VERTEX -> ShaderReflection.Stage.VERTEX;
+                            case EXECUTION_FRAGMENT -> ShaderReflection.Stage.FRAGMENT;
+                            case EXECUTION_GEOMETRY -> ShaderReflection.Stage.GEOMETRY;
+                            case EXECUTION_GL_COMPUTE -> ShaderReflection.Stage.COMPUTE;
+                            default -> ShaderReflection.Stage.OTHER;
+                        };
+                        stageSeen = true;
+                    }
+                }
+                case OP_NAME -> names.put(words[i + 1], readString(words, i + 2, end));
+                case OP_MEMBER_NAME -> memberNames.put(memberKey(words[i + 1], words[i + 2]),
+                        readString(words, i + 3, end));
+                case OP_DECORATE -> decorations
+                        .computeIfAbsent(words[i + 1], k -> new HashMap<>())
+                        .put(words[i + 2], count > 3 ? words[i + 3] : 1);
+                case OP_MEMBER_DECORATE -> memberDecorations
+                        .computeIfAbsent(memberKey(words[i + 1], words[i + 2]), k -> new HashMap<>())
+                        .put(words[i + 3], count > 4 ? words[i + 4] : 1);
+                case OP_TYPE_VOID, OP_TYPE_SAMPLER -> types.put(words[i + 1], new Type(op));
+                case OP_TYPE_BOOL -> types.put(words[i + 1], new Type(op).width(32));
+                case OP_TYPE_INT -> types.put(words[i + 1], new Type(op).width(words[i + 2]).signed(words[i + 3] != 0));
+                case OP_TYPE_FLOAT -> types.put(words[i + 1], new Type(op).width(words[i + 2]));
+                case OP_TYPE_VECTOR, OP_TYPE_MATRIX ->
+                        types.put(words[i + 1], new Type(op).element(words[i + 2]).length(words[i + 3]));
+                case OP_TYPE_IMAGE -> types.put(words[i + 1], new Type(op).element(words[i + 2])
+                        .dim(words[i + 3]).arrayed(words[i + 5] != 0).sampled(words[i + 7]));
+                case OP_TYPE_SAMPLED_IMAGE -> types.put(words[i + 1], new Type(op).element(words[i + 2]));
+                case OP_TYPE_ARRAY -> types.put(words[i + 1], new Type(op).element(words[i + 2]).lengthId(words[i + 3]));
+                case OP_TYPE_RUNTIME_ARRAY -> types.put(words[i + 1], new Type(op).element(words[i + 2]));
+                case OP_TYPE_STRUCT -> {
+                    int[] members = new int[count - 2];
+                    System.arraycopy(words, i + 2, members, 0, members.length);
+                    types.put(words[i + 1], new Type(op).members(members));
+                }
+                case OP_TYPE_POINTER -> types.put(words[i + 1], new Type(op).storage(words[i + 2]).element(words[i + 3]));
+                case OP_CONSTANT, OP_SPEC_CONSTANT -> {
+                    long value = words[i + 3] & 0xFFFFFFFFL;
+                    if (count > 4) {
+                        value |= (long) words[i + 4] << 32;
+                    }
+                    constants.put(words[i + 2], value);
+                }
+                case OP_VARIABLE -> variables.add(new int[]{words[i + 1], words[i + 2], words[i + 3]});
+                default -> {
+                }
+            }
+
+            // Declarations all precede the first function body
+            if (op == OP_FUNCTION) {
+                break;
+            }
+            i = end;
+        }
+    }
+
+    private ShaderReflection build() {
+        List<ShaderReflection.Descriptor> descriptors = new ArrayList<>();
+        List<ShaderReflection.InterfaceVariable> inputs = new ArrayList<>();
+        List<ShaderReflection.InterfaceVariable> outputs = new ArrayList<>();
+        ShaderReflection.Block pushConstants = null;
+
+        for (int[] variable : variables) {
+            int id = variable[1];
+            int storage = variable[2];
+            Type pointer = types.get(variable[0]);
+            if (pointer == null || pointer.op != OP_TYPE_POINTER) {
+                continue;
+            }
+
+            int typeId = pointer.element;
+            Map<Integer, Integer> decoration = decorations.getOrDefault(id, Map.of());
+
+            switch (storage) {
+                case STORAGE_INPUT, STORAGE_OUTPUT -> {
+                    Integer location = decoration.get(DECORATION_LOCATION);
+                    if (location == null || decoration.containsKey(DECORATION_BUILT_IN)) {
+                        continue;
+                    }
+                    var interfaceVariable = new ShaderReflection.InterfaceVariable(
+                            location, names.getOrDefault(id, ""), typeName(typeId));
+                    (storage == STORAGE_INPUT ? inputs : outputs).add(interfaceVariable);
+                }
+                case STORAGE_PUSH_CONSTANT -> pushConstants = block(typeId);
+                case STORAGE_UNIFORM, STORAGE_UNIFORM_CONSTANT, STORAGE_STORAGE_BUFFER -> {
+                    ShaderReflection.Descriptor descriptor = descriptor(id, storage, typeId, decoration);
+                    if (descriptor != null) {
+                        descriptors.add(descriptor);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        descriptors.sort(Comparator.comparingInt(ShaderReflection.Descriptor::set)
+                .thenComparingInt(ShaderReflection.Descriptor::binding));
+        inputs.sort(Comparator.comparingInt(ShaderReflection.InterfaceVariable::location));
+        outputs.sort(Comparator.comparingInt(ShaderReflection.InterfaceVariable::location));
+
+        return new ShaderReflection(stage, descriptors, pushConstants, inputs, outputs);
+    }
+
+    private ShaderReflection.Descriptor descriptor(int id, int storage, int typeId, Map<Integer, Integer> decoration) {
+        // Arrays of resources become one binding with a count
+        int count = 1;
+        Type type = types.get(typeId);
+        if (type != null && (type.op == OP_TYPE_ARRAY || type.op == OP_TYPE_RUNTIME_ARRAY)) {
+            count = type.op == OP_TYPE_ARRAY ? (int) arrayLength(type) : 0;
+            typeId = type.element;
+            type = types.get(typeId);
+        }
+        if (type == null) {
+            return null;
+        }
+
+        ShaderReflection.DescriptorType descriptorType;
+        ShaderReflection.Block block = null;
+        String typeName;
+
+        switch (type.op) {
+            case OP_TYPE_STRUCT -> {
+                Map<Integer, Integer> typeDecoration = decorations.getOrDefault(typeId, Map.of());
+                boolean bufferBlock = typeDecoration.containsKey(DECORATION_BUFFER_BLOCK)
+                        || storage == STORAGE_STORAGE_BUFFER;
+                descriptorType = bufferBlock
+                        ? ShaderReflection.DescriptorType.STORAGE_BUFFER
+                        : ShaderReflection.DescriptorType.UNIFORM_BUFFER;
+                block = block(typeId);
+                typeName = block.name();
+            }
+            case OP_TYPE_SAMPLED_IMAGE -> {
+                descriptorType = ShaderReflection.DescriptorType.COMBINED_IMAGE_SAMPLER;
+                typeName = typeName(typeId);
+            }
+            case OP_TYPE_IMAGE -> {
+                descriptorType = type.sampled == 2
+                        ? ShaderReflection.DescriptorType.STORAGE_IMAGE
+                        : ShaderReflection.DescriptorType.SAMPLED_IMAGE;
+                typeName = typeName(typeId);
+            }
+            case OP_TYPE_SAMPLER -> {
+                descriptorType = ShaderReflection.DescriptorType.SAMPLER;
+                typeName = "sampler";
+            }
+            default -> {
+                return null;
+            }
+        }
+
+        String name = names.getOrDefault(id, "");
+        if (name.isEmpty() && block != null) {
+            name = block.name(); // Anonymous uniform block
+        }
+
+        return new ShaderReflection.Descriptor(
+                decoration.getOrDefault(DECORATION_DESCRIPTOR_SET, 0),
+                decoration.getOrDefault(DECORATION_BINDING, 0),
+                descriptorType, name, typeName, count, block);
+    }
+
+    private ShaderReflection.Block block(int structId) {
+        Type struct = types.get(structId);
+        if (struct == null || struct.op != OP_TYPE_STRUCT) {
+            return new ShaderReflection.Block(names.getOrDefault(structId, ""), 0, List.of());
+        }
+
+        List<ShaderReflection.Member> members = new ArrayList<>(struct.members.length);
+        int size = 0;
+
+        for (int m = 0; m < struct.members.length; m++) {
+            Map<Integer, Integer> decoration = memberDecorations.getOrDefault(memberKey(structId, m), Map.of());
+            int offset = decoration.getOrDefault(DECORATION_OFFSET, size);
+            int memberSize = sizeOf(struct.members[m], decoration.getOrDefault(DECORATION_MATRIX_STRIDE, 16));
+
+            members.add(new ShaderReflection.Member(
+                    memberNames.getOrDefault(memberKey(structId, m), "member" + m),
+                    typeName(struct.members[m]),
+                    offset,
+                    memberSize));
+            size = Math.max(size, offset + memberSize);
+        }
+
+        return new ShaderReflection.Block(names.getOrDefault(structId, ""), size, members);
+    }
+
+    /**
+     * Size in bytes as laid out by the module's explicit Offset/ArrayStride/MatrixStride decorations
+     */
+    private int sizeOf(int typeId, int matrixStride) {
+        Type type = types.get(typeId);
+        if (type == null) {
+            return 0;
+        }
+
+        return switch (type.op) {
+            case OP_TYPE_BOOL, OP_TYPE_INT, OP_TYPE_FLOAT -> type.width / 8;
+            case OP_TYPE_VECTOR -> type.length * sizeOf(type.element, matrixStride);
+            case OP_TYPE_MATRIX -> type.length * matrixStride;
+            case OP_TYPE_ARRAY -> {
+                Integer stride = decorations.getOrDefault(typeId, Map.of()).get(DECORATION_ARRAY_STRIDE);
+                int elementSize = stride != null ? stride : sizeOf(type.element, matrixStride);
+                yield (int) arrayLength(type) * elementSize;
+            }
+            case OP_TYPE_STRUCT -> block(typeId).size();
+            default -> 0;
+        };
+    }
+
+    private long arrayLength(Type array) {
+        return constants.getOrDefault(array.lengthId, 0L);
+    }
+
+    /**
+     * GLSL-style name for a type, e.g. vec3, mat4, sampler2D, float[4]
+     */
+    private String typeName(int typeId) {
+        Type type = types.get(typeId);
+        if (type == null) {
+            return "unknown";
+        }
+
+        return switch (type.op) {
+            case OP_TYPE_VOID -> "void";
+            case OP_TYPE_BOOL -> "bool";
+            case OP_TYPE_INT -> type.signed ? "int" : "uint";
+            case OP_TYPE_FLOAT -> type.width == 64 ? "double" : "float";
+            case OP_TYPE_VECTOR -> vectorPrefix(type.element) + "vec" + type.length;
+            case OP_TYPE_MATRIX -> {
+                Type column = types.get(type.element);
+                int rows = column != null ? column.length : type.length;
+                yield rows == type.length ? "mat" + type.length : "mat" + type.length + "x" + rows;
+            }
+            case OP_TYPE_SAMPLED_IMAGE -> imageName(types.get(type.element), "sampler");
+            case OP_TYPE_IMAGE -> imageName(type, type.sampled == 2 ? "image" : "texture");
+            case OP_TYPE_SAMPLER -> "sampler";
+            case OP_TYPE_ARRAY -> typeName(type.element) + "[" + arrayLength(type) + "]";
+            case OP_TYPE_RUNTIME_ARRAY -> typeName(type.element) + "[]";
+            case OP_TYPE_STRUCT -> names.getOrDefault(typeId, "struct");
+            case OP_TYPE_POINTER -> typeName(type.element);
+            default -> "unknown";
+        };
+    }
+
+    private String vectorPrefix(int componentId) {
+        Type component = types.get(componentId);
+        if (component == null) {
+            return "";
+        }
+        return switch (component.op) {
+            case OP_TYPE_INT -> component.signed ? "i" : "u";
+            case OP_TYPE_BOOL -> "b";
+            case OP_TYPE_FLOAT -> component.width == 64 ? "d" : "";
+            default -> "";
+        };
+    }
+
+    private static String imageName(Type image, String prefix) {
+        if (image == null) {
+            return prefix;
+        }
+        String dim = switch (image.dim) {
+            case 0 -> "1D";
+            case 1 -> "2D";
+            case 2 -> "3D";
+            case 3 -> "Cube";
+            case 4 -> "2DRect";
+            case 5 -> "Buffer";
+            default -> "";
+        };
+        return prefix + dim + (image.arrayed ? "Array" : "");
+    }
+
+    private static long memberKey(int structId, int member) {
+        return ((long) structId << 32) | (member & 0xFFFFFFFFL);
+    }
+
+    private static class Type {
+        final int op;
+        int width;
+        boolean signed;
+        int element;
+        int length;
+        int lengthId;
+        int[] members = new int[0];
+        int storage;
+        int dim;
+        boolean arrayed;
+        int sampled;
+
+        Type(int op) {
+            this.op = op;
+        }
+
+        Type width(int width) { this.width = width; return this; }
+        Type signed(boolean signed) { this.signed = signed; return this; }
+        Type element(int element) { this.element = element; return this; }
+        Type length(int length) { this.length = length; return this; }
+        Type lengthId(int lengthId) { this.lengthId = lengthId; return this; }
+        Type members(int[] members) { this.members = members; return this; }
+        Type storage(int storage) { this.storage = storage; return this; }
+        Type dim(int dim) { this.dim = dim; return this; }
+        Type arrayed(boolean arrayed) { this.arrayed = arrayed; return this; }
+        Type sampled(int sampled) { this.sampled = sampled; return this; }
+    }
+}
@@ -0,0 +1,189 @@
+package net.vulkanshaders.spirv;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resource layout of a single SPIR-V module, as extracted by {@link SPIRVReflector}
+ *
+ * @param stage Execution model of the first entry point
+ * @param descriptors Descriptor bindings (uniform buffers, samplers, images, storage buffers)
+ * @param pushConstants Push constant block, or null if the module has none
+ * @param inputs Stage inputs with a location
+ * @param outputs Stage outputs with a location
+ */
+public record ShaderReflection(Stage stage,
+                               List<Descriptor> descriptors,
+                               Block pushConstants,
+                               List<InterfaceVariable> inputs,
+                               List<InterfaceVariable> outputs) {
+    private static final int MAGIC = 0x56535246; // "VSRF"
+    private static final int FORMAT_VERSION = 1;
+
+    public enum Stage {
+        VERTEX, FRAGMENT, GEOMETRY, COMPUTE, OTHER
+    }
+
+    public enum DescriptorType {
+        UNIFORM_BUFFER, STORAGE_BUFFER, COMBINED_IMAGE_SAMPLER, SAMPLED_IMAGE, STORAGE_IMAGE, SAMPLER
+    }
+
+    /**
+     * @param name Variable name, or the block type name for anonymous blocks
+     * @param typeName GLSL-style type name (block name for buffers, e.g. sampler2D for samplers)
+     * @param count Array size, 1 for non-arrays
+     * @param block Member layout for buffer descriptors, null otherwise
+     */
+    public record Descriptor(int set, int binding, DescriptorType type, String name, String typeName,
+                             int count, Block block) {
+    }
+
+    public record Block(String name, int size, List<Member> members) {
+    }
+
+    /**
+     * @param typeName GLSL-style type name, e.g. mat4, vec3, float[4]
+     */
+    public record Member(String name, String typeName, int offset, int size) {
+    }
+
+    public record InterfaceVariable(int location, String name, String typeName) {
+    }
+
+    public List<Descriptor> getUniformBuffers() {
+        return descriptors.stream().filter(d -> d.type() == DescriptorType.UNIFORM_BUFFER).toList();
+    }
+
+    public List<Descriptor> getImages() {
+        return descriptors.stream()
+                .filter(d -> d.type() == DescriptorType.COMBINED_IMAGE_SAMPLER
+                        || d.type() == DescriptorType.SAMPLED_IMAGE
+                        || d.type() == DescriptorType.STORAGE_IMAGE)
+                .toList();
+    }
+
+    public ByteBuffer encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeByte(stage.ordinal());
+
+            out.writeInt(descriptors.size());
+            for (Descriptor descriptor : descriptors) {
+                out.writeInt(descriptor.set());
+                out.writeInt(descriptor.binding());
+                out.writeByte(descriptor.type().ordinal());
+                out.writeUTF(descriptor.name());
+                out.writeUTF(descriptor.typeName());
+                out.writeInt(descriptor.count());
+                writeBlock(out, descriptor.block());
+            }
+
+            writeBlock(out, pushConstants);
+            writeVariables(out, inputs);
+            writeVariables(out, outputs);
+
+            out.flush();
+            return ByteBuffer.wrap(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode shader reflection", e);
+        }
+    }
+
+    /**
+     * @return Decoded reflection, or null if the data is from another format version or corrupt
+     */
+    public static ShaderReflection decode(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            Stage stage = Stage.values()[in.readByte()];
+
+            int descriptorCount = in.readInt();
+            List<Descriptor> descriptors = new ArrayList<>(descriptorCount);
+            for (int i = 0; i < descriptorCount; i++) {
+                descriptors.add(new Descriptor(
+                        in.readInt(),
+                        in.readInt(),
+                        DescriptorType.values()[in.readByte()],
+                        in.readUTF(),
+                        in.readUTF(),
+                        in.readInt(),
+                        readBlock(in)
+                ));
+            }
+
+            Block pushConstants = readBlock(in);
+            List<InterfaceVariable> inputs = readVariables(in);
+            List<InterfaceVariable> outputs = readVariables(in);
+
+            return new ShaderReflection(stage, descriptors, pushConstants, inputs, outputs);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void writeBlock(DataOutputStream out, Block block) throws IOException {
+        out.writeBoolean(block != null);
+        if (block == null) {
+            return;
+        }
+
+        out.writeUTF(block.name());
+        out.writeInt(block.size());
+        out.writeInt(block.members().size());
+        for (Member member : block.members()) {
+            out.writeUTF(member.name());
+            out.writeUTF(member.typeName());
+            out.writeInt(member.offset());
+            out.writeInt(member.size());
+        }
+    }
+
+    private static Block readBlock(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        String name = in.readUTF();
+        int size = in.readInt();
+        int memberCount = in.readInt();
+        List<Member> members = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            members.add(new Member(in.readUTF(), in.readUTF(), in.readInt(), in.readInt()));
+        }
+        return new Block(name, size, members);
+    }
+
+    private static void writeVariables(DataOutputStream out, List<InterfaceVariable> variables) throws IOException {
+        out.writeInt(variables.size());
+        for (InterfaceVariable variable : variables) {
+            out.writeInt(variable.location());
+            out.writeUTF(variable.name());
+            out.writeUTF(variable.typeName());
+        }
+    }
+
+    private static List<InterfaceVariable> readVariables(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<InterfaceVariable> variables = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            variables.add(new InterfaceVariable(in.readInt(), in.readUTF(), in.readUTF()));
+        }
+        return variables;
+    }
+}
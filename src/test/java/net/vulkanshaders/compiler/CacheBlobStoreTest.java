@@ -0,0 +1,226 @@
+package net.vulkanshaders.compiler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheBlobStoreTest {
+    private static final String HASHED_KEY = "spv-" + "0123456789abcdef".repeat(2);
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopenKeepsEntries() throws IOException {
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            store.put("first", blob(100, 1));
+            store.put("second", blob(300, 2));
+            store.put("first", blob(200, 3));
+        }
+
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            assertEquals(2, store.size());
+            assertEquals(blob(200, 3), store.get("first"));
+            assertEquals(blob(300, 2), store.get("second"));
+            assertNull(store.get("missing"));
+        }
+    }
+
+    @Test
+    void hashedKeysSurviveReopen() throws IOException {
+        // Stored as a binary hash in the index, read back as the same string key
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            store.put(HASHED_KEY, blob(100, 1));
+            store.put("spv-not-a-hash", blob(100, 2));
+        }
+
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            assertEquals(blob(100, 1), store.get(HASHED_KEY));
+            assertEquals(blob(100, 2), store.get("spv-not-a-hash"));
+        }
+    }
+
+    @Test
+    void recoversFromTruncatedIndex() throws IOException {
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            store.put("first", blob(64, 1));
+            store.put("second", blob(64, 2));
+            store.put("torn", blob(64, 3));
+        }
+        // A crash in the middle of the last index append
+        truncate(directory.resolve(CacheBlobStore.INDEX_FILE), 5);
+
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            assertEquals(2, store.size());
+            assertEquals(blob(64, 1), store.get("first"));
+            assertEquals(blob(64, 2), store.get("second"));
+            assertFalse(store.contains("torn"));
+
+            // The torn tail was cut, so new records start on a record boundary
+            store.put("third", blob(64, 4));
+        }
+
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            assertEquals(3, store.size());
+            assertEquals(blob(64, 4), store.get("third"));
+        }
+    }
+
+    @Test
+    void dropsIndexRecordFailingItsCrc() throws IOException {
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            store.put("first", blob(64, 1));
+            store.put("second", blob(64, 2));
+        }
+        Path index = directory.resolve(CacheBlobStore.INDEX_FILE);
+        flipByte(index, Files.size(index) - 10);
+
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            assertEquals(1, store.size());
+            assertEquals(blob(64, 1), store.get("first"));
+        }
+    }
+
+    @Test
+    void dropsCorruptBlob() throws IOException {
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            store.put("only", blob(64, 1));
+        }
+        Path blobs = directory.resolve(CacheBlobStore.BLOB_FILE);
+        flipByte(blobs, Files.size(blobs) - 1);
+
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            assertNull(store.get("only"));
+            assertFalse(store.contains("only"));
+        }
+    }
+
+    @Test
+    void compactionReclaimsDeadEntries() throws IOException {
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            for (int i = 0; i < 8; i++) {
+                store.put("entry" + i, blob(1024, i));
+            }
+            // Overwritten entries leave their old bytes behind
+            for (int i = 0; i < 2; i++) {
+                for (int e = 0; e < 8; e++) {
+                    store.put("entry" + e, blob(1024, e + 8 * (i + 1)));
+                }
+            }
+        }
+        assertTrue(CacheBlobStore.deadRatio(directory) > 0.5);
+
+        assertTrue(CacheBlobStore.compact(directory) >= 16 * 1024);
+        assertEquals(0.0, CacheBlobStore.deadRatio(directory), 0.05);
+
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            assertEquals(8, store.size());
+            for (int e = 0; e < 8; e++) {
+                assertEquals(blob(1024, e + 16), store.get("entry" + e));
+            }
+        }
+    }
+
+    @Test
+    void flushCommitsQueuedRecords() throws IOException {
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            store.put("first", blob(64, 1));
+            store.put("second", blob(64, 2));
+            store.remove("first");
+            store.flush();
+
+            // A second reader sees the committed batch while the writer is still open
+            try (CacheBlobStore reader = CacheBlobStore.open(directory)) {
+                assertEquals(1, reader.size());
+                assertEquals(blob(64, 2), reader.get("second"));
+            }
+        }
+    }
+
+    @Test
+    void openCompactsPastThreshold() throws IOException {
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            for (int i = 0; i < 4; i++) {
+                store.put("entry", blob(1024, i));
+            }
+        }
+
+        try (CacheBlobStore store = CacheBlobStore.open(directory, 0.5)) {
+            assertEquals(0.0, store.getDeadRatio(), 0.05);
+            assertEquals(blob(1024, 3), store.get("entry"));
+        }
+        assertEquals(0.0, CacheBlobStore.deadRatio(directory), 0.05);
+    }
+
+    @Test
+    void openCompactsEvictionsOverQuota() throws IOException {
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            for (int i = 0; i < 8; i++) {
+                store.put("entry" + i, blob(1024, i));
+            }
+            store.remove("entry0");
+            store.remove("entry1");
+        }
+
+        // A quarter dead: under the plain threshold, but the file is over quota
+        try (CacheBlobStore store = CacheBlobStore.open(directory, 0.5, Long.MAX_VALUE)) {
+            assertTrue(store.getDeadRatio() > 0.2);
+        }
+        try (CacheBlobStore store = CacheBlobStore.open(directory, 0.5, 4 * 1024)) {
+            assertEquals(0.0, store.getDeadRatio(), 0.05);
+            assertEquals(6, store.size());
+            assertEquals(blob(1024, 7), store.get("entry7"));
+        }
+    }
+
+    @Test
+    void tombstonesSurviveReopen() throws IOException {
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            store.put("kept", blob(64, 1));
+            store.put("removed", blob(64, 2));
+            assertEquals(64, store.remove("removed"));
+            assertEquals(0, store.remove("removed"));
+        }
+
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            assertEquals(1, store.size());
+            assertFalse(store.contains("removed"));
+        }
+
+        // The removed blob is dead space until compaction
+        assertTrue(CacheBlobStore.compact(directory) >= 64);
+        try (CacheBlobStore store = CacheBlobStore.open(directory)) {
+            assertEquals(blob(64, 1), store.get("kept"));
+            assertFalse(store.contains("removed"));
+        }
+    }
+
+    private static ByteBuffer blob(int size, int seed) {
+        ByteBuffer blob = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            blob.put((byte) (i * 31 + seed));
+        }
+        return blob.flip();
+    }
+
+    private static void truncate(Path file, int bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            channel.write(value.put(0, (byte) ~value.get(0)).clear(), position);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package net.vulkanshaders.compiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentHasherTest {
+
+    @Test
+    void isDeterministic() {
+        String text = "void main() { gl_Position = vec4(0.0); }".repeat(50);
+        assertEquals(ContentHasher.get().putString(text).finish(), ContentHasher.get().putString(text).finish());
+        assertEquals(new ContentHasher().putString(text).finish(), ContentHasher.get().putString(text).finish());
+    }
+
+    @Test
+    void stringsHashAsUtf8() {
+        // Long enough to span several encoding chunks, with surrogate pairs at every offset.
+        // 0xFF ends a string, it never occurs in UTF-8.
+        String text = "Ünïcödé 🎨 shader ".repeat(2000);
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+
+        ContentHash expected = new ContentHasher().putBytes(utf8, 0, utf8.length).putByte(0xFF).finish();
+        assertEquals(expected, new ContentHasher().putString(text).finish());
+        assertEquals(expected, new ContentHasher().putString(new StringBuilder(text)).finish());
+    }
+
+    @Test
+    void splitInputHashesTheSame() {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        ContentHash whole = new ContentHasher().putBytes(data, 0, data.length).finish();
+
+        for (int split : new int[]{1, 63, 64, 65, 500, 999}) {
+            ContentHasher hasher = new ContentHasher();
+            hasher.putBytes(data, 0, split).putBytes(ByteBuffer.wrap(data, split, data.length - split));
+            assertEquals(whole, hasher.finish(), "split at " + split);
+        }
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        assertEquals(whole, new ContentHasher().putBytes(direct).finish());
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    void separatesInputs() {
+        assertNotEquals(ContentHasher.get().putString("ab").putString("c").finish(),
+                ContentHasher.get().putString("a").putString("bc").finish());
+        // Trailing zeros are not lost in the padding
+        assertNotEquals(new ContentHasher().putByte(1).finish(), new ContentHasher().putByte(1).putByte(0).finish());
+
+        Set<ContentHash> hashes = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(hashes.add(ContentHasher.get().putString("shader" + i).finish()));
+        }
+    }
+
+    @Test
+    void hexRoundTrip() {
+        ContentHash hash = ContentHasher.get().putString("hex").finish();
+        String hex = hash.toHex();
+
+        assertEquals(ContentHash.HEX_LENGTH, hex.length());
+        assertEquals(hash, ContentHash.parseHex("key:" + hex, 4));
+        assertNull(ContentHash.parseHex(hex.toUpperCase(), 0));
+        assertNull(ContentHash.parseHex(hex.substring(1), 0));
+        assertNull(ContentHash.parseHex(hex, -1));
+    }
+}
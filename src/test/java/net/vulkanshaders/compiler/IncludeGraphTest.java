@@ -0,0 +1,103 @@
+package net.vulkanshaders.compiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncludeGraphTest {
+    private static final String COMMON = "shaders/lib/common.glsl";
+    private static final String LIGHTING = "shaders/lib/lighting.glsl";
+    private static final String FOG = "shaders/lib/fog.glsl";
+    private static final String PROGRAM = "shaders/program.fsh";
+
+    private static Map<String, String> sources() {
+        Map<String, String> sources = new HashMap<>();
+        sources.put(COMMON, "#define PI 3.14159\n");
+        sources.put(LIGHTING, "#include \"" + COMMON + "\"\nvec3 light() { return vec3(PI); }\n");
+        sources.put(FOG, "#include \"" + COMMON + "\"\nfloat fog() { return 0.5; }\n");
+        sources.put(PROGRAM, "#version 450\n#include \"" + LIGHTING + "\"\n#include \"" + FOG + "\"\nvoid main() {}\n");
+        return sources;
+    }
+
+    @Test
+    void tracksIncludesAndDependents() {
+        IncludeGraph graph = new IncludeGraph(sources());
+
+        assertEquals(Set.of(LIGHTING, FOG, COMMON), graph.getIncludes(PROGRAM));
+        assertEquals(Set.of(LIGHTING, FOG, PROGRAM), graph.getDependents(COMMON));
+        assertFalse(graph.isCyclic(PROGRAM));
+
+        List<String> order = graph.getTopologicalOrder();
+        assertTrue(order.indexOf(COMMON) < order.indexOf(LIGHTING));
+        assertTrue(order.indexOf(LIGHTING) < order.indexOf(PROGRAM));
+    }
+
+    @Test
+    void expandsEachIncludeOnce() {
+        Map<String, String> sources = sources();
+        String expanded = new GLSLPreprocessor(sources).preprocess(sources.get(PROGRAM), PROGRAM);
+
+        assertEquals(1, count(expanded, "#define PI"));
+        assertTrue(expanded.indexOf("#define PI") < expanded.indexOf("vec3 light()"));
+        assertTrue(expanded.contains("float fog()"));
+        // The second include of common.glsl stays as a comment
+        assertFalse(expanded.contains("\n#include"));
+        assertTrue(expanded.contains("[already included]"));
+    }
+
+    @Test
+    void memoizedExpansionMatchesFreshOne() {
+        Map<String, String> sources = sources();
+        GLSLPreprocessor warm = new GLSLPreprocessor(new IncludeGraph(sources));
+        String first = warm.preprocess(sources.get(PROGRAM), PROGRAM);
+
+        assertEquals(first, warm.preprocess(sources.get(PROGRAM), PROGRAM));
+        assertEquals(first, new GLSLPreprocessor(sources).preprocess(sources.get(PROGRAM), PROGRAM));
+        // A different entry point into the same includes
+        assertEquals(new GLSLPreprocessor(sources).preprocess(sources.get(FOG), FOG), warm.preprocess(sources.get(FOG), FOG));
+    }
+
+    @Test
+    void fingerprintFollowsIncludedFiles() {
+        Map<String, String> sources = sources();
+        String before = new IncludeGraph(sources).getFingerprint(PROGRAM);
+        assertEquals(before, new IncludeGraph(sources()).getFingerprint(PROGRAM));
+
+        sources.put(COMMON, "#define PI 3.0\n");
+        IncludeGraph changed = new IncludeGraph(sources);
+        assertNotEquals(before, changed.getFingerprint(PROGRAM));
+        assertEquals(new IncludeGraph(sources()).getFingerprint(FOG).length(), changed.getFingerprint(FOG).length());
+    }
+
+    @Test
+    void detectsCycles() {
+        Map<String, String> sources = Map.of(
+                "a.glsl", "#include \"b.glsl\"\nfloat a;\n",
+                "b.glsl", "#include \"a.glsl\"\nfloat b;\n");
+        IncludeGraph graph = new IncludeGraph(sources);
+
+        assertTrue(graph.isCyclic("a.glsl"));
+        assertTrue(graph.isCyclic("b.glsl"));
+        assertTrue(graph.getIncludes("a.glsl").contains("a.glsl"));
+    }
+
+    @Test
+    void extractsIncludes() {
+        String source = "#version 450\n  #  include \"a.glsl\"\n// #include \"commented.glsl\"\n#include <b.glsl>\n";
+        assertTrue(GLSLPreprocessor.extractIncludes(source).contains("a.glsl"));
+        assertFalse(GLSLPreprocessor.extractIncludes(source).contains("commented.glsl"));
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
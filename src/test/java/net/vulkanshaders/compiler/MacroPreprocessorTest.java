@@ -0,0 +1,88 @@
+package net.vulkanshaders.compiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MacroPreprocessorTest {
+    private static final String SOURCE = """
+            #version 450
+            #ifdef SHADOWS
+            uniform sampler2D shadowMap;
+            float shadow() { return texture(shadowMap, vec2(0.0)).r; }
+            #else
+            float shadow() { return 1.0; }
+            #endif
+            #if QUALITY > 1 && \\
+                defined(BLOOM)
+            vec3 bloom(vec3 color) { return color * BLOOM_STRENGTH; }
+            #endif
+            #ifdef UNKNOWN_MACRO
+            float unknown;
+            #endif
+            void main() {
+                float samples = QUALITY;
+            }
+            """;
+
+    @Test
+    void keepsLineNumbers() {
+        String processed = process(Map.of("SHADOWS", false, "QUALITY", 2, "BLOOM", true, "BLOOM_STRENGTH", 0.5));
+
+        String[] in = SOURCE.split("\n", -1);
+        String[] out = processed.split("\n", -1);
+        assertEquals(in.length, out.length);
+
+        // Live code stays on its line, removed lines become empty
+        assertEquals("#version 450", out[0]);
+        assertEquals("", out[1]);
+        assertEquals("", out[2]);
+        assertEquals("", out[3]);
+        assertEquals("float shadow() { return 1.0; }", out[5]);
+        assertEquals("", out[7]);
+        assertEquals("", out[8]);
+        assertEquals("vec3 bloom(vec3 color) { return color * 0.5; }", out[9]);
+        assertEquals("    float samples = 2;", out[15]);
+    }
+
+    @Test
+    void stripsDeadBranches() {
+        String processed = process(Map.of("SHADOWS", true, "QUALITY", 1, "BLOOM", true, "BLOOM_STRENGTH", 0.5));
+
+        assertTrue(processed.contains("uniform sampler2D shadowMap;"));
+        assertFalse(processed.contains("return 1.0"));
+        assertFalse(processed.contains("bloom"));
+        assertFalse(processed.contains("SHADOWS"));
+    }
+
+    @Test
+    void passesUnknownConditionsThrough() {
+        String processed = process(Map.of("SHADOWS", false, "QUALITY", 0));
+
+        // Neither an option nor defined by the source, shaderc decides
+        assertTrue(processed.contains("#ifdef UNKNOWN_MACRO\nfloat unknown;\n#endif"));
+    }
+
+    @Test
+    void macroParametersShadowOptions() {
+        String processed = MacroPreprocessor.forValues(Map.of("QUALITY", 2))
+                .process("#define F(QUALITY, b) QUALITY * b + QUALITY\n#define G QUALITY\n", "shaders/test.fsh");
+
+        assertEquals("#define F(QUALITY, b) QUALITY * b + QUALITY\n#define G 2\n", processed);
+    }
+
+    @Test
+    void reportsUnbalancedConditionals() {
+        MacroPreprocessor preprocessor = new MacroPreprocessor(Map.of(), Set.of());
+
+        assertThrows(RuntimeException.class, () -> preprocessor.process("#ifdef A\nfloat a;\n", "test.fsh"));
+        assertThrows(RuntimeException.class, () -> preprocessor.process("float a;\n#endif\n", "test.fsh"));
+    }
+
+    private static String process(Map<String, Object> values) {
+        return MacroPreprocessor.forValues(values).process(SOURCE, "shaders/test.fsh");
+    }
+}
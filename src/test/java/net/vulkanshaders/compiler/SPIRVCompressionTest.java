@@ -0,0 +1,79 @@
+package net.vulkanshaders.compiler;
+
+import net.vulkanshaders.spirv.SPIRVConstants;
+import net.vulkanshaders.spirv.TestModules;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SPIRVCompressionTest {
+
+    @Test
+    void roundTrip() {
+        ByteBuffer module = largeModule(64);
+        for (int level : new int[]{1, 9}) {
+            ByteBuffer compressed = SPIRVCompression.compress(module, level);
+            assertNotNull(compressed, "level " + level + " did not compress");
+            assertTrue(SPIRVCompression.isCompressed(compressed));
+            assertTrue(compressed.remaining() < module.remaining());
+            assertEquals(module.remaining(), SPIRVCompression.decodedSize(compressed));
+
+            ByteBuffer decoded = ByteBuffer.allocate(SPIRVCompression.decodedSize(compressed));
+            SPIRVCompression.decompress(compressed, decoded);
+            assertFalse(decoded.hasRemaining());
+            assertEquals(module, decoded.flip());
+        }
+    }
+
+    @Test
+    void decodesAtTargetPosition() {
+        ByteBuffer module = largeModule(16);
+        ByteBuffer compressed = SPIRVCompression.compress(module, 6);
+
+        ByteBuffer target = ByteBuffer.allocate(module.remaining() + 8);
+        target.position(8);
+        SPIRVCompression.decompress(compressed, target);
+        assertEquals(module, target.position(8));
+    }
+
+    @Test
+    void leavesOtherDataAlone() {
+        ByteBuffer text = ByteBuffer.wrap("not a shader module, just some text".repeat(8).getBytes());
+
+        assertNull(SPIRVCompression.compress(text, 9));
+        assertFalse(SPIRVCompression.isCompressed(text));
+        assertFalse(SPIRVCompression.isCompressed(TestModules.fragmentModule()));
+    }
+
+    @Test
+    void rejectsCorruptEntries() {
+        ByteBuffer module = largeModule(16);
+        ByteBuffer compressed = SPIRVCompression.compress(module, 6);
+
+        ByteBuffer truncated = compressed.duplicate().limit(compressed.limit() / 2);
+        assertThrows(IllegalArgumentException.class, () ->
+                SPIRVCompression.decompress(truncated, ByteBuffer.allocate(module.remaining())));
+        assertThrows(IllegalArgumentException.class, () ->
+                SPIRVCompression.decompress(compressed, ByteBuffer.allocate(module.remaining() - 4)));
+    }
+
+    /**
+     * The test module's instructions repeated, like the many similar declarations of a real shader.
+     * Only the framing has to be valid for compression.
+     */
+    private static ByteBuffer largeModule(int copies) {
+        ByteBuffer module = TestModules.fragmentModule();
+        int headerBytes = SPIRVConstants.HEADER_WORDS * 4;
+        ByteBuffer body = module.duplicate().position(headerBytes);
+
+        ByteBuffer large = ByteBuffer.allocate(headerBytes + body.remaining() * copies).order(ByteOrder.LITTLE_ENDIAN);
+        large.put(module.duplicate().limit(headerBytes));
+        for (int i = 0; i < copies; i++) {
+            large.put(body.duplicate());
+        }
+        return large.flip();
+    }
+}
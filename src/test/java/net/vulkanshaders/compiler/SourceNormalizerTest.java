@@ -0,0 +1,38 @@
+package net.vulkanshaders.compiler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceNormalizerTest {
+
+    @Test
+    void ignoresCommentsAndFormatting() {
+        String a = "#version 450\n// Lighting\nvoid main() {\n    float x = 1.0; /* one */\n}\n";
+        String b = "#version   450\nvoid main(){float x=1.0;}";
+
+        assertEquals(SourceNormalizer.normalize(a), SourceNormalizer.normalize(b));
+    }
+
+    @Test
+    void keepsSpacesSeparatingTokens() {
+        assertNotEquals(SourceNormalizer.normalize("a + +b"), SourceNormalizer.normalize("a ++b"));
+        assertNotEquals(SourceNormalizer.normalize("float x"), SourceNormalizer.normalize("floatx"));
+    }
+
+    @Test
+    void keepsDirectiveStructure() {
+        // A space before '(' makes the difference between a function-like and an object-like macro
+        assertNotEquals(SourceNormalizer.normalize("#define F(x) x\n"), SourceNormalizer.normalize("#define F (x) x\n"));
+        // A directive ends at its newline
+        assertNotEquals(SourceNormalizer.normalize("#define A 1\nfloat b;\n"),
+                SourceNormalizer.normalize("#define A 1 float b;\n"));
+        assertEquals(SourceNormalizer.normalize("#define A 1 + \\\n 2\n"), SourceNormalizer.normalize("#define A 1 + 2\n"));
+    }
+
+    @Test
+    void leavesLineSensitiveSourceAlone() {
+        String source = "float line = __LINE__; // here\n";
+        assertSame(source, SourceNormalizer.normalize(source));
+    }
+}
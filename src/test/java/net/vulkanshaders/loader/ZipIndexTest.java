@@ -0,0 +1,87 @@
+package net.vulkanshaders.loader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipIndexTest {
+    private static final String FRAGMENT = "#version 450\nvoid main() {}\n".repeat(40);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsStoredAndDeflatedEntries() throws IOException {
+        ZipIndex index = ZipIndex.read(writeZip("pack", FRAGMENT));
+
+        assertEquals(Set.of("pack.json", "shaders/program.fsh", "shaders/stored.glsl"), index.getNames());
+        assertEquals(FRAGMENT, index.readString("shaders/program.fsh"));
+        assertEquals("float stored;\n", index.readString("shaders/stored.glsl"));
+        assertNull(index.read("shaders/missing.glsl"));
+    }
+
+    @Test
+    void namesAreRelativeToTheRoot() throws IOException {
+        ZipIndex index = ZipIndex.read(writeZip("pack", FRAGMENT));
+
+        assertEquals("shaders/a.glsl", ZipIndex.normalize("/shaders/a.glsl"));
+        assertTrue(index.contains("/shaders/program.fsh"));
+        assertEquals(FRAGMENT, index.readString("/shaders/program.fsh"));
+    }
+
+    @Test
+    void retainKeepsOnlyNamedEntries() throws IOException {
+        ZipIndex index = ZipIndex.read(writeZip("pack", FRAGMENT)).retain(List.of("/pack.json", "shaders/missing.glsl"));
+
+        assertEquals(Set.of("pack.json"), index.getNames());
+        assertFalse(index.contains("shaders/program.fsh"));
+        assertEquals("{}", index.readString("pack.json"));
+    }
+
+    @Test
+    void checksumFollowsContent() throws IOException {
+        long checksum = ZipIndex.read(writeZip("a", FRAGMENT)).checksum();
+
+        assertEquals(checksum, ZipIndex.read(writeZip("b", FRAGMENT)).checksum());
+        assertNotEquals(checksum, ZipIndex.read(writeZip("c", FRAGMENT + "// changed\n")).checksum());
+    }
+
+    private Path writeZip(String name, String fragment) throws IOException {
+        Path zip = directory.resolve(name + ".zip");
+        try (OutputStream file = Files.newOutputStream(zip);
+             ZipOutputStream out = new ZipOutputStream(file)) {
+            out.setComment("test pack");
+            write(out, "pack.json", "{}", ZipEntry.DEFLATED);
+            write(out, "/shaders/program.fsh", fragment, ZipEntry.DEFLATED);
+            write(out, "shaders/stored.glsl", "float stored;\n", ZipEntry.STORED);
+        }
+        return zip;
+    }
+
+    private static void write(ZipOutputStream out, String name, String text, int method) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+}
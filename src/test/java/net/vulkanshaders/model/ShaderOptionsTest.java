@@ -0,0 +1,46 @@
+package net.vulkanshaders.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShaderOptionsTest {
+
+    @Test
+    void valuesCannotRunIntoEachOther() {
+        ShaderOptions defaults = ShaderOptions.defaults(metadata());
+        Set<String> both = Set.of("A", "B");
+
+        String split = defaults.with("A", "x/1:y").with("B", "z").variantKey(both);
+        String joined = defaults.with("A", "x").with("B", "y/1:z").variantKey(both);
+        assertNotEquals(split, joined);
+
+        // An unset value differs from the text "null"
+        assertNotEquals(defaults.variantKey(both), defaults.with("A", "null").with("B", "null").variantKey(both));
+    }
+
+    @Test
+    void unrelatedOptionsDoNotChangeTheKey() {
+        ShaderOptions defaults = ShaderOptions.defaults(metadata());
+
+        assertEquals(defaults.variantKey(Set.of("A")), defaults.with("B", "other").variantKey(Set.of("A")));
+        assertNotEquals(defaults.variantKey(Set.of("FLAG")), defaults.with("FLAG", true).variantKey(Set.of("FLAG")));
+        assertEquals("", defaults.variantKey(Set.of()));
+    }
+
+    private static PackMetadata metadata() {
+        PackMetadata metadata = new PackMetadata();
+        metadata.options = Map.of("A", option("string"), "B", option("string"), "FLAG", option("boolean"));
+        return metadata;
+    }
+
+    private static PackMetadata.OptionConfig option(String type) {
+        PackMetadata.OptionConfig config = new PackMetadata.OptionConfig();
+        config.type = type;
+        config.defaultValue = "boolean".equals(type) ? false : null;
+        return config;
+    }
+}
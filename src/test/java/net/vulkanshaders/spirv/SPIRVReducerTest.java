@@ -0,0 +1,122 @@
+package net.vulkanshaders.spirv;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SPIRVReducerTest {
+
+    @Test
+    void removesUnreferencedDeclarations() {
+        List<int[]> reduced = TestModules.instructions(SPIRVReducer.reduce(TestModules.fragmentModule(), true));
+        Set<Integer> defined = definedIds(reduced);
+
+        assertFalse(defined.contains(TestModules.UNUSED_CONSTANT), "unused constant kept");
+        assertFalse(defined.contains(TestModules.SCRATCH), "unused private variable kept");
+        assertFalse(names(reduced).contains("scratch"), "name of a removed variable kept");
+    }
+
+    @Test
+    void keepsResourceVariablesAndReflectedNames() {
+        List<int[]> reduced = TestModules.instructions(SPIRVReducer.reduce(TestModules.fragmentModule(), true));
+        Set<Integer> defined = definedIds(reduced);
+
+        assertTrue(defined.contains(TestModules.UBO));
+        assertTrue(defined.contains(TestModules.UNUSED_UBO), "unused resource variable removed");
+        assertTrue(defined.contains(TestModules.OUT_COLOR));
+        assertTrue(names(reduced).containsAll(Set.of("ubo", "unusedUbo", "Ubo", "color", "outColor")));
+    }
+
+    @Test
+    void reflectionIsUnchanged() {
+        ByteBuffer module = TestModules.fragmentModule();
+        ShaderReflection before = SPIRVReflector.reflect(module.duplicate());
+        ShaderReflection after = SPIRVReflector.reflect(SPIRVReducer.reduce(module, true));
+
+        assertEquals(2, before.getUniformBuffers().size());
+        assertEquals(before.getUniformBuffers(), after.getUniformBuffers());
+        assertEquals(before.getImages(), after.getImages());
+    }
+
+    @Test
+    void resultIsValid() {
+        ByteBuffer module = TestModules.fragmentModule();
+        ByteBuffer reduced = SPIRVReducer.reduce(module.duplicate(), true).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals(SPIRVConstants.MAGIC, reduced.getInt(0));
+        assertEquals(TestModules.BOUND, reduced.getInt(12), "id bound changed");
+        assertTrue(reduced.remaining() < module.remaining());
+
+        // Whole instructions only, and nothing annotates or uses an id that is gone
+        List<int[]> instructions = TestModules.instructions(reduced);
+        Set<Integer> defined = definedIds(instructions);
+        defined.add(TestModules.MAIN);
+        for (int[] instruction : instructions) {
+            int op = TestModules.opcode(instruction);
+            if (op == SPIRVConstants.OP_NAME || op == SPIRVConstants.OP_MEMBER_NAME
+                    || op == SPIRVConstants.OP_DECORATE || op == SPIRVConstants.OP_MEMBER_DECORATE) {
+                assertTrue(defined.contains(instruction[1]), "annotation of removed id " + instruction[1]);
+            }
+        }
+
+        // Reducing again finds nothing left to remove
+        assertEquals(reduced, SPIRVReducer.reduce(reduced.duplicate(), true));
+    }
+
+    @Test
+    void debugInfoIsOnlyStrippedWhenAsked() {
+        List<int[]> kept = TestModules.instructions(SPIRVReducer.reduce(TestModules.fragmentModule(), false));
+        List<int[]> stripped = TestModules.instructions(SPIRVReducer.reduce(TestModules.fragmentModule(), true));
+
+        assertTrue(kept.stream().anyMatch(i -> TestModules.opcode(i) == SPIRVConstants.OP_SOURCE));
+        assertTrue(kept.stream().anyMatch(i -> TestModules.opcode(i) == SPIRVConstants.OP_STRING));
+        assertTrue(stripped.stream().noneMatch(i -> TestModules.opcode(i) == SPIRVConstants.OP_SOURCE));
+        assertTrue(stripped.stream().noneMatch(i -> TestModules.opcode(i) == SPIRVConstants.OP_STRING));
+    }
+
+    @Test
+    void rejectsMalformedModules() {
+        // Last instruction (OpFunctionEnd) claiming more words than are left
+        ByteBuffer truncated = TestModules.fragmentModule().order(ByteOrder.LITTLE_ENDIAN);
+        truncated.putInt(truncated.limit() - 4, 3 << 16 | 56);
+
+        assertThrows(IllegalArgumentException.class, () -> SPIRVReducer.reduce(truncated, true));
+        assertThrows(IllegalArgumentException.class, () -> SPIRVReducer.reduce(ByteBuffer.allocate(64), true));
+    }
+
+    /**
+     * Result ids of the module-level declarations this test module uses
+     */
+    private static Set<Integer> definedIds(List<int[]> instructions) {
+        Set<Integer> ids = new HashSet<>();
+        for (int[] instruction : instructions) {
+            int op = TestModules.opcode(instruction);
+            if (op >= SPIRVConstants.OP_TYPE_VOID && op <= SPIRVConstants.OP_TYPE_FUNCTION
+                    || op == SPIRVConstants.OP_STRING) {
+                ids.add(instruction[1]);
+            } else if (op == SPIRVConstants.OP_CONSTANT || op == SPIRVConstants.OP_VARIABLE) {
+                ids.add(instruction[2]);
+            }
+        }
+        return ids;
+    }
+
+    private static Set<String> names(List<int[]> instructions) {
+        Set<String> names = new HashSet<>();
+        for (int[] instruction : instructions) {
+            int op = TestModules.opcode(instruction);
+            if (op == SPIRVConstants.OP_NAME) {
+                names.add(TestModules.string(instruction, 2));
+            } else if (op == SPIRVConstants.OP_MEMBER_NAME) {
+                names.add(TestModules.string(instruction, 3));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,183 @@
+package net.vulkanshaders.spirv;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hand-assembled SPIR-V for tests that run without shaderc
+ */
+public final class TestModules {
+    // Result ids of the fragment module
+    public static final int MAIN = 1;
+    public static final int UBO_TYPE = 6;
+    public static final int UBO = 8;
+    public static final int OUT_COLOR = 10;
+    public static final int UNUSED_CONSTANT = 11;
+    public static final int SCRATCH = 13;
+    public static final int FILE_NAME = 20;
+    public static final int UNUSED_UBO = 21;
+    public static final int BOUND = 22;
+
+    private static final int OP_CAPABILITY = 17;
+    private static final int OP_MEMORY_MODEL = 14;
+    private static final int OP_EXECUTION_MODE = 16;
+    private static final int OP_TYPE_INT = 21;
+    private static final int OP_FUNCTION_END = 56;
+    private static final int OP_LOAD = 61;
+    private static final int OP_STORE = 62;
+    private static final int OP_ACCESS_CHAIN = 65;
+    private static final int OP_LABEL = 248;
+    private static final int OP_RETURN = 253;
+
+    private static final int STORAGE_PRIVATE = 6;
+
+    private TestModules() {
+    }
+
+    /**
+     * Fragment shader writing a uniform block member to its output, roughly:
+     * <pre>
+     * layout(binding = 1) uniform Ubo { vec4 color; } ubo;
+     * layout(binding = 2) uniform Ubo unusedUbo;   // unused resource, must survive
+     * layout(location = 0) out vec4 outColor;
+     * float scratch;                               // unused private variable
+     * const float unused = 1.0;                    // unused constant
+     * void main() { outColor = ubo.color; }
+     * </pre>
+     * plus OpString/OpSource debug info.
+     */
+    public static ByteBuffer fragmentModule() {
+        Assembler asm = new Assembler(BOUND);
+        asm.op(OP_CAPABILITY, 1);
+        asm.op(OP_MEMORY_MODEL, 0, 1);
+        asm.op(SPIRVConstants.OP_ENTRY_POINT, words(new int[]{SPIRVConstants.EXECUTION_FRAGMENT, MAIN},
+                "main", new int[]{OUT_COLOR}));
+        asm.op(OP_EXECUTION_MODE, MAIN, 7);
+
+        asm.op(SPIRVConstants.OP_STRING, words(new int[]{FILE_NAME}, "shaders/test.fsh", new int[0]));
+        asm.op(SPIRVConstants.OP_SOURCE, 2, 450, FILE_NAME);
+        asm.name(MAIN, "main");
+        asm.name(UBO_TYPE, "Ubo");
+        asm.op(SPIRVConstants.OP_MEMBER_NAME, words(new int[]{UBO_TYPE, 0}, "color", new int[0]));
+        asm.name(UBO, "ubo");
+        asm.name(UNUSED_UBO, "unusedUbo");
+        asm.name(OUT_COLOR, "outColor");
+        asm.name(SCRATCH, "scratch");
+
+        asm.op(SPIRVConstants.OP_DECORATE, UBO_TYPE, SPIRVConstants.DECORATION_BLOCK);
+        asm.op(SPIRVConstants.OP_MEMBER_DECORATE, UBO_TYPE, 0, SPIRVConstants.DECORATION_OFFSET, 0);
+        asm.op(SPIRVConstants.OP_DECORATE, UBO, SPIRVConstants.DECORATION_DESCRIPTOR_SET, 0);
+        asm.op(SPIRVConstants.OP_DECORATE, UBO, SPIRVConstants.DECORATION_BINDING, 1);
+        asm.op(SPIRVConstants.OP_DECORATE, UNUSED_UBO, SPIRVConstants.DECORATION_DESCRIPTOR_SET, 0);
+        asm.op(SPIRVConstants.OP_DECORATE, UNUSED_UBO, SPIRVConstants.DECORATION_BINDING, 2);
+        asm.op(SPIRVConstants.OP_DECORATE, OUT_COLOR, SPIRVConstants.DECORATION_LOCATION, 0);
+
+        asm.op(SPIRVConstants.OP_TYPE_VOID, 2);
+        asm.op(SPIRVConstants.OP_TYPE_FUNCTION, 3, 2);
+        asm.op(SPIRVConstants.OP_TYPE_FLOAT, 4, 32);
+        asm.op(SPIRVConstants.OP_TYPE_VECTOR, 5, 4, 4);
+        asm.op(SPIRVConstants.OP_TYPE_STRUCT, UBO_TYPE, 5);
+        asm.op(SPIRVConstants.OP_TYPE_POINTER, 7, SPIRVConstants.STORAGE_UNIFORM, UBO_TYPE);
+        asm.op(SPIRVConstants.OP_VARIABLE, 7, UBO, SPIRVConstants.STORAGE_UNIFORM);
+        asm.op(SPIRVConstants.OP_VARIABLE, 7, UNUSED_UBO, SPIRVConstants.STORAGE_UNIFORM);
+        asm.op(SPIRVConstants.OP_TYPE_POINTER, 9, SPIRVConstants.STORAGE_OUTPUT, 5);
+        asm.op(SPIRVConstants.OP_VARIABLE, 9, OUT_COLOR, SPIRVConstants.STORAGE_OUTPUT);
+        asm.op(SPIRVConstants.OP_CONSTANT, 4, UNUSED_CONSTANT, Float.floatToIntBits(1.0f));
+        asm.op(SPIRVConstants.OP_TYPE_POINTER, 12, STORAGE_PRIVATE, 4);
+        asm.op(SPIRVConstants.OP_VARIABLE, 12, SCRATCH, STORAGE_PRIVATE);
+        asm.op(OP_TYPE_INT, 15, 32, 1);
+        asm.op(SPIRVConstants.OP_CONSTANT, 15, 16, 0);
+        asm.op(SPIRVConstants.OP_TYPE_POINTER, 17, SPIRVConstants.STORAGE_UNIFORM, 5);
+
+        asm.op(SPIRVConstants.OP_FUNCTION, 2, MAIN, 0, 3);
+        asm.op(OP_LABEL, 14);
+        asm.op(OP_ACCESS_CHAIN, 17, 18, UBO, 16);
+        asm.op(OP_LOAD, 5, 19, 18);
+        asm.op(OP_STORE, OUT_COLOR, 19);
+        asm.op(OP_RETURN);
+        asm.op(OP_FUNCTION_END);
+        return asm.build();
+    }
+
+    /**
+     * Instructions of a module as word arrays (opcode and operands), in order
+     */
+    public static List<int[]> instructions(ByteBuffer module) {
+        int[] words = SPIRVConstants.toWords(module);
+        List<int[]> instructions = new ArrayList<>();
+        int i = SPIRVConstants.HEADER_WORDS;
+        while (i < words.length) {
+            int count = words[i] >>> 16;
+            if (count == 0 || i + count > words.length) {
+                throw new IllegalArgumentException("Malformed instruction at word " + i);
+            }
+            instructions.add(Arrays.copyOfRange(words, i, i + count));
+            i += count;
+        }
+        return instructions;
+    }
+
+    public static int opcode(int[] instruction) {
+        return instruction[0] & 0xFFFF;
+    }
+
+    /**
+     * Decode a literal string starting at the given word of an instruction
+     */
+    public static String string(int[] instruction, int from) {
+        ByteBuffer bytes = ByteBuffer.allocate((instruction.length - from) * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = from; i < instruction.length; i++) {
+            bytes.putInt(instruction[i]);
+        }
+        byte[] array = bytes.array();
+        int end = 0;
+        while (end < array.length && array[end] != 0) {
+            end++;
+        }
+        return new String(array, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private static int[] words(int[] before, String literal, int[] after) {
+        byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+        int literalWords = bytes.length / 4 + 1;
+        ByteBuffer packed = ByteBuffer.allocate(literalWords * 4).order(ByteOrder.LITTLE_ENDIAN).put(bytes);
+        packed.clear();
+
+        int[] result = new int[before.length + literalWords + after.length];
+        System.arraycopy(before, 0, result, 0, before.length);
+        for (int i = 0; i < literalWords; i++) {
+            result[before.length + i] = packed.getInt();
+        }
+        System.arraycopy(after, 0, result, before.length + literalWords, after.length);
+        return result;
+    }
+
+    private static final class Assembler {
+        private final List<Integer> words = new ArrayList<>();
+
+        Assembler(int bound) {
+            words.addAll(List.of(SPIRVConstants.MAGIC, 0x00010000, 0, bound, 0));
+        }
+
+        void op(int opcode, int... operands) {
+            words.add((operands.length + 1) << 16 | opcode);
+            for (int operand : operands) {
+                words.add(operand);
+            }
+        }
+
+        void name(int target, String name) {
+            op(SPIRVConstants.OP_NAME, words(new int[]{target}, name, new int[0]));
+        }
+
+        ByteBuffer build() {
+            ByteBuffer module = ByteBuffer.allocate(words.size() * 4).order(ByteOrder.LITTLE_ENDIAN);
+            words.forEach(module::putInt);
+            return module.flip();
+        }
+    }
+}